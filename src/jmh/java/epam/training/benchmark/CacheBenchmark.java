@@ -0,0 +1,134 @@
+package epam.training.benchmark;
+
+import epam.training.service.CacheService;
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import epam.training.service.NearCacheService;
+import epam.training.service.SegmentedLFUCacheService;
+import epam.training.service.TinyLFUCacheService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency distribution of the cache services under get-heavy, put-heavy and
+ * cache-aside workloads. Every thread walks the same pre-generated key stream from its own
+ * random offset, values are created up front so only the cache itself allocates. {@code lru} is
+ * the single segment LRU, {@code lru-16} the same cache split into 16 segments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final int KEY_STREAM_LENGTH = 1 << 20;
+    private static final int TIME_TO_LIVE = (int) TimeUnit.HOURS.toMillis(1);
+
+    @Param({"lru", "lru-16", "lfu", "slfu", "tinylfu", "near"})
+    public String cache;
+
+    @Param({"UNIFORM", "ZIPFIAN", "SCAN"})
+    public KeyDistribution distribution;
+
+    @Param({"10000"})
+    public int capacity;
+
+    private CacheService cacheService;
+    private int[] keys;
+    private String[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int keySpace = capacity * 4;
+        cacheService = createCacheService();
+        keys = distribution.generate(keySpace, KEY_STREAM_LENGTH, new Random(42));
+        values = new String[keySpace];
+        for (int key = 0; key < keySpace; key++) {
+            values[key] = "value-" + key;
+        }
+        for (int i = 0; i < capacity; i++) {
+            cacheService.put(keys[i], values[keys[i]]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cacheService.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class KeyCursor {
+        private int index;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            index = ThreadLocalRandom.current().nextInt(KEY_STREAM_LENGTH);
+        }
+
+        int next(int[] keys) {
+            index = (index + 1) & (KEY_STREAM_LENGTH - 1);
+            return keys[index];
+        }
+    }
+
+    @Benchmark
+    public String getHeavy(KeyCursor cursor) {
+        return cacheService.get(cursor.next(keys));
+    }
+
+    @Benchmark
+    public void putHeavy(KeyCursor cursor) {
+        int key = cursor.next(keys);
+        cacheService.put(key, values[key]);
+    }
+
+    /**
+     * Cache-aside access: read, and store the value when it was missing.
+     */
+    @Benchmark
+    public String mixed(KeyCursor cursor) {
+        int key = cursor.next(keys);
+        String value = cacheService.get(key);
+        if (value == null) {
+            value = values[key];
+            cacheService.put(key, value);
+        }
+        return value;
+    }
+
+    private CacheService createCacheService() {
+        switch (cache) {
+            case "lru":
+                return new LRUCacheService(capacity, TIME_TO_LIVE);
+            case "lru-16":
+                return new LRUCacheService(capacity, TIME_TO_LIVE, 16);
+            case "lfu":
+                return new LFUCacheService(capacity, TIME_TO_LIVE);
+            case "slfu":
+                return new SegmentedLFUCacheService(capacity, TIME_TO_LIVE);
+            case "tinylfu":
+                return new TinyLFUCacheService(capacity, TIME_TO_LIVE);
+            case "near":
+                return new NearCacheService(new LFUCacheService(capacity, TIME_TO_LIVE));
+            default:
+                throw new IllegalArgumentException("Unknown cache " + cache);
+        }
+    }
+}
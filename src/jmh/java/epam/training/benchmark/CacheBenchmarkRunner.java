@@ -0,0 +1,35 @@
+package epam.training.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs {@link CacheBenchmark} at 1, 4 and 16 threads with the GC profiler attached, writing one
+ * JSON report per thread count. The reports hold ops/us, the sampled latency percentiles
+ * (p99 included) and the allocation rate per operation.
+ */
+public class CacheBenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+    public static void main(String[] args) throws RunnerException {
+        File reportDirectory = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        reportDirectory.mkdirs();
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(CacheBenchmark.class.getName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(reportDirectory, "cache-benchmark-" + threads + "-threads.json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package epam.training.benchmark;
+
+import epam.training.service.CacheSnapshot;
+import epam.training.service.CacheSnapshotStore;
+import epam.training.service.ValueCompressor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures what compression would do to the values of a cache snapshot, to pick
+ * {@code cache_service.*.compression_threshold} and decide whether a dictionary pays off. For every
+ * threshold it reports, with and without a dictionary trained on every n-th value, how many values
+ * compress, the bytes stored against the raw bytes and the mean time to decompress one value.
+ * The dictionary is trained on values it is then measured on, so its ratio is slightly optimistic.
+ * <p>
+ * Arguments: snapshot file, comma-separated thresholds, file to write the trained dictionary to.
+ * Defaults: 256,1024,4096 bytes, the dictionary is not written.
+ */
+public class CompressionReport {
+
+    private static final int DICTIONARY_SAMPLES = 500;
+    private static final int DECOMPRESSION_ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CompressionReport <snapshot> [thresholds] [dictionary output]");
+            System.exit(1);
+        }
+        CacheSnapshot snapshot = new CacheSnapshotStore(Paths.get(args[0])).load()
+                .orElseThrow(() -> new IllegalArgumentException("No snapshot in " + args[0]));
+        int[] thresholds = Arrays.stream((args.length > 1 ? args[1] : "256,1024,4096").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        List<byte[]> values = new ArrayList<>(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            values.add(snapshot.getValueBytes(i));
+        }
+        List<byte[]> samples = new ArrayList<>();
+        int step = Math.max(values.size() / DICTIONARY_SAMPLES, 1);
+        for (int i = 0; i < values.size(); i += step) {
+            samples.add(values.get(i));
+        }
+        byte[] dictionary = ValueCompressor.trainDictionary(samples, ValueCompressor.MAX_DICTIONARY_BYTES);
+        if (args.length > 2) {
+            Files.write(Paths.get(args[2]), dictionary);
+        }
+
+        System.out.printf("snapshot=%s values=%d dictionary_bytes=%d%n", args[0], values.size(), dictionary.length);
+        System.out.printf("%10s %10s %10s %14s %14s %7s %16s%n", "threshold", "dictionary", "compressed",
+                "raw_bytes", "stored_bytes", "ratio", "decompress_ns");
+        for (int threshold : thresholds) {
+            report(values, new ValueCompressor(threshold), "none");
+            report(values, new ValueCompressor(threshold, dictionary), "trained");
+        }
+    }
+
+    private static void report(List<byte[]> values, ValueCompressor compressor, String dictionary) {
+        long rawBytes = 0;
+        long storedBytes = 0;
+        long compressedRawBytes = 0;
+        List<byte[]> compressed = new ArrayList<>();
+        for (byte[] value : values) {
+            byte[] packed = compressor.compress(value);
+            rawBytes += value.length;
+            storedBytes += packed == null ? value.length : packed.length;
+            if (packed != null) {
+                compressed.add(packed);
+                compressedRawBytes += value.length;
+            }
+        }
+        double decompressNanos = 0;
+        if (!compressed.isEmpty()) {
+            long decompressedBytes = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < DECOMPRESSION_ROUNDS; round++) {
+                for (byte[] packed : compressed) {
+                    decompressedBytes += compressor.decompress(packed).length;
+                }
+            }
+            decompressNanos = (double) (System.nanoTime() - start) / DECOMPRESSION_ROUNDS / compressed.size();
+            // also keeps the decompressed values in use, so the loop cannot be optimized away
+            if (decompressedBytes != compressedRawBytes * DECOMPRESSION_ROUNDS) {
+                throw new IllegalStateException("Values did not decompress to their original length");
+            }
+        }
+        System.out.printf("%10d %10s %10d %14d %14d %7.3f %16.0f%n", compressor.getThreshold(), dictionary,
+                compressed.size(), rawBytes, storedBytes, rawBytes == 0 ? 1.0 : (double) storedBytes / rawBytes,
+                decompressNanos);
+    }
+}
@@ -0,0 +1,114 @@
+package epam.training.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test of the running HTTP API. Every simulated client keeps exactly one request
+ * in flight and sends the next as soon as the previous one is answered, all on a handful of client
+ * threads. The blocking per-cache lookup and its async variant are measured one after the other
+ * against the same pre-filled cache, each reporting throughput, errors and latency percentiles.
+ * <p>
+ * Arguments: base URL, client count, seconds per phase, cache name. Defaults: http://localhost:8080,
+ * 10000, 30, lfu. Thousands of clients need as many open files on both ends, see {@code ulimit -n}.
+ */
+public class HttpLoadTest {
+
+    private static final int KEY_COUNT = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        String cacheName = args.length > 3 ? args[3] : "lfu";
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        fill(client, baseUrl, cacheName);
+        run(client, "blocking", baseUrl + "/caches/" + cacheName + "/%d?id=%d", clients, seconds);
+        run(client, "async", baseUrl + "/caches/" + cacheName + "/async/%d", clients, seconds);
+        executor.shutdownNow();
+    }
+
+    private static void fill(HttpClient client, String baseUrl, String cacheName) throws Exception {
+        StringBuilder entries = new StringBuilder("{");
+        for (int key = 0; key < KEY_COUNT; key++) {
+            entries.append(key == 0 ? "" : ",").append('"').append(key).append("\":\"value").append(key).append('"');
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/caches/" + cacheName + "/batch/put"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(entries.append('}').toString()))
+                .build();
+        client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private static void run(HttpClient client, String mode, String urlPattern, int clients, int seconds)
+            throws InterruptedException {
+        Phase phase = new Phase(client, urlPattern, System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds), clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            phase.send();
+        }
+        phase.finished.await();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Histogram latencies = phase.latencies.getIntervalHistogram();
+        System.out.printf("%-8s clients=%d requests=%d errors=%d throughput=%.0f req/s p50=%.2fms p99=%.2fms max=%.2fms%n",
+                mode, clients, latencies.getTotalCount(), phase.errors.sum(), latencies.getTotalCount() / elapsedSeconds,
+                latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6,
+                latencies.getMaxValue() / 1e6);
+    }
+
+    private static final class Phase {
+        private final HttpClient client;
+        private final String urlPattern;
+        private final long deadline;
+        private final CountDownLatch finished;
+        private final Recorder latencies = new Recorder(3);
+        private final LongAdder errors = new LongAdder();
+
+        private Phase(HttpClient client, String urlPattern, long deadline, int clients) {
+            this.client = client;
+            this.urlPattern = urlPattern;
+            this.deadline = deadline;
+            this.finished = new CountDownLatch(clients);
+        }
+
+        private void send() {
+            int key = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(String.format(urlPattern, key, key)))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            long start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, failure) -> {
+                long end = System.nanoTime();
+                if (failure != null || response.statusCode() != 200) {
+                    errors.increment();
+                } else {
+                    latencies.recordValue(end - start);
+                }
+                if (end < deadline) {
+                    send();
+                } else {
+                    finished.countDown();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package epam.training.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Key streams used by the cache benchmarks. Every stream is generated up front so the
+ * measured loops only read an array.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Every key of the key space is equally likely.
+     */
+    UNIFORM {
+        @Override
+        int[] generate(int keySpace, int length, Random random) {
+            int[] keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = random.nextInt(keySpace);
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Zipf distributed popularity with exponent 0.99, the usual model for web cache traffic.
+     * Ranks are mapped onto shuffled keys so hot keys are not neighbours.
+     */
+    ZIPFIAN {
+        @Override
+        int[] generate(int keySpace, int length, Random random) {
+            double[] cumulative = new double[keySpace];
+            double sum = 0;
+            for (int rank = 0; rank < keySpace; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, ZIPF_EXPONENT);
+                cumulative[rank] = sum;
+            }
+            int[] keyOfRank = shuffledKeys(keySpace, random);
+            int[] keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                keys[i] = keyOfRank[rank < 0 ? -rank - 1 : rank];
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Walks the whole key space in order, over and over, the access pattern that flushes LRU caches.
+     */
+    SCAN {
+        @Override
+        int[] generate(int keySpace, int length, Random random) {
+            int[] keys = new int[length];
+            for (int i = 0; i < length; i++) {
+                keys[i] = i % keySpace;
+            }
+            return keys;
+        }
+    };
+
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    abstract int[] generate(int keySpace, int length, Random random);
+
+    private static int[] shuffledKeys(int keySpace, Random random) {
+        int[] keys = new int[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = i;
+        }
+        for (int i = keySpace - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+        return keys;
+    }
+}
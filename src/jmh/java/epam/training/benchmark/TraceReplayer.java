@@ -0,0 +1,207 @@
+package epam.training.benchmark;
+
+import epam.training.service.CacheService;
+import epam.training.service.CacheTrace;
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import epam.training.service.SegmentedLFUCacheService;
+import epam.training.service.TinyLFUCacheService;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a recorded {@link CacheTrace} against each cache policy at several sizes and thread
+ * counts. It reports the hit ratio of the lookups, the evictions and the throughput, to size
+ * {@code cache_service.*.max_size} from real traffic.
+ * <p>
+ * The replay is cache-aside. A lookup that misses stores the value, and the recorded put that
+ * only filled the same miss in production is skipped. The cache under test therefore fills on
+ * its own misses rather than on the misses of the recorded cache. Threads split the trace by key,
+ * so every key keeps its recorded order. Threads drift apart within the trace, which changes the
+ * interleaving of keys. Hit ratios to size a cache by are therefore the single thread ones. More
+ * threads are for throughput. Values are stand-ins of the recorded length. The time to live is
+ * long enough that nothing expires during a replay.
+ * <p>
+ * Arguments: trace file, comma-separated sizes, comma-separated thread counts, comma-separated
+ * policies. Defaults: 1000,10000,100000 entries, 1,4 threads, lru,lfu,slfu,tinylfu.
+ */
+public class TraceReplayer {
+
+    private static final int TIME_TO_LIVE = (int) TimeUnit.DAYS.toMillis(1);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceReplayer <trace> [sizes] [threads] [policies]");
+            System.exit(1);
+        }
+        CacheTrace trace = CacheTrace.load(Paths.get(args[0]));
+        int[] sizes = parseInts(args.length > 1 ? args[1] : "1000,10000,100000");
+        int[] threadCounts = parseInts(args.length > 2 ? args[2] : "1,4");
+        String[] policies = (args.length > 3 ? args[3] : "lru,lfu,slfu,tinylfu").split(",");
+        String[] values = values(trace);
+
+        System.out.printf("trace=%s operations=%d%n", args[0], trace.size());
+        System.out.printf("%-8s %10s %7s %9s %10s %14s%n", "policy", "size", "threads", "hit_ratio", "evictions", "ops_per_sec");
+        for (String policy : policies) {
+            for (int size : sizes) {
+                for (int threads : threadCounts) {
+                    CacheService cache = createCacheService(policy, size);
+                    Result result = replay(trace, values, cache, threads);
+                    System.out.printf("%-8s %10d %7d %9.4f %10d %14.0f%n", policy, size, threads,
+                            result.hitRatio(), cache.getNumberOfEvictions(), result.throughput());
+                    cache.shutdown();
+                }
+            }
+        }
+    }
+
+    private static Result replay(CacheTrace trace, String[] values, CacheService cache, int threads)
+            throws InterruptedException {
+        LongAdder gets = new LongAdder();
+        LongAdder hits = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread worker = new Thread(() -> {
+                long localGets = 0;
+                long localHits = 0;
+                boolean filled = false;
+                int filledKey = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < trace.size(); i++) {
+                    int key = trace.getKey(i);
+                    if (Math.floorMod(key * 0x9E3779B9, threads) != offset) {
+                        continue;
+                    }
+                    byte operation = trace.getOperation(i);
+                    boolean skipFill = filled && filledKey == key;
+                    filled = false;
+                    switch (operation) {
+                        case CacheTrace.GET_HIT:
+                        case CacheTrace.GET_MISS:
+                            localGets++;
+                            if (cache.get(key) != null) {
+                                localHits++;
+                            } else {
+                                cache.put(key, values[i]);
+                                filled = true;
+                                filledKey = key;
+                            }
+                            break;
+                        case CacheTrace.PUT:
+                            if (!skipFill) {
+                                cache.put(key, values[i]);
+                            }
+                            break;
+                        case CacheTrace.REMOVE:
+                            cache.removeValueFromCache(key);
+                            break;
+                        case CacheTrace.CLEAR:
+                            cache.clearCache();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                gets.add(localGets);
+                hits.add(localHits);
+                finished.countDown();
+            }, "trace-replay-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        finished.await();
+        long elapsed = System.nanoTime() - begin;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new Result(gets.sum(), hits.sum(), trace.size(), elapsed);
+    }
+
+    /**
+     * Value to store for every record, one shared string per length so the replay itself barely
+     * allocates. Misses have no recorded length and use the last one seen for the key.
+     */
+    private static String[] values(CacheTrace trace) {
+        Map<Integer, Integer> keyLengths = new HashMap<>();
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.getValueLength(i) >= 0) {
+                keyLengths.put(trace.getKey(i), trace.getValueLength(i));
+            }
+        }
+        Map<Integer, String> byLength = new HashMap<>();
+        String[] values = new String[trace.size()];
+        for (int i = 0; i < trace.size(); i++) {
+            byte operation = trace.getOperation(i);
+            if (operation == CacheTrace.PUT || operation == CacheTrace.GET_HIT || operation == CacheTrace.GET_MISS) {
+                int length = trace.getValueLength(i) >= 0
+                        ? trace.getValueLength(i)
+                        : keyLengths.getOrDefault(trace.getKey(i), 0);
+                values[i] = byLength.computeIfAbsent(length, n -> {
+                    char[] chars = new char[n];
+                    Arrays.fill(chars, 'v');
+                    return new String(chars);
+                });
+            }
+        }
+        return values;
+    }
+
+    private static CacheService createCacheService(String policy, int size) {
+        switch (policy) {
+            case "lru":
+                return new LRUCacheService(size, TIME_TO_LIVE);
+            case "lfu":
+                return new LFUCacheService(size, TIME_TO_LIVE);
+            case "slfu":
+                return new SegmentedLFUCacheService(size, TIME_TO_LIVE);
+            case "tinylfu":
+                return new TinyLFUCacheService(size, TIME_TO_LIVE);
+            default:
+                throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static final class Result {
+        private final long gets;
+        private final long hits;
+        private final long operations;
+        private final long nanos;
+
+        private Result(long gets, long hits, long operations, long nanos) {
+            this.gets = gets;
+            this.hits = hits;
+            this.operations = operations;
+            this.nanos = nanos;
+        }
+
+        double hitRatio() {
+            return gets == 0 ? 0 : (double) hits / gets;
+        }
+
+        double throughput() {
+            return operations / (nanos / 1e9);
+        }
+    }
+}
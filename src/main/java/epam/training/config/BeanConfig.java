@@ -1,22 +1,254 @@
 package epam.training.config;
+import epam.training.server.BinaryCacheServer;
+import epam.training.service.AdaptiveCacheService;
+import epam.training.service.CacheService;
+import epam.training.service.CacheSnapshotStore;
+import epam.training.service.HotKeyTracker;
 import epam.training.service.LFUCacheService;
 import epam.training.service.LRUCacheService;
+import epam.training.service.LoggingCacheEventListener;
+import epam.training.service.NearCacheService;
+import epam.training.service.OffHeapValueStore;
+import epam.training.service.ResizableCache;
+import epam.training.service.SegmentedLFUCacheService;
+import epam.training.service.ShardedCacheService;
+import epam.training.service.TinyLFUCacheService;
+import epam.training.service.ValueCompressor;
+import epam.training.service.WriteAheadLog;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
 @Configuration
 @PropertySource("classpath:application.properties")
 public class BeanConfig {
 
+    @Value("${cache_service.events.sample_rate}")
+    private Integer eventSampleRate;
+    @Value("${cache_service.events.summary_period}")
+    private Long eventSummaryPeriod;
+    @Value("${cache_service.hot_keys.top}")
+    private Integer hotKeysTop;
+    @Value("${cache_service.hot_keys.window}")
+    private Long hotKeysWindow;
+
+    @Bean
     public LRUCacheService lruCacheService(@Value("${cache_service.lru.max_size}") Integer maxSize,
-                                           @Value("${cache_service.lru.timestamp}") Integer timestamp ) {
-      return new LRUCacheService(maxSize, timestamp);
+                                           @Value("${cache_service.lru.timestamp}") Integer timestamp,
+                                           @Value("${cache_service.lru.concurrency_level}") Integer concurrencyLevel,
+                                           @Value("${cache_service.lru.off_heap}") Boolean offHeap,
+                                           @Value("${cache_service.lru.max_bytes}") Long maxBytes,
+                                           @Value("${cache_service.lru.snapshot_path}") String snapshotPath,
+                                           @Value("${cache_service.lru.snapshot_period}") Long snapshotPeriod,
+                                           @Value("${cache_service.lru.wal_path}") String walPath,
+                                           @Value("${cache_service.lru.wal_sync}") Boolean walSync,
+                                           @Value("${cache_service.lru.refresh_ahead}") Double refreshAhead,
+                                           @Value("${cache_service.lru.compression_threshold}") Integer compressionThreshold,
+                                           @Value("${cache_service.lru.compression_dictionary}") String compressionDictionary) throws IOException {
+      LRUCacheService lruCacheService = new LRUCacheService(maxSize, timestamp, concurrencyLevel,
+              offHeap ? new OffHeapValueStore() : null);
+      if (maxBytes > 0) {
+          lruCacheService.setMaxBytes(maxBytes);
+      }
+      if (!snapshotPath.isEmpty()) {
+          lruCacheService.enableSnapshots(new CacheSnapshotStore(Paths.get(snapshotPath)), snapshotPeriod);
+      }
+      if (!walPath.isEmpty()) {
+          lruCacheService.enableWriteAheadLog(new WriteAheadLog(Paths.get(walPath)), walSync);
+      }
+      lruCacheService.setRefreshAheadRatio(refreshAhead);
+      if (compressionThreshold > 0) {
+          lruCacheService.enableCompression(compressor(compressionThreshold, compressionDictionary));
+      }
+      if (hotKeysTop > 0) {
+          lruCacheService.enableHotKeyTracking(new HotKeyTracker(hotKeysTop, hotKeysWindow));
+      }
+      return withEventLog("lru", lruCacheService);
     }
 
+    @Bean
     public LFUCacheService lfUCacheService(@Value("${cache_service.lfu.max_size}") Integer maxSize,
-                                           @Value("${cache_service.lfu.timestamp}") Integer timestamp ) {
-        return new LFUCacheService(maxSize, timestamp);
+                                           @Value("${cache_service.lfu.timestamp}") Integer timestamp,
+                                           @Value("${cache_service.lfu.off_heap}") Boolean offHeap,
+                                           @Value("${cache_service.lfu.max_bytes}") Long maxBytes,
+                                           @Value("${cache_service.lfu.snapshot_path}") String snapshotPath,
+                                           @Value("${cache_service.lfu.snapshot_period}") Long snapshotPeriod,
+                                           @Value("${cache_service.lfu.wal_path}") String walPath,
+                                           @Value("${cache_service.lfu.wal_sync}") Boolean walSync,
+                                           @Value("${cache_service.lfu.refresh_ahead}") Double refreshAhead,
+                                           @Value("${cache_service.lfu.compression_threshold}") Integer compressionThreshold,
+                                           @Value("${cache_service.lfu.compression_dictionary}") String compressionDictionary) throws IOException {
+        LFUCacheService lfuCacheService = offHeap
+                ? new LFUCacheService(maxSize, timestamp, new OffHeapValueStore())
+                : new LFUCacheService(maxSize, timestamp);
+        if (maxBytes > 0) {
+            lfuCacheService.setMaxBytes(maxBytes);
+        }
+        if (!snapshotPath.isEmpty()) {
+            lfuCacheService.enableSnapshots(new CacheSnapshotStore(Paths.get(snapshotPath)), snapshotPeriod);
+        }
+        if (!walPath.isEmpty()) {
+            lfuCacheService.enableWriteAheadLog(new WriteAheadLog(Paths.get(walPath)), walSync);
+        }
+        lfuCacheService.setRefreshAheadRatio(refreshAhead);
+        if (compressionThreshold > 0) {
+            lfuCacheService.enableCompression(compressor(compressionThreshold, compressionDictionary));
+        }
+        if (hotKeysTop > 0) {
+            lfuCacheService.enableHotKeyTracking(new HotKeyTracker(hotKeysTop, hotKeysWindow));
+        }
+        return withEventLog("lfu", lfuCacheService);
+    }
+
+    @Bean
+    public SegmentedLFUCacheService segmentedLfuCacheService(@Value("${cache_service.slfu.max_size}") Integer maxSize,
+                                                             @Value("${cache_service.slfu.timestamp}") Integer timestamp,
+                                                             @Value("${cache_service.slfu.concurrency_level}") Integer concurrencyLevel) {
+        return withEventLog("slfu", new SegmentedLFUCacheService(maxSize, timestamp, concurrencyLevel));
+    }
+
+    @Bean
+    public TinyLFUCacheService tinyLfuCacheService(@Value("${cache_service.tinylfu.max_size}") Integer maxSize,
+                                                   @Value("${cache_service.tinylfu.timestamp}") Integer timestamp,
+                                                   @Value("${cache_service.tinylfu.window_percent}") Integer windowPercent) {
+        return withEventLog("tinylfu", new TinyLFUCacheService(maxSize, timestamp, windowPercent));
+    }
+
+    /**
+     * Cache that follows whichever of LRU, LFU and W-TinyLFU with a small or a large window does
+     * best on the sampled traffic.
+     */
+    @Bean
+    public AdaptiveCacheService adaptiveCacheService(@Value("${cache_service.adaptive.max_size}") Integer maxSize,
+                                                     @Value("${cache_service.adaptive.timestamp}") Integer timestamp,
+                                                     @Value("${cache_service.adaptive.policy}") String policy,
+                                                     @Value("${cache_service.adaptive.sample_rate}") Double sampleRate,
+                                                     @Value("${cache_service.adaptive.evaluation_period}") Long evaluationPeriod,
+                                                     @Value("${cache_service.adaptive.auto_switch}") Boolean autoSwitch) {
+        Map<String, IntFunction<CacheService>> policies = new LinkedHashMap<>();
+        policies.put("lru", capacity -> new LRUCacheService(capacity, timestamp));
+        policies.put("lfu", capacity -> new LFUCacheService(capacity, timestamp));
+        policies.put("tinylfu", capacity -> new TinyLFUCacheService(capacity, timestamp, 1));
+        policies.put("tinylfu-20", capacity -> new TinyLFUCacheService(capacity, timestamp, 20));
+        return withEventLog("adaptive",
+                new AdaptiveCacheService(maxSize, policies, policy, sampleRate, evaluationPeriod, autoSwitch));
+    }
+
+    /**
+     * Near cache in front of the LFU cache. Its events are the LFU cache's, which already logs them.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public NearCacheService nearCacheService(@Value("${cache_service.near.capacity}") Integer capacity,
+                                             LFUCacheService lfuCacheService) {
+        return new NearCacheService(lfuCacheService, capacity);
+    }
+
+    /**
+     * LFU nodes behind a consistent-hash ring, each holding an equal share of max_size.
+     */
+    @Bean
+    public ShardedCacheService shardedCacheService(@Value("${cache_service.sharded.nodes}") Integer nodeCount,
+                                                   @Value("${cache_service.sharded.max_size}") Integer maxSize,
+                                                   @Value("${cache_service.sharded.timestamp}") Integer timestamp,
+                                                   @Value("${cache_service.sharded.virtual_nodes}") Integer virtualNodes) {
+        Map<String, CacheService> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.put("node-" + i, new LFUCacheService(Math.max(maxSize / nodeCount, 1), timestamp));
+        }
+        return withEventLog("sharded", new ShardedCacheService(nodes, virtualNodes));
     }
 
+    /**
+     * The binary protocol has no authentication, so the server is off unless enabled and listens on
+     * the loopback interface unless given another address. It refuses to start next to a
+     * write-ahead log that syncs writes, see {@link BinaryCacheServer}.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "cache_service.binary.enabled", havingValue = "true")
+    public BinaryCacheServer binaryCacheServer(@Value("${cache_service.binary.address}") String address,
+                                               @Value("${cache_service.binary.port}") Integer port,
+                                               @Value("${cache_service.binary.io_threads}") Integer ioThreads,
+                                               LRUCacheService lruCacheService,
+                                               LFUCacheService lfuCacheService,
+                                               SegmentedLFUCacheService segmentedLfuCacheService,
+                                               TinyLFUCacheService tinyLfuCacheService) throws IOException {
+        if (lruCacheService.isSyncingWrites() || lfuCacheService.isSyncingWrites()) {
+            // a write waiting for the disk would stall every connection of its event loop
+            throw new IllegalStateException("The binary server cannot serve caches whose write-ahead log syncs "
+                    + "writes, set cache_service.lru.wal_sync and cache_service.lfu.wal_sync to false");
+        }
+        // ordered by the cache ids of BinaryProtocol
+        List<CacheService> caches = Arrays.asList(lruCacheService, lfuCacheService,
+                segmentedLfuCacheService, tinyLfuCacheService);
+        BinaryCacheServer server = new BinaryCacheServer(new InetSocketAddress(address, port), ioThreads, caches);
+        server.start();
+        return server;
+    }
+
+    @Bean
+    public HotKeysEndpoint hotKeysEndpoint(LRUCacheService lruCacheService, LFUCacheService lfuCacheService) {
+        Map<String, HotKeyTracker> trackers = new LinkedHashMap<>();
+        if (lruCacheService.getHotKeyTracker() != null) {
+            trackers.put("lru", lruCacheService.getHotKeyTracker());
+        }
+        if (lfuCacheService.getHotKeyTracker() != null) {
+            trackers.put("lfu", lfuCacheService.getHotKeyTracker());
+        }
+        return new HotKeysEndpoint(trackers);
+    }
+
+    @Bean
+    public CacheResizeEndpoint cacheResizeEndpoint(LRUCacheService lruCacheService, LFUCacheService lfuCacheService) {
+        Map<String, ResizableCache> caches = new LinkedHashMap<>();
+        caches.put("lru", lruCacheService);
+        caches.put("lfu", lfuCacheService);
+        return new CacheResizeEndpoint(caches);
+    }
+
+    @Bean
+    public MeterBinder cacheMetricsBinder(LRUCacheService lruCacheService,
+                                          LFUCacheService lfuCacheService,
+                                          SegmentedLFUCacheService segmentedLfuCacheService,
+                                          TinyLFUCacheService tinyLfuCacheService,
+                                          ShardedCacheService shardedCacheService,
+                                          NearCacheService nearCacheService,
+                                          AdaptiveCacheService adaptiveCacheService) {
+        Map<String, CacheService> cacheServices = new LinkedHashMap<>();
+        cacheServices.put("lru", lruCacheService);
+        cacheServices.put("lfu", lfuCacheService);
+        cacheServices.put("slfu", segmentedLfuCacheService);
+        cacheServices.put("tinylfu", tinyLfuCacheService);
+        cacheServices.put("near", nearCacheService);
+        cacheServices.put("adaptive", adaptiveCacheService);
+        cacheServices.put("sharded", shardedCacheService);
+        shardedCacheService.getNodes().forEach((node, cacheService) -> cacheServices.put("sharded." + node, cacheService));
+        return new CacheMetricsBinder(cacheServices);
+    }
+
+    /**
+     * The dictionary file holds the raw bytes of a dictionary, such as one written by the compression report.
+     */
+    private static ValueCompressor compressor(int threshold, String dictionaryPath) throws IOException {
+        return dictionaryPath.isEmpty()
+                ? new ValueCompressor(threshold)
+                : new ValueCompressor(threshold, Files.readAllBytes(Paths.get(dictionaryPath)));
+    }
+
+    private <T extends CacheService> T withEventLog(String cacheName, T cacheService) {
+        cacheService.addEventListener(new LoggingCacheEventListener(cacheName, eventSampleRate, eventSummaryPeriod));
+        return cacheService;
+    }
 }
@@ -0,0 +1,155 @@
+package epam.training.config;
+
+import epam.training.service.CacheMetrics;
+import epam.training.service.CacheService;
+import epam.training.service.CacheResize;
+import epam.training.service.CompressingCache;
+import epam.training.service.ResizableCache;
+import epam.training.service.ValueCompressor;
+import epam.training.service.WeightedCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Publishes the statistics of every cache service to Micrometer, tagged with the cache name,
+ * so they show up under the actuator metrics endpoint. Latencies are reported in milliseconds.
+ */
+public class CacheMetricsBinder implements MeterBinder {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<String, CacheService> cacheServices;
+
+    public CacheMetricsBinder(Map<String, CacheService> cacheServices) {
+        this.cacheServices = cacheServices;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        cacheServices.forEach((name, cacheService) -> {
+            CacheMetrics metrics = cacheService.getMetrics();
+            FunctionCounter.builder("cache.gets", metrics, CacheMetrics::getHitCount)
+                    .tags("cache", name, "result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", metrics, CacheMetrics::getMissCount)
+                    .tags("cache", name, "result", "miss")
+                    .register(registry);
+            Gauge.builder("cache.hit.ratio", metrics, CacheMetrics::getHitRate)
+                    .tags("cache", name)
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", cacheService, CacheService::getNumberOfEvictions)
+                    .tags("cache", name)
+                    .register(registry);
+            FunctionCounter.builder("cache.expirations", cacheService, CacheService::getNumberOfExpirations)
+                    .tags("cache", name)
+                    .register(registry);
+            if (cacheService instanceof WeightedCache) {
+                Gauge.builder("cache.weighted.size", (WeightedCache) cacheService, WeightedCache::getWeightedSize)
+                        .tags("cache", name)
+                        .baseUnit("bytes")
+                        .register(registry);
+            }
+            if (cacheService instanceof CompressingCache && ((CompressingCache) cacheService).getCompressor() != null) {
+                registerCompression(registry, name, ((CompressingCache) cacheService).getCompressor());
+            }
+            if (cacheService instanceof ResizableCache) {
+                registerResize(registry, name, (ResizableCache) cacheService);
+            }
+            for (CacheMetrics.Operation operation : CacheMetrics.Operation.values()) {
+                String operationName = operation.name().toLowerCase();
+                registerLatency(registry, name, operationName, metrics, operation, "0.5", CacheMetrics.LatencySnapshot::getP50);
+                registerLatency(registry, name, operationName, metrics, operation, "0.9", CacheMetrics.LatencySnapshot::getP90);
+                registerLatency(registry, name, operationName, metrics, operation, "0.99", CacheMetrics.LatencySnapshot::getP99);
+                registerLatency(registry, name, operationName, metrics, operation, "0.999", CacheMetrics.LatencySnapshot::getP999);
+                registerLatency(registry, name, operationName, metrics, operation, "1.0", CacheMetrics.LatencySnapshot::getMax);
+            }
+        });
+    }
+
+    /**
+     * Hits by kind of entry, how well values compress and what reading a compressed one costs.
+     */
+    private static void registerCompression(MeterRegistry registry, String cacheName, ValueCompressor compressor) {
+        FunctionCounter.builder("cache.compression.hits", compressor, ValueCompressor::getCompressedHitCount)
+                .tags("cache", cacheName, "entry", "compressed")
+                .register(registry);
+        FunctionCounter.builder("cache.compression.hits", compressor, ValueCompressor::getRawHitCount)
+                .tags("cache", cacheName, "entry", "raw")
+                .register(registry);
+        FunctionCounter.builder("cache.compression.values", compressor, ValueCompressor::getCompressedValueCount)
+                .tags("cache", cacheName, "result", "compressed")
+                .register(registry);
+        FunctionCounter.builder("cache.compression.values", compressor, ValueCompressor::getIncompressibleValueCount)
+                .tags("cache", cacheName, "result", "incompressible")
+                .register(registry);
+        Gauge.builder("cache.compression.ratio", compressor, ValueCompressor::getCompressionRatio)
+                .tags("cache", cacheName)
+                .register(registry);
+        Gauge.builder("cache.compression.saved", compressor, ValueCompressor::getBytesSaved)
+                .tags("cache", cacheName)
+                .baseUnit("bytes")
+                .register(registry);
+        registerDecompressionLatency(registry, cacheName, compressor, "0.5", CacheMetrics.LatencySnapshot::getP50);
+        registerDecompressionLatency(registry, cacheName, compressor, "0.99", CacheMetrics.LatencySnapshot::getP99);
+        registerDecompressionLatency(registry, cacheName, compressor, "1.0", CacheMetrics.LatencySnapshot::getMax);
+    }
+
+    /**
+     * Limits of the cache and the state of its last resize, which stays reported once done.
+     */
+    private static void registerResize(MeterRegistry registry, String cacheName, ResizableCache cache) {
+        Gauge.builder("cache.capacity", cache, ResizableCache::getCapacity)
+                .tags("cache", cacheName)
+                .register(registry);
+        Gauge.builder("cache.time.to.live", cache, ResizableCache::getTimeToLive)
+                .tags("cache", cacheName)
+                .baseUnit("milliseconds")
+                .register(registry);
+        registerLastResize(registry, "cache.resize.remaining", cacheName, cache, CacheResize::getRemaining);
+        registerLastResize(registry, "cache.resize.progress", cacheName, cache, CacheResize::getProgress);
+        Gauge.builder("cache.resize.hit.ratio", cache, c -> lastResize(c, CacheResize::getHitRateBefore))
+                .tags("cache", cacheName, "period", "before")
+                .register(registry);
+        Gauge.builder("cache.resize.hit.ratio", cache, c -> lastResize(c, CacheResize::getHitRateSince))
+                .tags("cache", cacheName, "period", "since")
+                .register(registry);
+    }
+
+    private static void registerLastResize(MeterRegistry registry, String meterName, String cacheName,
+                                           ResizableCache cache, ToDoubleFunction<CacheResize> value) {
+        Gauge.builder(meterName, cache, c -> lastResize(c, value))
+                .tags("cache", cacheName)
+                .register(registry);
+    }
+
+    /**
+     * NaN before the first resize.
+     */
+    private static double lastResize(ResizableCache cache, ToDoubleFunction<CacheResize> value) {
+        CacheResize resize = cache.getLastResize();
+        return resize == null ? Double.NaN : value.applyAsDouble(resize);
+    }
+
+    private static void registerDecompressionLatency(MeterRegistry registry, String cacheName, ValueCompressor compressor,
+                                                     String percentile, ToLongFunction<CacheMetrics.LatencySnapshot> value) {
+        Gauge.builder("cache.decompression.latency", compressor, c -> value.applyAsLong(c.decompressionLatency()) / NANOS_PER_MILLI)
+                .tags("cache", cacheName, "percentile", percentile)
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private static void registerLatency(MeterRegistry registry, String cacheName, String operationName,
+                                        CacheMetrics metrics, CacheMetrics.Operation operation, String percentile,
+                                        ToLongFunction<CacheMetrics.LatencySnapshot> value) {
+        Gauge.builder("cache.latency", metrics, m -> value.applyAsLong(m.snapshot(operation)) / NANOS_PER_MILLI)
+                .tags("cache", cacheName, "operation", operationName, "percentile", percentile)
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+}
@@ -0,0 +1,65 @@
+package epam.training.config;
+
+import epam.training.service.CacheResize;
+import epam.training.service.ResizableCache;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code /actuator/cacheresize} showing the capacity, the time to live and the
+ * last resize of every resizable cache. A POST to {@code /actuator/cacheresize/{cache}} with
+ * {@code capacity} and/or {@code timeToLive} resizes that cache while it keeps serving, a value left
+ * out stays as it is.
+ */
+@Endpoint(id = "cacheresize")
+public class CacheResizeEndpoint {
+
+    private final Map<String, ResizableCache> caches;
+
+    public CacheResizeEndpoint(Map<String, ResizableCache> caches) {
+        this.caches = caches;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> caches() {
+        Map<String, Map<String, Object>> reports = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> reports.put(name, report(cache)));
+        return reports;
+    }
+
+    /**
+     * Null, which the actuator answers with 404, for a cache that is not resizable.
+     */
+    @ReadOperation
+    public Map<String, Object> cache(@Selector String cache) {
+        ResizableCache resizable = caches.get(cache);
+        return resizable == null ? null : report(resizable);
+    }
+
+    /**
+     * Starts the resize and returns its progress right away, reading the cache follows it.
+     */
+    @WriteOperation
+    public CacheResize resize(@Selector String cache, @Nullable Integer capacity, @Nullable Integer timeToLive) {
+        ResizableCache resizable = caches.get(cache);
+        if (resizable == null) {
+            return null;
+        }
+        return resizable.resize(capacity == null ? resizable.getCapacity() : capacity,
+                timeToLive == null ? resizable.getTimeToLive() : timeToLive);
+    }
+
+    private static Map<String, Object> report(ResizableCache cache) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("capacity", cache.getCapacity());
+        report.put("timeToLive", cache.getTimeToLive());
+        report.put("lastResize", cache.getLastResize());
+        return report;
+    }
+}
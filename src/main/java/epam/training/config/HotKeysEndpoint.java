@@ -0,0 +1,49 @@
+package epam.training.config;
+
+import epam.training.service.HotKeyTracker;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code /actuator/hotkeys} listing the most accessed and the most missed keys of
+ * every tracked cache, for the window being counted and the last complete one.
+ * {@code /actuator/hotkeys/{cache}} narrows it to one cache.
+ */
+@Endpoint(id = "hotkeys")
+public class HotKeysEndpoint {
+
+    private final Map<String, HotKeyTracker> trackers;
+
+    public HotKeysEndpoint(Map<String, HotKeyTracker> trackers) {
+        this.trackers = trackers;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> hotKeys() {
+        Map<String, Map<String, Object>> reports = new LinkedHashMap<>();
+        trackers.forEach((name, tracker) -> reports.put(name, report(tracker)));
+        return reports;
+    }
+
+    /**
+     * Null, which the actuator answers with 404, for a cache that is not tracked.
+     */
+    @ReadOperation
+    public Map<String, Object> hotKeys(@Selector String cache) {
+        HotKeyTracker tracker = trackers.get(cache);
+        return tracker == null ? null : report(tracker);
+    }
+
+    private static Map<String, Object> report(HotKeyTracker tracker) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("windowMillis", tracker.getWindowMillis());
+        report.put("dropped", tracker.getDroppedCount());
+        report.put("current", tracker.currentWindow());
+        report.put("last", tracker.lastWindow());
+        return report;
+    }
+}
@@ -0,0 +1,131 @@
+package epam.training.contoller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Wire format of the binary batch endpoints, all integers are big-endian.
+ * <ul>
+ *     <li>key list: the keys as consecutive int32 values</li>
+ *     <li>entry list: per entry an int32 key, an int32 byte length and the UTF-8 value bytes</li>
+ * </ul>
+ * Lookups answer with an entry list in request order where a length of -1 marks a missing key.
+ * Both lists are handled {@link #CHUNK} keys or entries at a time, so a batch never has to fit
+ * in memory as a whole.
+ */
+final class BinaryBatchCodec {
+
+    static final int MISSING = -1;
+    static final int CHUNK = 1024;
+
+    private static final int VALUE_PIECE = 8192;
+
+    private BinaryBatchCodec() {
+    }
+
+    /**
+     * Reads the key list chunk by chunk and writes what {@code lookup} finds for a chunk before
+     * reading the next one. A truncated list is only noticed once earlier chunks may be answered.
+     */
+    static void copyLookups(InputStream inputStream, OutputStream outputStream,
+                            Function<int[], Map<Integer, String>> lookup) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        int[] keys = new int[CHUNK];
+        try {
+            while (true) {
+                int count = 0;
+                while (count < keys.length && hasMore(input)) {
+                    keys[count++] = input.readInt();
+                }
+                if (count == 0) {
+                    break;
+                }
+                int[] chunk = count == keys.length ? keys : Arrays.copyOf(keys, count);
+                writeEntries(chunk, lookup.apply(chunk), output);
+            }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Key list length must be a multiple of 4 bytes", e);
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads the entry list and hands it to {@code store} chunk by chunk. Chunks before a malformed
+     * entry are stored already.
+     */
+    static void copyEntries(InputStream inputStream, Consumer<Map<Integer, String>> store) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        Map<Integer, String> entries = new LinkedHashMap<>();
+        try {
+            while (hasMore(input)) {
+                int key = input.readInt();
+                int length = input.readInt();
+                if (length < 0) {
+                    throw new IllegalArgumentException("Invalid value length " + length + " for key " + key);
+                }
+                entries.put(key, new String(readValue(input, length), StandardCharsets.UTF_8));
+                if (entries.size() == CHUNK) {
+                    store.accept(entries);
+                    entries = new LinkedHashMap<>();
+                }
+            }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Truncated entry list", e);
+        }
+        if (!entries.isEmpty()) {
+            store.accept(entries);
+        }
+    }
+
+    private static void writeEntries(int[] keys, Map<Integer, String> values, DataOutputStream output) throws IOException {
+        for (int key : keys) {
+            String value = values.get(key);
+            output.writeInt(key);
+            if (value == null) {
+                output.writeInt(MISSING);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+    }
+
+    private static boolean hasMore(DataInputStream input) throws IOException {
+        input.mark(1);
+        boolean more = input.read() >= 0;
+        input.reset();
+        return more;
+    }
+
+    // grows with the bytes that actually arrive, so a bogus length cannot allocate ahead of the body
+    private static byte[] readValue(DataInputStream input, int length) throws IOException {
+        if (length <= VALUE_PIECE) {
+            byte[] value = new byte[length];
+            input.readFully(value);
+            return value;
+        }
+        ByteArrayOutputStream value = new ByteArrayOutputStream(VALUE_PIECE);
+        byte[] piece = new byte[VALUE_PIECE];
+        for (int left = length; left > 0; left -= piece.length) {
+            int size = Math.min(left, piece.length);
+            input.readFully(piece, 0, size);
+            value.write(piece, 0, size);
+        }
+        return value.toByteArray();
+    }
+}
@@ -0,0 +1,100 @@
+package epam.training.contoller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * JSON side of the batch endpoints: a lookup takes an array of keys and answers with an object
+ * of the cached entries, a store takes such an object. Like {@link BinaryBatchCodec} both are
+ * streamed {@link BinaryBatchCodec#CHUNK} keys or entries at a time.
+ */
+final class JsonBatchCodec {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private JsonBatchCodec() {
+    }
+
+    /**
+     * Reads the key array chunk by chunk and writes what {@code lookup} finds for a chunk before
+     * reading the next one. Anything but an array fails before the answer starts.
+     */
+    static void copyLookups(InputStream inputStream, OutputStream outputStream,
+                            Function<int[], Map<Integer, String>> lookup) throws IOException {
+        try (JsonParser input = JSON.createParser(inputStream)) {
+            expect(input, JsonToken.START_ARRAY, "array of keys");
+            try (JsonGenerator output = JSON.createGenerator(outputStream)) {
+                output.writeStartObject();
+                int[] keys = new int[BinaryBatchCodec.CHUNK];
+                int count = 0;
+                while (input.nextToken() != JsonToken.END_ARRAY) {
+                    if (input.currentToken() != JsonToken.VALUE_NUMBER_INT) {
+                        throw new IllegalArgumentException("Expected an integer key but got " + input.currentToken());
+                    }
+                    keys[count++] = input.getIntValue();
+                    if (count == keys.length) {
+                        writeEntries(lookup.apply(keys), output);
+                        count = 0;
+                    }
+                }
+                if (count > 0) {
+                    writeEntries(lookup.apply(Arrays.copyOf(keys, count)), output);
+                }
+                output.writeEndObject();
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the entry object and hands it to {@code store} chunk by chunk. Chunks before a
+     * malformed entry are stored already.
+     */
+    static void copyEntries(InputStream inputStream, Consumer<Map<Integer, String>> store) throws IOException {
+        try (JsonParser input = JSON.createParser(inputStream)) {
+            expect(input, JsonToken.START_OBJECT, "object of entries");
+            Map<Integer, String> entries = new LinkedHashMap<>();
+            while (input.nextToken() != JsonToken.END_OBJECT) {
+                int key = Integer.parseInt(input.getCurrentName());
+                if (input.nextToken() != JsonToken.VALUE_STRING) {
+                    throw new IllegalArgumentException("Expected a string value for key " + key);
+                }
+                entries.put(key, input.getText());
+                if (entries.size() == BinaryBatchCodec.CHUNK) {
+                    store.accept(entries);
+                    entries = new LinkedHashMap<>();
+                }
+            }
+            if (!entries.isEmpty()) {
+                store.accept(entries);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage(), e);
+        }
+    }
+
+    private static void writeEntries(Map<Integer, String> entries, JsonGenerator output) throws IOException {
+        for (Map.Entry<Integer, String> entry : entries.entrySet()) {
+            output.writeStringField(String.valueOf(entry.getKey()), entry.getValue());
+        }
+    }
+
+    private static void expect(JsonParser input, JsonToken token, String what) throws IOException {
+        if (input.nextToken() != token) {
+            throw new IllegalArgumentException("Expected an " + what);
+        }
+    }
+}
@@ -1,11 +1,40 @@
 package epam.training.contoller;
+import epam.training.service.AdaptiveCacheService;
+import epam.training.service.CacheService;
+import epam.training.service.CacheTrace;
+import epam.training.service.CacheTraceRecorder;
+import epam.training.service.Expiry;
 import epam.training.service.LFUCacheService;
 import epam.training.service.LRUCacheService;
+import epam.training.service.NearCacheService;
+import epam.training.service.SegmentedLFUCacheService;
+import epam.training.service.ShardedCacheService;
+import epam.training.service.TinyLFUCacheService;
+import epam.training.service.TracingCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
@@ -18,6 +47,40 @@ public class RestCacheController
     private LRUCacheService lruCacheService;
     @Autowired
     private LFUCacheService lfuCacheService;
+    @Autowired
+    private SegmentedLFUCacheService segmentedLfuCacheService;
+    @Autowired
+    private TinyLFUCacheService tinyLfuCacheService;
+    @Autowired
+    private NearCacheService nearCacheService;
+    @Autowired
+    private AdaptiveCacheService adaptiveCacheService;
+    @Autowired
+    private ShardedCacheService shardedCacheService;
+    @Value("${cache_service.trace.dir}")
+    private String traceDirectory;
+    @Value("${cache_service.trace.max_records}")
+    private Long maxTraceRecords;
+    private final Map<String, TracingCacheService> cacheServices = new LinkedHashMap<>();
+
+    /**
+     * Requests reach the caches through tracing wrappers, so their traffic can be recorded.
+     */
+    @PostConstruct
+    public void wrapCacheServices() {
+        cacheServices.put("lru", new TracingCacheService(lruCacheService));
+        cacheServices.put("lfu", new TracingCacheService(lfuCacheService));
+        cacheServices.put("slfu", new TracingCacheService(segmentedLfuCacheService));
+        cacheServices.put("tinylfu", new TracingCacheService(tinyLfuCacheService));
+        cacheServices.put("adaptive", new TracingCacheService(adaptiveCacheService));
+        cacheServices.put("near", new TracingCacheService(nearCacheService));
+        cacheServices.put("sharded", new TracingCacheService(shardedCacheService));
+    }
+
+    @PreDestroy
+    public void stopTraces() {
+        cacheServices.values().forEach(TracingCacheService::shutdown);
+    }
 
     @RequestMapping(
             value = "/lru/{id}",
@@ -25,7 +88,7 @@ public class RestCacheController
             method = GET)
     @ResponseBody
     public String getLruCacheEntityById(@RequestParam("id") int id) {
-        return lruCacheService.get(id);
+        return cacheService("lru").get(id);
     }
 
     @RequestMapping(
@@ -34,8 +97,8 @@ public class RestCacheController
             method = POST)
     @ResponseBody
     public void putLruCacheEntity(@RequestParam("id") int id,
-                                    @RequestParam("id") String value) {
-        lruCacheService.put(id,value);
+                                    @RequestParam("value") String value) {
+        cacheService("lru").put(id,value);
     }
 
     @RequestMapping(
@@ -44,7 +107,7 @@ public class RestCacheController
             method = GET)
     @ResponseBody
     public String getLfuCacheEntityById(@RequestParam("id") int id) {
-        return lfuCacheService.get(id);
+        return cacheService("lfu").get(id);
     }
 
     @RequestMapping(
@@ -53,7 +116,278 @@ public class RestCacheController
             method = POST)
     @ResponseBody
     public void putLfuCacheEntity(@RequestParam("id") int id,
-                                  @RequestParam("id") String value) {
-        lfuCacheService.put(id,value);
+                                  @RequestParam("value") String value) {
+        cacheService("lfu").put(id,value);
+    }
+
+    @RequestMapping(
+            value = "/slfu/{id}",
+            params = { "id" },
+            method = GET)
+    @ResponseBody
+    public String getSegmentedLfuCacheEntityById(@RequestParam("id") int id) {
+        return cacheService("slfu").get(id);
+    }
+
+    @RequestMapping(
+            value = "/slfu/{id}",
+            params = { "id", "value" },
+            method = POST)
+    @ResponseBody
+    public void putSegmentedLfuCacheEntity(@RequestParam("id") int id,
+                                           @RequestParam("value") String value) {
+        cacheService("slfu").put(id,value);
+    }
+
+    @RequestMapping(
+            value = "/tinylfu/{id}",
+            params = { "id" },
+            method = GET)
+    @ResponseBody
+    public String getTinyLfuCacheEntityById(@RequestParam("id") int id) {
+        return cacheService("tinylfu").get(id);
+    }
+
+    @RequestMapping(
+            value = "/tinylfu/{id}",
+            params = { "id", "value" },
+            method = POST)
+    @ResponseBody
+    public void putTinyLfuCacheEntity(@RequestParam("id") int id,
+                                      @RequestParam("value") String value) {
+        cacheService("tinylfu").put(id,value);
+    }
+
+    /**
+     * Current policy of the adaptive cache with the miss-ratio curve and recent hit rates of every
+     * candidate policy, as simulated on the sampled traffic.
+     */
+    @RequestMapping(
+            value = "/adaptive/simulation",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            method = GET)
+    @ResponseBody
+    public Map<String, Object> getAdaptiveSimulation() {
+        Map<String, Object> simulation = new LinkedHashMap<>();
+        simulation.put("policy", adaptiveCacheService.getPolicy());
+        simulation.put("switches", adaptiveCacheService.getNumberOfSwitches());
+        simulation.put("sampleRate", adaptiveCacheService.getSimulator().getSampleRate());
+        simulation.put("droppedSamples", adaptiveCacheService.getSimulator().getDroppedSamples());
+        simulation.put("curves", adaptiveCacheService.getSimulator().getCurves());
+        return simulation;
+    }
+
+    @RequestMapping(
+            value = "/adaptive/policy",
+            params = { "name" },
+            method = POST)
+    @ResponseBody
+    public void switchAdaptivePolicy(@RequestParam("name") String name) {
+        try {
+            adaptiveCacheService.switchPolicy(name);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts recording the operations on a cache to a new trace file, see {@link CacheTrace}. The
+     * file is named by the request and created in {@code cache_service.trace.dir}, which also bounds
+     * its size through {@code cache_service.trace.max_records}.
+     */
+    @RequestMapping(
+            value = "/{cacheName}/trace/start",
+            params = { "file" },
+            method = POST)
+    @ResponseBody
+    public void startTrace(@PathVariable("cacheName") String cacheName,
+                           @RequestParam("file") String file,
+                           @RequestParam(value = "maxRecords", required = false) Long maxRecords) {
+        long records = maxRecords == null ? maxTraceRecords : maxRecords;
+        if (records > maxTraceRecords) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxRecords is limited to " + maxTraceRecords);
+        }
+        try {
+            cacheService(cacheName).startRecording(
+                    CacheTraceRecorder.resolve(Paths.get(traceDirectory), file), records);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (FileAlreadyExistsException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Trace file exists: " + file, e);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops recording and returns the number of operations in the trace.
+     */
+    @RequestMapping(
+            value = "/{cacheName}/trace/stop",
+            method = POST)
+    @ResponseBody
+    public long stopTrace(@PathVariable("cacheName") String cacheName) {
+        try {
+            return cacheService(cacheName).stopRecording();
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of the per-cache lookups: the request thread goes back to the pool
+     * right away and the response is written when the future completes.
+     */
+    @RequestMapping(
+            value = "/{cacheName}/async/{id}",
+            method = GET)
+    @ResponseBody
+    public CompletableFuture<String> getCacheEntityAsync(@PathVariable("cacheName") String cacheName,
+                                                         @PathVariable("id") int id) {
+        return cacheService(cacheName).getAsync(id);
+    }
+
+    @RequestMapping(
+            value = "/{cacheName}/async/{id}",
+            params = { "value" },
+            method = POST)
+    @ResponseBody
+    public CompletableFuture<Void> putCacheEntityAsync(@PathVariable("cacheName") String cacheName,
+                                                       @PathVariable("id") int id,
+                                                       @RequestParam("value") String value) {
+        return cacheService(cacheName).putAsync(id, value);
+    }
+
+    /**
+     * Put with its own time to live in milliseconds, counted from the write or, with
+     * {@code expireAfter=access}, from the last read.
+     */
+    @RequestMapping(
+            value = "/{cacheName}/expiring/{id}",
+            params = { "value", "ttl" },
+            method = POST)
+    @ResponseBody
+    public void putExpiringCacheEntity(@PathVariable("cacheName") String cacheName,
+                                       @PathVariable("id") int id,
+                                       @RequestParam("value") String value,
+                                       @RequestParam("ttl") long ttl,
+                                       @RequestParam(value = "expireAfter", defaultValue = "write") String expireAfter) {
+        try {
+            Expiry expiry;
+            if ("write".equals(expireAfter)) {
+                expiry = Expiry.afterWrite(ttl);
+            } else if ("access".equals(expireAfter)) {
+                expiry = Expiry.afterAccess(ttl);
+            } else {
+                throw new IllegalArgumentException("expireAfter must be write or access: " + expireAfter);
+            }
+            cacheService(cacheName).put(id, value, expiry);
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streams the answer as the keys come in, so a malformed key list past the first chunk can
+     * only cut the answer short instead of turning it into a 400.
+     */
+    @RequestMapping(
+            value = "/{cacheName}/batch/get",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            method = POST)
+    public void getCacheEntities(@PathVariable("cacheName") String cacheName,
+                                 HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
+        CacheService cacheService = cacheService(cacheName);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        transfer(() -> JsonBatchCodec.copyLookups(request.getInputStream(), response.getOutputStream(),
+                cacheService::getAll));
+    }
+
+    @RequestMapping(
+            value = "/{cacheName}/batch/put",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            method = POST)
+    @ResponseBody
+    public void putCacheEntities(@PathVariable("cacheName") String cacheName,
+                                 InputStream body) throws IOException {
+        CacheService cacheService = cacheService(cacheName);
+        transfer(() -> JsonBatchCodec.copyEntries(body, cacheService::putAll));
+    }
+
+    @RequestMapping(
+            value = "/{cacheName}/batch/get",
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            method = POST)
+    public void getCacheEntitiesBinary(@PathVariable("cacheName") String cacheName,
+                                       HttpServletRequest request,
+                                       HttpServletResponse response) throws IOException {
+        CacheService cacheService = cacheService(cacheName);
+        long length = request.getContentLengthLong();
+        if (length > 0 && length % Integer.BYTES != 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Key list length must be a multiple of 4 bytes: " + length);
+        }
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        transfer(() -> BinaryBatchCodec.copyLookups(request.getInputStream(), response.getOutputStream(),
+                cacheService::getAll));
+    }
+
+    @RequestMapping(
+            value = "/{cacheName}/batch/put",
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            method = POST)
+    @ResponseBody
+    public void putCacheEntitiesBinary(@PathVariable("cacheName") String cacheName,
+                                       InputStream body) throws IOException {
+        CacheService cacheService = cacheService(cacheName);
+        transfer(() -> BinaryBatchCodec.copyEntries(body, cacheService::putAll));
+    }
+
+    /**
+     * Raw value as stored through {@link #putCacheEntityBytes}, 404 when the key is not cached,
+     * since an empty body is a valid value.
+     */
+    @RequestMapping(
+            value = "/{cacheName}/bytes/{id}",
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            method = GET)
+    public ResponseEntity<byte[]> getCacheEntityBytes(@PathVariable("cacheName") String cacheName,
+                                                      @PathVariable("id") int id) {
+        byte[] value = cacheService(cacheName).getBytes(id);
+        return value == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(value);
+    }
+
+    @RequestMapping(
+            value = "/{cacheName}/bytes/{id}",
+            consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            method = POST)
+    @ResponseBody
+    public void putCacheEntityBytes(@PathVariable("cacheName") String cacheName,
+                                    @PathVariable("id") int id,
+                                    @RequestBody byte[] value) {
+        cacheService(cacheName).putBytes(id, value);
+    }
+
+    private TracingCacheService cacheService(String cacheName) {
+        TracingCacheService cacheService = cacheServices.get(cacheName);
+        if (cacheService == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown cache " + cacheName);
+        }
+        return cacheService;
+    }
+
+    private static void transfer(Transfer transfer) throws IOException {
+        try {
+            transfer.run();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private interface Transfer {
+        void run() throws IOException;
     }
 }
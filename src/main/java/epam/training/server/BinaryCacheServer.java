@@ -0,0 +1,417 @@
+package epam.training.server;
+
+import epam.training.service.CacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static epam.training.server.BinaryProtocol.*;
+
+/**
+ * Non-blocking TCP endpoint for the caches, speaking {@link BinaryProtocol}. One thread accepts
+ * connections and hands them round-robin to a few event loops, each multiplexing its connections
+ * over a selector, so the number of connections is bounded by file descriptors rather than threads.
+ * <p>
+ * Every loop owns one direct read and one direct write buffer shared by all its connections: values
+ * are encoded from the cached string straight into the write buffer, and a connection only gets
+ * buffers of its own while it holds a partial request or output the socket did not take yet.
+ * Cache calls run on the loop thread, they are short enough that handing them off would cost more.
+ * That only holds while no call waits for the disk, so caches whose write-ahead log syncs writes
+ * must not be served.
+ */
+public class BinaryCacheServer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryCacheServer.class);
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    private static final int BACKLOG = 4096;
+
+    private final InetSocketAddress address;
+    private final List<CacheService> caches;
+    private final EventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param caches the caches to serve, the cache id of a request is the index into this list
+     */
+    public BinaryCacheServer(InetSocketAddress address, int ioThreads, List<CacheService> caches) {
+        if (caches.isEmpty() || caches.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Between 1 and 127 caches can be served: " + caches.size());
+        }
+        this.address = address;
+        this.caches = new ArrayList<>(caches);
+        this.loops = new EventLoop[ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors()];
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, BACKLOG);
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "cache-binary-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "cache-binary-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        serverChannel.close();
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Binary cache server could not accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> pending = new ArrayDeque<>();
+        private ByteBuffer partial;
+        private long pendingBytes;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        private void register(SocketChannel channel) {
+            registrations.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = registrations.poll()) != null) {
+                        try {
+                            channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                        } catch (ClosedChannelException e) {
+                            // the client hung up before it was picked up
+                        }
+                    }
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                writePending(key, connection);
+                                resume(key, connection);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(key, connection);
+                            }
+                        } catch (IOException e) {
+                            disconnect(key, connection);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Binary cache server event loop failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    disconnect(key, (Connection) key.attachment());
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // shutting down anyway
+                }
+            }
+        }
+
+        /**
+         * Reads into the shared buffer, behind whatever partial request the connection kept from
+         * before. A request larger than the shared buffer gets a buffer of its own until complete.
+         */
+        private void read(SelectionKey key, Connection connection) throws IOException {
+            ByteBuffer in;
+            if (connection.partial == null) {
+                in = readBuffer;
+                in.clear();
+            } else if (connection.partial.capacity() <= readBuffer.capacity()) {
+                in = readBuffer;
+                in.clear();
+                connection.partial.flip();
+                in.put(connection.partial);
+                connection.partial = null;
+            } else {
+                in = connection.partial;
+            }
+            if (connection.channel.read(in) < 0) {
+                disconnect(key, connection);
+                return;
+            }
+            in.flip();
+            if (!process(connection, in)) {
+                disconnect(key, connection);
+                return;
+            }
+            keepPartial(connection, in);
+            flush(key, connection);
+            resume(key, connection);
+        }
+
+        private void keepPartial(Connection connection, ByteBuffer in) {
+            if (!in.hasRemaining()) {
+                if (in == connection.partial) {
+                    connection.partial = null;
+                }
+                return;
+            }
+            int needed = in.remaining() < HEADER_BYTES
+                    ? HEADER_BYTES
+                    : HEADER_BYTES + in.getInt(in.position() + 12);
+            if (in == connection.partial && needed <= in.capacity()) {
+                in.compact();
+                return;
+            }
+            ByteBuffer partial = ByteBuffer.allocate(Math.max(needed, in.remaining()));
+            partial.put(in);
+            connection.partial = partial;
+        }
+
+        /**
+         * Handles the requests a connection kept back once its queued output has drained far enough.
+         * The socket may take the output right away, with no further event to come back on, so it
+         * goes on until only an incomplete request is left or the output piles up again.
+         */
+        private void resume(SelectionKey key, Connection connection) throws IOException {
+            while (connection.partial != null && connection.pendingBytes <= MAX_PENDING_BYTES && key.isValid()) {
+                ByteBuffer in = connection.partial;
+                in.flip();
+                int before = in.remaining();
+                if (!process(connection, in)) {
+                    disconnect(key, connection);
+                    return;
+                }
+                boolean progressed = in.remaining() < before;
+                keepPartial(connection, in);
+                flush(key, connection);
+                if (!progressed) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Handles every complete request in the buffer, false when the peer does not speak the
+         * protocol. Stops early while too much output is queued, the rest is kept like a partial
+         * request and handled once the socket has taken enough of it.
+         */
+        private boolean process(Connection connection, ByteBuffer in) throws IOException {
+            while (in.remaining() >= HEADER_BYTES && connection.pendingBytes <= MAX_PENDING_BYTES) {
+                int start = in.position();
+                int bodyLength = in.getInt(start + 12);
+                if (in.get(start) != REQUEST_MAGIC || bodyLength < 0 || bodyLength > MAX_BODY_BYTES) {
+                    return false;
+                }
+                if (in.remaining() < HEADER_BYTES + bodyLength) {
+                    return true;
+                }
+                byte opcode = in.get(start + 1);
+                int cacheId = in.get(start + 2);
+                int opaque = in.getInt(start + 4);
+                int cacheKey = in.getInt(start + 8);
+                in.position(start + HEADER_BYTES);
+                if (cacheId < 0 || cacheId >= caches.size()) {
+                    respond(connection, opcode, STATUS_UNKNOWN_CACHE, opaque, cacheKey, null);
+                } else {
+                    execute(connection, caches.get(cacheId), opcode, opaque, cacheKey, in, bodyLength);
+                }
+                in.position(start + HEADER_BYTES + bodyLength);
+            }
+            return true;
+        }
+
+        private void execute(Connection connection, CacheService cache, byte opcode, int opaque, int key,
+                             ByteBuffer in, int bodyLength) throws IOException {
+            try {
+                switch (opcode) {
+                    case GET:
+                        byte[] value = cache.getBytes(key);
+                        respond(connection, opcode, value == null ? STATUS_NOT_FOUND : STATUS_OK, opaque, key, value);
+                        break;
+                    case SET:
+                        cache.putBytes(key, body(in, bodyLength));
+                        respond(connection, opcode, STATUS_OK, opaque, key, null);
+                        break;
+                    case DELETE:
+                        String removed = cache.removeValueFromCache(key);
+                        respond(connection, opcode, removed == null ? STATUS_NOT_FOUND : STATUS_OK, opaque, key, null);
+                        break;
+                    case NOOP:
+                        respond(connection, opcode, STATUS_OK, opaque, key, null);
+                        break;
+                    default:
+                        respond(connection, opcode, STATUS_UNKNOWN_COMMAND, opaque, key, null);
+                }
+            } catch (RuntimeException e) {
+                respond(connection, opcode, STATUS_INTERNAL_ERROR, opaque, key, null);
+            }
+        }
+
+        /**
+         * Copies the body out of the read buffer. The cache keeps the array, so it cannot be a shared scratch buffer.
+         */
+        private byte[] body(ByteBuffer in, int length) {
+            byte[] body = new byte[length];
+            in.get(body);
+            return body;
+        }
+
+        /**
+         * Appends a response to the shared write buffer. A value too large for the buffer gets a heap
+         * buffer of its own.
+         */
+        private void respond(Connection connection, byte opcode, byte status, int opaque, int key, byte[] value)
+                throws IOException {
+            int bodyLength = value == null ? 0 : value.length;
+            if (writeBuffer.remaining() < HEADER_BYTES + bodyLength) {
+                stage(connection);
+            }
+            if (writeBuffer.remaining() < HEADER_BYTES + bodyLength) {
+                ByteBuffer response = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+                putHeader(response, opcode, status, opaque, key, bodyLength);
+                response.put(value).flip();
+                connection.pending.add(response);
+                connection.pendingBytes += response.remaining();
+                return;
+            }
+            putHeader(writeBuffer, opcode, status, opaque, key, bodyLength);
+            if (value != null) {
+                writeBuffer.put(value);
+            }
+        }
+
+        private void putHeader(ByteBuffer buffer, byte opcode, byte status, int opaque, int key, int bodyLength) {
+            buffer.put(RESPONSE_MAGIC).put(opcode).put(status).put((byte) 0)
+                    .putInt(opaque).putInt(key).putInt(bodyLength);
+        }
+
+        /**
+         * Writes the shared buffer to the socket, or queues it behind output still waiting there.
+         */
+        private void stage(Connection connection) throws IOException {
+            writeBuffer.flip();
+            if (connection.pending.isEmpty()) {
+                connection.channel.write(writeBuffer);
+            }
+            if (writeBuffer.hasRemaining()) {
+                ByteBuffer rest = ByteBuffer.allocate(writeBuffer.remaining());
+                rest.put(writeBuffer).flip();
+                connection.pending.add(rest);
+                connection.pendingBytes += rest.remaining();
+            }
+            writeBuffer.clear();
+        }
+
+        private void flush(SelectionKey key, Connection connection) throws IOException {
+            stage(connection);
+            writePending(key, connection);
+        }
+
+        /**
+         * Drains queued output. While too much is queued the connection is not read, so a client
+         * that pipelines without reading its responses is slowed down instead of filling the heap.
+         */
+        private void writePending(SelectionKey key, Connection connection) throws IOException {
+            while (!connection.pending.isEmpty()) {
+                ByteBuffer head = connection.pending.peek();
+                connection.pendingBytes -= connection.channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                connection.pending.poll();
+            }
+            int interest = SelectionKey.OP_READ;
+            if (!connection.pending.isEmpty()) {
+                interest = connection.pendingBytes > MAX_PENDING_BYTES
+                        ? SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interest);
+        }
+
+        private void disconnect(SelectionKey key, Connection connection) {
+            key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException ignored) {
+                // the connection is gone either way
+            }
+        }
+    }
+}
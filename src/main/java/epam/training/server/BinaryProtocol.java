@@ -0,0 +1,43 @@
+package epam.training.server;
+
+/**
+ * Wire format of {@link BinaryCacheServer}, modelled on the memcached binary protocol. Every message
+ * starts with a 16 byte header, all integers big-endian:
+ * <ul>
+ *     <li>int8 magic, {@link #REQUEST_MAGIC} or {@link #RESPONSE_MAGIC}</li>
+ *     <li>int8 opcode</li>
+ *     <li>int8 cache id in requests, status in responses</li>
+ *     <li>int8 reserved, always 0</li>
+ *     <li>int32 opaque, echoed back unchanged so clients can match pipelined responses</li>
+ *     <li>int32 key</li>
+ *     <li>int32 body length, followed by the body: the value of a set request or of a hit, stored
+ *     and returned byte for byte</li>
+ * </ul>
+ * A connection may send any number of requests without waiting, responses come back in request order.
+ */
+public final class BinaryProtocol {
+
+    public static final byte REQUEST_MAGIC = (byte) 0x80;
+    public static final byte RESPONSE_MAGIC = (byte) 0x81;
+    public static final int HEADER_BYTES = 16;
+    public static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    public static final byte GET = 0x00;
+    public static final byte SET = 0x01;
+    public static final byte DELETE = 0x04;
+    public static final byte NOOP = 0x0a;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NOT_FOUND = 1;
+    public static final byte STATUS_UNKNOWN_CACHE = 2;
+    public static final byte STATUS_UNKNOWN_COMMAND = 3;
+    public static final byte STATUS_INTERNAL_ERROR = 4;
+
+    public static final byte CACHE_LRU = 0;
+    public static final byte CACHE_LFU = 1;
+    public static final byte CACHE_SLFU = 2;
+    public static final byte CACHE_TINYLFU = 3;
+
+    private BinaryProtocol() {
+    }
+}
@@ -0,0 +1,422 @@
+package epam.training.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+
+/**
+ * Cache that can change its eviction policy while running. Every lookup and write also goes to a
+ * {@link PolicySimulator} that compares the candidate policies on a sample of the traffic. With
+ * automatic switching on, the cache moves to the policy the simulator rates best once it beats the
+ * current one by {@link #SWITCH_MARGIN}. Policies can also be switched by hand.
+ * <p>
+ * A switch builds the new cache and warms it from a snapshot of the old one, when the old one can
+ * take one, under the write side of a lock. Entries put with an {@link Expiry} keep it across the
+ * switch, with the time they had left; every candidate policy takes per-entry expiries. Operations take the read side. Evaluations, and the
+ * switches they decide, run on a thread of their own so a warm-up never holds up the
+ * {@link CacheMaintenanceScheduler}.
+ */
+public class AdaptiveCacheService implements CacheService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCacheService.class);
+
+    /**
+     * Hit rate the best policy must gain over the current one before the cache switches.
+     */
+    public static final double SWITCH_MARGIN = 0.02;
+    /**
+     * Sampled lookups needed before the simulator is trusted.
+     */
+    public static final int MIN_SAMPLED_ACCESSES = 1000;
+    /**
+     * Simulated sizes, as multiples of the cache capacity, from which the miss-ratio curve is drawn.
+     */
+    private static final double[] CAPACITY_FACTORS = {0.25, 0.5, 1, 2, 4};
+    private static final ScheduledExecutorService EVALUATOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-policy-evaluation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int capacity;
+    private final Map<String, IntFunction<CacheService>> policies;
+    private final PolicySimulator simulator;
+    private final boolean autoSwitch;
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final List<CacheEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder retiredEvictions = new LongAdder();
+    private final LongAdder retiredExpirations = new LongAdder();
+    private final LongAdder switches = new LongAdder();
+    private final Lock readLock;
+    private final Lock writeLock;
+    private final ScheduledFuture<?> evaluation;
+    private volatile String policy;
+    private volatile CacheService active;
+
+    /**
+     * @param policies             factories of the candidate caches by name, called with a capacity
+     * @param sampleRate           fraction of keys the simulator replays
+     * @param evaluationPeriodMillis length of a simulator window, and how often a switch is considered
+     */
+    public AdaptiveCacheService(int capacity, Map<String, IntFunction<CacheService>> policies, String initialPolicy,
+                                double sampleRate, long evaluationPeriodMillis, boolean autoSwitch) {
+        if (!policies.containsKey(initialPolicy)) {
+            throw new IllegalArgumentException("Unknown policy " + initialPolicy);
+        }
+        this.capacity = capacity;
+        this.policies = new LinkedHashMap<>(policies);
+        int[] capacities = new int[CAPACITY_FACTORS.length];
+        for (int i = 0; i < capacities.length; i++) {
+            capacities[i] = (int) Math.max(1, capacity * CAPACITY_FACTORS[i]);
+        }
+        this.simulator = new PolicySimulator(this.policies, capacities, sampleRate);
+        this.autoSwitch = autoSwitch;
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.policy = initialPolicy;
+        this.active = policies.get(initialPolicy).apply(capacity);
+        this.evaluation = EVALUATOR.scheduleAtFixedRate(() -> {
+            try {
+                evaluate();
+            } catch (RuntimeException e) {
+                // a failing evaluation must not cancel the following ones
+                LOG.error("Cache policy evaluation failed", e);
+            }
+        }, evaluationPeriodMillis, evaluationPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public String getPolicy() {
+        return policy;
+    }
+
+    public PolicySimulator getSimulator() {
+        return simulator;
+    }
+
+    public long getNumberOfSwitches() {
+        return switches.sum();
+    }
+
+    /**
+     * Closes a simulator window and, with automatic switching on, moves to a clearly better policy.
+     */
+    public void evaluate() {
+        simulator.rollWindow();
+        if (!autoSwitch || simulator.getSampledAccesses() < MIN_SAMPLED_ACCESSES) {
+            return;
+        }
+        String current = policy;
+        String best = simulator.getBestPolicy(capacity);
+        if (!best.equals(current)
+                && simulator.getHitRate(best, capacity) - simulator.getHitRate(current, capacity) > SWITCH_MARGIN) {
+            switchPolicy(best);
+        }
+    }
+
+    /**
+     * Replaces the cache with one of the given policy, warmed with the entries of the current one.
+     * A cache that cannot restore a snapshot gets the entries put in eviction order instead, those
+     * with an expiry of their own put with what is left of it.
+     */
+    public void switchPolicy(String newPolicy) {
+        IntFunction<CacheService> factory = policies.get(newPolicy);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown policy " + newPolicy);
+        }
+        writeLock.lock();
+        try {
+            if (newPolicy.equals(policy)) {
+                return;
+            }
+            CacheService previous = active;
+            CacheService next = factory.apply(capacity);
+            if (previous instanceof SnapshotCache) {
+                CacheSnapshot snapshot = ((SnapshotCache) previous).snapshot();
+                if (next instanceof SnapshotCache) {
+                    ((SnapshotCache) next).restore(snapshot);
+                } else {
+                    Map<Integer, String> entries = new LinkedHashMap<>();
+                    long now = System.currentTimeMillis();
+                    for (int i = 0; i < snapshot.size(); i++) {
+                        if (snapshot.isExpired(i, now)) {
+                            continue;
+                        }
+                        Expiry expiry = remainingExpiry(snapshot, i, now);
+                        if (expiry != null) {
+                            next.put(snapshot.getKey(i), snapshot.getValue(i), expiry);
+                        } else if (snapshot.isBinary(i)) {
+                            next.putBytes(snapshot.getKey(i), snapshot.getValueBytes(i));
+                        } else {
+                            entries.put(snapshot.getKey(i), snapshot.getValue(i));
+                        }
+                    }
+                    next.putAll(entries);
+                }
+            }
+            listeners.forEach(next::addEventListener);
+            listeners.forEach(previous::removeEventListener);
+            retiredEvictions.add(previous.getNumberOfEvictions());
+            retiredExpirations.add(previous.getNumberOfExpirations());
+            active = next;
+            policy = newPolicy;
+            switches.increment();
+            previous.shutdown();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * An expiry after write counts on from when the entry was written, one after access starts over.
+     */
+    private static Expiry remainingExpiry(CacheSnapshot snapshot, int index, long now) {
+        Expiry expiry = snapshot.getExpiry(index);
+        if (expiry == null || expiry.isAfterAccess()) {
+            return expiry;
+        }
+        return Expiry.afterWrite(Math.max(1, snapshot.getExpirationTime(index) - now));
+    }
+
+    @Override
+    public void put(int key, String value) {
+        long start = System.nanoTime();
+        simulator.recordPut(key);
+        readLock.lock();
+        try {
+            active.put(key, value);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    /**
+     * The expiry stays with the entry when the cache switches policy.
+     */
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        long start = System.nanoTime();
+        simulator.recordPut(key);
+        readLock.lock();
+        try {
+            active.put(key, value, expiry);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public String get(int key) {
+        long start = System.nanoTime();
+        simulator.recordGet(key);
+        String value;
+        readLock.lock();
+        try {
+            value = active.get(key);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public void putBytes(int key, byte[] value) {
+        long start = System.nanoTime();
+        simulator.recordPut(key);
+        readLock.lock();
+        try {
+            active.putBytes(key, value);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public byte[] getBytes(int key) {
+        long start = System.nanoTime();
+        simulator.recordGet(key);
+        byte[] value;
+        readLock.lock();
+        try {
+            value = active.getBytes(key);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public String get(int key, ValueLoader loader) {
+        String value = get(key);
+        if (value != null) {
+            return value;
+        }
+        readLock.lock();
+        try {
+            return active.get(key, loader);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        simulator.recordGet(key);
+        readLock.lock();
+        try {
+            return active.getAsync(key, loader);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        long start = System.nanoTime();
+        simulator.recordGet(key);
+        CompletableFuture<String> value;
+        readLock.lock();
+        try {
+            value = active.getAsync(key);
+        } finally {
+            readLock.unlock();
+        }
+        return value.whenComplete((v, failure) -> metrics.recordGet(System.nanoTime() - start, v != null));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        simulator.recordPut(key);
+        CompletableFuture<Void> stored;
+        readLock.lock();
+        try {
+            stored = active.putAsync(key, value);
+        } finally {
+            readLock.unlock();
+        }
+        return stored.whenComplete((v, failure) -> metrics.recordPut(System.nanoTime() - start));
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        long start = System.nanoTime();
+        entries.keySet().forEach(simulator::recordPut);
+        readLock.lock();
+        try {
+            active.putAll(entries);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPuts(entries.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        for (int key : keys) {
+            simulator.recordGet(key);
+        }
+        Map<Integer, String> values;
+        readLock.lock();
+        try {
+            values = active.getAll(keys);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordGets(keys.length, values.size(), System.nanoTime() - start);
+        return values;
+    }
+
+    @Override
+    public String removeValueFromCache(int key) {
+        readLock.lock();
+        try {
+            return active.removeValueFromCache(key);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public double getAverageTimeSpentAddingNewValues() {
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    /**
+     * Gets and puts across every policy the cache went through.
+     */
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return retiredEvictions.sum() + active.getNumberOfEvictions();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return retiredExpirations.sum() + active.getNumberOfExpirations();
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        writeLock.lock();
+        try {
+            listeners.add(listener);
+            active.addEventListener(listener);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        writeLock.lock();
+        try {
+            listeners.remove(listener);
+            active.removeEventListener(listener);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clearCache() {
+        readLock.lock();
+        try {
+            active.clearCache();
+        } finally {
+            readLock.unlock();
+        }
+        metrics.reset();
+    }
+
+    @Override
+    public void shutdown() {
+        evaluation.cancel(false);
+        active.shutdown();
+        simulator.shutdown();
+    }
+}
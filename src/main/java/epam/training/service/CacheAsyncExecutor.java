@@ -0,0 +1,66 @@
+package epam.training.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool shared by every cache instance for work handed off a request thread that may block:
+ * operations that found their cache lock taken, loads of missing values and refresh-ahead reloads.
+ * Keeping them off the common pool leaves that to the CPU-bound work it is sized for. When the queue
+ * is full a task is rejected rather than run by the caller, which would park the very thread the
+ * hand-off was meant to spare: operations fail with a {@link RejectedExecutionException} through
+ * their future, refresh-ahead reloads are dropped and the cached value stays.
+ */
+public final class CacheAsyncExecutor {
+
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS,
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "cache-async-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private CacheAsyncExecutor() {
+    }
+
+    public static Executor get() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Runs the supplier on the pool, a rejection completes the future exceptionally instead of
+     * being thrown at the caller.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Runs the task on the pool, see {@link #supplyAsync(Supplier)}.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable task) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+}
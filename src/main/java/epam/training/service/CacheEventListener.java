@@ -0,0 +1,23 @@
+package epam.training.service;
+
+/**
+ * Receives the events of a cache on the event drain thread, never on the request thread that caused
+ * them. Implementations may take their time but should not keep the value of an event beyond the call
+ * if it must not stay reachable.
+ */
+public interface CacheEventListener {
+
+    void onEvent(CacheEventType type, int key, String value);
+
+    /**
+     * Called when events were dropped because the ring buffer was full.
+     */
+    default void onDropped(long count) {
+    }
+
+    /**
+     * Called after every drain pass, including passes that found no events.
+     */
+    default void flush() {
+    }
+}
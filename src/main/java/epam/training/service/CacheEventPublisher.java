@@ -0,0 +1,180 @@
+package epam.training.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands cache events from request threads to listeners without blocking or allocating. Events go
+ * into a ring of preallocated slots: a producer claims a sequence with a CAS, fills the slot and
+ * publishes it by writing the sequence last. A drain task on the {@link CacheMaintenanceScheduler}
+ * delivers published slots in order. When the ring is full the event is dropped and counted
+ * rather than making the request thread wait for the listeners.
+ */
+public class CacheEventPublisher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheEventPublisher.class);
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final long DRAIN_PERIOD_MILLIS = 10;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private long reportedDrops;
+    private volatile CacheEventListener[] listeners = new CacheEventListener[0];
+    private ScheduledFuture<?> drainer;
+
+    public CacheEventPublisher() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CacheEventPublisher(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        this.slots = new Slot[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    public void publish(CacheEventType type, int key, String value) {
+        Slot slot = claim();
+        if (slot != null) {
+            slot.bytes = null;
+            slot.value = value;
+            slot.type = type;
+            slot.key = key;
+            slot.sequence = slot.claimedSequence;
+        }
+    }
+
+    /**
+     * Publishes a value stored as bytes, it is decoded on the drain thread rather than by the caller.
+     */
+    public void publishBytes(CacheEventType type, int key, byte[] value) {
+        Slot slot = claim();
+        if (slot != null) {
+            slot.value = null;
+            slot.bytes = value;
+            slot.type = type;
+            slot.key = key;
+            slot.sequence = slot.claimedSequence;
+        }
+    }
+
+    private Slot claim() {
+        if (listeners.length == 0) {
+            return null;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.increment();
+                return null;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        Slot slot = slots[(int) sequence & mask];
+        slot.claimedSequence = sequence;
+        return slot;
+    }
+
+    public boolean hasListeners() {
+        return listeners.length > 0;
+    }
+
+    /**
+     * Registers a listener, the drain task starts with the first one.
+     */
+    public synchronized void addListener(CacheEventListener listener) {
+        CacheEventListener[] current = listeners;
+        CacheEventListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+        if (drainer == null) {
+            drainer = CacheMaintenanceScheduler.scheduleAtFixedRate(this::drain, DRAIN_PERIOD_MILLIS);
+        }
+    }
+
+    public synchronized void removeListener(CacheEventListener listener) {
+        listeners = Arrays.stream(listeners)
+                .filter(registered -> registered != listener)
+                .toArray(CacheEventListener[]::new);
+    }
+
+    /**
+     * Delivers every event published so far on the calling thread and returns how many there were.
+     */
+    public synchronized int drain() {
+        CacheEventListener[] current = listeners;
+        long next = consumed.get();
+        int count = 0;
+        while (true) {
+            Slot slot = slots[(int) next & mask];
+            if (slot.sequence != next) {
+                break;
+            }
+            CacheEventType type = slot.type;
+            int key = slot.key;
+            String value = slot.bytes == null ? slot.value : new String(slot.bytes, StandardCharsets.UTF_8);
+            slot.value = null;
+            slot.bytes = null;
+            consumed.set(++next);
+            count++;
+            for (CacheEventListener listener : current) {
+                try {
+                    listener.onEvent(type, key, value);
+                } catch (RuntimeException e) {
+                    LOG.error("Cache event listener {} failed on {} of key {}", listener, type, key, e);
+                }
+            }
+        }
+        long drops = dropped.sum();
+        for (CacheEventListener listener : current) {
+            try {
+                if (drops > reportedDrops) {
+                    listener.onDropped(drops - reportedDrops);
+                }
+                listener.flush();
+            } catch (RuntimeException e) {
+                LOG.error("Cache event listener {} failed to flush", listener, e);
+            }
+        }
+        reportedDrops = drops;
+        return count;
+    }
+
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    /**
+     * Delivers what is left and stops the drain task.
+     */
+    public synchronized void shutdown() {
+        if (drainer != null) {
+            drainer.cancel(false);
+            drainer = null;
+        }
+        drain();
+    }
+
+    private static final class Slot {
+        private volatile long sequence = -1;
+        private long claimedSequence;
+        private CacheEventType type;
+        private int key;
+        private String value;
+        private byte[] bytes;
+    }
+}
@@ -0,0 +1,5 @@
+package epam.training.service;
+
+public enum CacheEventType {
+    MISS, EVICTION, EXPIRATION, REMOVAL, WRITE
+}
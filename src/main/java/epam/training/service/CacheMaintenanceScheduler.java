@@ -0,0 +1,46 @@
+package epam.training.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One daemon thread shared by every cache instance for periodic housekeeping such as expiration.
+ * Each task gets its own {@link ScheduledFuture}, owners cancel it when they shut down.
+ */
+public final class CacheMaintenanceScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheMaintenanceScheduler.class);
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CacheMaintenanceScheduler() {
+    }
+
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMillis) {
+        return EXECUTOR.scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // a failing run must not cancel the following ones
+                LOG.error("Cache maintenance task failed", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cleanup period for a time to live: often enough to expire entries close to their deadline,
+     * rarely enough to stay out of the way of long lived caches.
+     */
+    static long cleanupPeriod(int timeToLive) {
+        return Math.max(10, Math.min(timeToLive / 2, 1000));
+    }
+}
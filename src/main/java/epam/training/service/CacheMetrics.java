@@ -0,0 +1,162 @@
+package epam.training.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit and latency statistics of one cache. Request threads only touch wait-free HdrHistogram
+ * recorders and {@link LongAdder}s, readers drain the recorders into cumulative histograms when a
+ * snapshot is asked for. Latencies are recorded in nanoseconds, loads being the time read-through
+ * lookups spend in their {@link ValueLoader}.
+ */
+public class CacheMetrics {
+
+    public enum Operation {
+        GET, PUT, EVICTION, LOAD
+    }
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CacheMetrics() {
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(SIGNIFICANT_DIGITS));
+            histograms.put(operation, new Histogram(SIGNIFICANT_DIGITS));
+        }
+    }
+
+    public void recordGet(long nanos, boolean hit) {
+        recorders.get(Operation.GET).recordValue(Math.max(nanos, 0));
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+    }
+
+    public void recordPut(long nanos) {
+        recorders.get(Operation.PUT).recordValue(Math.max(nanos, 0));
+    }
+
+    /**
+     * Records a batch lookup as {@code count} gets sharing the elapsed time equally.
+     */
+    public void recordGets(int count, int hitCount, long nanos) {
+        if (count == 0) {
+            return;
+        }
+        recorders.get(Operation.GET).recordValueWithCount(Math.max(nanos, 0) / count, count);
+        hits.add(hitCount);
+        misses.add(count - hitCount);
+    }
+
+    /**
+     * Records a batch store as {@code count} puts sharing the elapsed time equally.
+     */
+    public void recordPuts(int count, long nanos) {
+        if (count == 0) {
+            return;
+        }
+        recorders.get(Operation.PUT).recordValueWithCount(Math.max(nanos, 0) / count, count);
+    }
+
+    public void recordEviction(long nanos) {
+        recorders.get(Operation.EVICTION).recordValue(Math.max(nanos, 0));
+    }
+
+    public void recordLoad(long nanos) {
+        recorders.get(Operation.LOAD).recordValue(Math.max(nanos, 0));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        return requestCount == 0 ? 0.0 : (double) hitCount / requestCount;
+    }
+
+    public double getAveragePutTimeMillis() {
+        return snapshot(Operation.PUT).getMean() / 1_000_000.0;
+    }
+
+    /**
+     * Latency distribution of an operation since creation or the last {@link #reset()}.
+     */
+    public synchronized LatencySnapshot snapshot(Operation operation) {
+        Histogram histogram = histograms.get(operation);
+        histogram.add(recorders.get(operation).getIntervalHistogram());
+        return new LatencySnapshot(histogram);
+    }
+
+    public synchronized void reset() {
+        for (Operation operation : Operation.values()) {
+            recorders.get(operation).reset();
+            histograms.get(operation).reset();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    public static final class LatencySnapshot {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        LatencySnapshot(Histogram histogram) {
+            this.count = histogram.getTotalCount();
+            this.mean = count == 0 ? 0.0 : histogram.getMean();
+            this.p50 = histogram.getValueAtPercentile(50.0);
+            this.p90 = histogram.getValueAtPercentile(90.0);
+            this.p99 = histogram.getValueAtPercentile(99.0);
+            this.p999 = histogram.getValueAtPercentile(99.9);
+            this.max = histogram.getMaxValue();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package epam.training.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a change of capacity or time to live on a live cache, see {@link ResizableCache}.
+ * The entries to process are counted when it starts: for a cache that evicts in place, those above
+ * the new capacity; for one that is rebuilt, every entry to move. It also compares the hit rate of
+ * the cache before the change with the hit rate since, which is what a resize is judged by.
+ */
+public final class CacheResize {
+
+    private final int previousCapacity;
+    private final int previousTimeToLive;
+    private final int capacity;
+    private final int timeToLive;
+    private final long startedAt;
+    private final long total;
+    private final CacheMetrics metrics;
+    private final long hitsBefore;
+    private final long missesBefore;
+    private final AtomicLong processed = new AtomicLong();
+    private volatile long finishedAt;
+
+    CacheResize(int previousCapacity, int previousTimeToLive, int capacity, int timeToLive, long total,
+                CacheMetrics metrics) {
+        this.previousCapacity = previousCapacity;
+        this.previousTimeToLive = previousTimeToLive;
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.startedAt = System.currentTimeMillis();
+        this.total = total;
+        this.metrics = metrics;
+        this.hitsBefore = metrics.getHitCount();
+        this.missesBefore = metrics.getMissCount();
+        if (total == 0) {
+            finish();
+        }
+    }
+
+    void advance(long count) {
+        processed.addAndGet(count);
+    }
+
+    void finish() {
+        if (finishedAt == 0) {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    public int getPreviousCapacity() {
+        return previousCapacity;
+    }
+
+    public int getPreviousTimeToLive() {
+        return previousTimeToLive;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * 0 while the resize is running.
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isDone() {
+        return finishedAt != 0;
+    }
+
+    /**
+     * Entries still to evict or to move, 0 once done. Entries that expire or are removed meanwhile
+     * are skipped, so a resize may finish before this reaches 0 on its own.
+     */
+    public long getRemaining() {
+        return isDone() ? 0 : Math.max(total - processed.get(), 0);
+    }
+
+    /**
+     * Processed share of the entries, from 0 to 1.
+     */
+    public double getProgress() {
+        return isDone() || total == 0 ? 1.0 : Math.min((double) processed.get() / total, 1.0);
+    }
+
+    /**
+     * Hit rate of the cache from its last metrics reset up to the resize.
+     */
+    public double getHitRateBefore() {
+        long requests = hitsBefore + missesBefore;
+        return requests == 0 ? 0.0 : (double) hitsBefore / requests;
+    }
+
+    /**
+     * Hit rate of the requests since the resize started, 0 before there are any. After a metrics
+     * reset it counts from the reset.
+     */
+    public double getHitRateSince() {
+        long hits = metrics.getHitCount();
+        long misses = metrics.getMissCount();
+        if (hits >= hitsBefore && misses >= missesBefore) {
+            hits -= hitsBefore;
+            misses -= missesBefore;
+        }
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+}
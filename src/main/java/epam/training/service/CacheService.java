@@ -1,10 +1,86 @@
 package epam.training.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 public interface CacheService {
    void put(int key, String value);
+   /**
+    * Stores the value with its own time to live instead of the one of the cache. Caches that keep
+    * a single time to live for all entries throw {@link UnsupportedOperationException}.
+    */
+   default void put(int key, String value, Expiry expiry) {
+       throw new UnsupportedOperationException(getClass().getSimpleName() + " has no per-entry expiry");
+   }
    String get(int key);
+   /**
+    * Stores an already encoded value, such as a serialized payload, without turning it into a String.
+    * The array is kept as is and must not be changed afterwards. {@link #get(int)} reads the value
+    * as UTF-8 text. Caches without a byte path of their own store the decoded text.
+    */
+   default void putBytes(int key, byte[] value) {
+       put(key, new String(value, StandardCharsets.UTF_8));
+   }
+   /**
+    * The value as bytes: the array given to {@link #putBytes} or the UTF-8 encoding of a String
+    * value. The array may be the one the cache holds and must not be changed.
+    */
+   default byte[] getBytes(int key) {
+       String value = get(key);
+       return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+   }
+   /**
+    * Read-through lookup: on a miss the value is loaded, stored and returned.
+    * Concurrent misses on the same key share a single call to the loader.
+    */
+   String get(int key, ValueLoader loader);
+   /**
+    * Non-blocking variant of {@link #get(int, ValueLoader)}, misses are loaded on the
+    * {@link CacheAsyncExecutor}.
+    */
+   CompletableFuture<String> getAsync(int key, ValueLoader loader);
+   /**
+    * Lookup that never parks the caller on the cache lock: answered on the calling thread when the
+    * lock is free, handed to the {@link CacheAsyncExecutor} when it is contended.
+    */
+   CompletableFuture<String> getAsync(int key);
+   /**
+    * Put that never parks the caller, see {@link #getAsync(int)}. With a write-ahead log that syncs
+    * writes the future completes once the entry is on disk.
+    */
+   CompletableFuture<Void> putAsync(int key, String value);
+   /**
+    * Stores every entry of the map in one pass, taking the cache lock once rather than per entry.
+    */
+   void putAll(Map<Integer, String> entries);
+   /**
+    * Looks up all keys in one pass. Keys that are not cached are left out of the result,
+    * the others keep the order in which they were requested.
+    */
+   Map<Integer, String> getAll(int[] keys);
+   /**
+    * Removes the key and returns the value it had, null when it was not cached.
+    */
+   String removeValueFromCache(int key);
    double getAverageTimeSpentAddingNewValues();
+   /**
+    * Hit rate and latency histograms of get, put, eviction and load.
+    */
+   CacheMetrics getMetrics();
    long getNumberOfEvictions();
+   long getNumberOfExpirations();
+   /**
+    * Subscribes to misses, evictions, expirations, removals and writes. Events are delivered asynchronously
+    * and may be dropped under overload, see {@link CacheEventPublisher}.
+    */
+   void addEventListener(CacheEventListener listener);
+   void removeEventListener(CacheEventListener listener);
    void clearCache();
+   /**
+    * Stops the background work of the cache, such as expiration and event delivery.
+    */
+   default void shutdown() {
+   }
 
 }
@@ -0,0 +1,121 @@
+package epam.training.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Point in time copy of a cache's entries in eviction order, the entry to be evicted first comes
+ * first. Keeping that order is what lets a restored cache pick up with the same recency or frequency
+ * ranking it had. Expiration times are wall clock milliseconds, 0 when the entry never expires.
+ * Values stored as bytes stay bytes, so binary payloads survive a snapshot unchanged. The
+ * {@link Expiry} an entry was put with is only kept in memory, for moving entries between caches: a
+ * snapshot read back from a {@link CacheSnapshotStore} has none.
+ */
+public final class CacheSnapshot {
+
+    private final long createdAt;
+    private int[] keys;
+    // String or byte[]
+    private Object[] values;
+    private int[] frequencies;
+    private long[] expirationTimes;
+    private Expiry[] expiries;
+    private int size;
+
+    public CacheSnapshot(long createdAt, int expectedSize) {
+        int capacity = Math.max(expectedSize, 1);
+        this.createdAt = createdAt;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.frequencies = new int[capacity];
+        this.expirationTimes = new long[capacity];
+        this.expiries = new Expiry[capacity];
+    }
+
+    public void add(int key, String value, int frequency, long expirationTime) {
+        addValue(key, value, frequency, expirationTime, null);
+    }
+
+    /**
+     * Adds an entry with an expiry of its own, null when it follows the time to live of its cache.
+     */
+    public void add(int key, String value, int frequency, long expirationTime, Expiry expiry) {
+        addValue(key, value, frequency, expirationTime, expiry);
+    }
+
+    public void addBytes(int key, byte[] value, int frequency, long expirationTime) {
+        addValue(key, value, frequency, expirationTime, null);
+    }
+
+    public void addBytes(int key, byte[] value, int frequency, long expirationTime, Expiry expiry) {
+        addValue(key, value, frequency, expirationTime, expiry);
+    }
+
+    private void addValue(int key, Object value, int frequency, long expirationTime, Expiry expiry) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            frequencies = Arrays.copyOf(frequencies, capacity);
+            expirationTimes = Arrays.copyOf(expirationTimes, capacity);
+            expiries = Arrays.copyOf(expiries, capacity);
+        }
+        keys[size] = key;
+        values[size] = value;
+        frequencies[size] = frequency;
+        expirationTimes[size] = expirationTime;
+        expiries[size] = expiry;
+        size++;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getKey(int index) {
+        return keys[index];
+    }
+
+    public String getValue(int index) {
+        Object value = values[index];
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : (String) value;
+    }
+
+    /**
+     * The value as bytes, UTF-8 encoded when it was added as a String.
+     */
+    public byte[] getValueBytes(int index) {
+        Object value = values[index];
+        return value instanceof String ? ((String) value).getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+    }
+
+    /**
+     * True when the value was added as bytes, {@link #getValueBytes(int)} then returns it without copying.
+     */
+    public boolean isBinary(int index) {
+        return values[index] instanceof byte[];
+    }
+
+    public int getFrequency(int index) {
+        return frequencies[index];
+    }
+
+    public long getExpirationTime(int index) {
+        return expirationTimes[index];
+    }
+
+    /**
+     * The expiry the entry was put with, null when it follows the time to live of its cache.
+     */
+    public Expiry getExpiry(int index) {
+        return expiries[index];
+    }
+
+    public boolean isExpired(int index, long now) {
+        return expirationTimes[index] != 0 && now > expirationTimes[index];
+    }
+}
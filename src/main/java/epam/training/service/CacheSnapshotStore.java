@@ -0,0 +1,131 @@
+package epam.training.service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Keeps a {@link CacheSnapshot} in a binary file, all integers big-endian:
+ * <ul>
+ *     <li>header: int32 magic, int32 version, int64 creation time, int32 entry count</li>
+ *     <li>per entry: int32 key, int32 frequency, int64 expiration time, int32 value length, value bytes</li>
+ * </ul>
+ * String values are written as UTF-8, values stored as bytes as they are, and every value loads back
+ * as bytes. A value length of -1 marks a null value. Saving writes a sibling temporary file through a
+ * {@link FileChannel} and moves it over the old snapshot, so a crash never leaves a half written
+ * file behind. Loading maps the file into memory and decodes it in one pass.
+ */
+public class CacheSnapshotStore {
+
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES * 3 + Long.BYTES;
+    private static final int ENTRY_HEADER_BYTES = Integer.BYTES * 3 + Long.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+
+    public CacheSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public void save(CacheSnapshot snapshot) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(snapshot.getCreatedAt()).putInt(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++) {
+                byte[] bytes = snapshot.getValueBytes(i);
+                int length = bytes == null ? 0 : bytes.length;
+                if (buffer.remaining() < ENTRY_HEADER_BYTES + length) {
+                    writeFully(channel, buffer);
+                    if (buffer.capacity() < ENTRY_HEADER_BYTES + length) {
+                        buffer = ByteBuffer.allocate(ENTRY_HEADER_BYTES + length);
+                    }
+                }
+                buffer.putInt(snapshot.getKey(i))
+                        .putInt(snapshot.getFrequency(i))
+                        .putLong(snapshot.getExpirationTime(i))
+                        .putInt(bytes == null ? -1 : length);
+                if (bytes != null) {
+                    buffer.put(bytes);
+                }
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot, empty when no snapshot has been saved yet.
+     *
+     * @throws IOException when the file cannot be read or is not a valid snapshot
+     */
+    public Optional<CacheSnapshot> load() throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a cache snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            long createdAt = buffer.getLong();
+            int count = buffer.getInt();
+            if (count < 0) {
+                throw new IOException("Invalid entry count " + count + " in " + file);
+            }
+            CacheSnapshot snapshot = new CacheSnapshot(createdAt, Math.min(count, buffer.remaining() / ENTRY_HEADER_BYTES));
+            for (int i = 0; i < count; i++) {
+                int key = buffer.getInt();
+                int frequency = buffer.getInt();
+                long expirationTime = buffer.getLong();
+                int length = buffer.getInt();
+                byte[] value = null;
+                if (length > buffer.remaining()) {
+                    throw new IOException("Invalid value length " + length + " for key " + key + " in " + file);
+                }
+                if (length >= 0) {
+                    value = new byte[length];
+                    buffer.get(value);
+                }
+                snapshot.addBytes(key, value, frequency, expirationTime);
+            }
+            return Optional.of(snapshot);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot " + file + " is truncated", e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
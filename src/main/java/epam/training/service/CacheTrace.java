@@ -0,0 +1,102 @@
+package epam.training.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Operations recorded by a {@link CacheTraceRecorder}, loaded into memory for replay. The file is
+ * laid out as follows, all integers big-endian:
+ * <ul>
+ *     <li>header: int32 magic, int32 version, int64 record count, int64 recording start in nanos</li>
+ *     <li>per record: int8 operation, int32 key, int32 value length in UTF-8 bytes (-1 when there
+ *     is none), int64 {@link System#nanoTime()}</li>
+ * </ul>
+ * Records with operation 0 were claimed but never finished and are skipped.
+ */
+public final class CacheTrace {
+
+    public static final byte GET_HIT = 1;
+    public static final byte GET_MISS = 2;
+    public static final byte PUT = 3;
+    public static final byte REMOVE = 4;
+    public static final byte CLEAR = 5;
+
+    static final int MAGIC = 0x43545243;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES * 2;
+    static final int RECORD_BYTES = 1 + Integer.BYTES * 2 + Long.BYTES;
+
+    private final byte[] operations;
+    private final int[] keys;
+    private final int[] valueLengths;
+    private final long[] nanoTimes;
+    private final int size;
+
+    private CacheTrace(byte[] operations, int[] keys, int[] valueLengths, long[] nanoTimes, int size) {
+        this.operations = operations;
+        this.keys = keys;
+        this.valueLengths = valueLengths;
+        this.nanoTimes = nanoTimes;
+        this.size = size;
+    }
+
+    /**
+     * @throws IOException when the file cannot be read or is not a trace
+     */
+    public static CacheTrace load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a cache trace: " + file);
+            }
+            if (buffer.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException("Unsupported trace version " + buffer.getInt(Integer.BYTES) + " in " + file);
+            }
+            long fileRecords = (buffer.capacity() - HEADER_BYTES) / RECORD_BYTES;
+            long recorded = buffer.getLong(Integer.BYTES * 2);
+            // a recorder that never got closed left the count at 0, its records are found by scanning
+            long count = recorded == 0 ? fileRecords : Math.min(recorded, fileRecords);
+            byte[] operations = new byte[(int) count];
+            int[] keys = new int[(int) count];
+            int[] valueLengths = new int[(int) count];
+            long[] nanoTimes = new long[(int) count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                int position = HEADER_BYTES + i * RECORD_BYTES;
+                byte operation = buffer.get(position);
+                if (operation == 0) {
+                    continue;
+                }
+                operations[size] = operation;
+                keys[size] = buffer.getInt(position + 1);
+                valueLengths[size] = buffer.getInt(position + 1 + Integer.BYTES);
+                nanoTimes[size] = buffer.getLong(position + 1 + Integer.BYTES * 2);
+                size++;
+            }
+            return new CacheTrace(operations, keys, valueLengths, nanoTimes, size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte getOperation(int index) {
+        return operations[index];
+    }
+
+    public int getKey(int index) {
+        return keys[index];
+    }
+
+    public int getValueLength(int index) {
+        return valueLengths[index];
+    }
+
+    public long getNanoTime(int index) {
+        return nanoTimes[index];
+    }
+}
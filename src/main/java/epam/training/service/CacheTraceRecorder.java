@@ -0,0 +1,107 @@
+package epam.training.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes cache operations into a memory-mapped file in the format of {@link CacheTrace}. The file
+ * is sized for the maximum number of records up front. Writers claim a record with one atomic
+ * increment and fill it with absolute puts, so they never wait for each other or for the disk.
+ * Operations past the end of the file are dropped and counted. Pages are only written to disk
+ * when they are touched, so an oversized file costs little until it fills up. A recorder never
+ * replaces an existing file.
+ */
+public class CacheTraceRecorder implements Closeable {
+
+    /**
+     * Largest trace one mapping can hold.
+     */
+    public static final long MAX_RECORDS = (Integer.MAX_VALUE - CacheTrace.HEADER_BYTES) / CacheTrace.RECORD_BYTES;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Resolves a trace file name in the directory, rejecting names that are paths or lead out of it.
+     */
+    public static Path resolve(Path directory, String fileName) {
+        Path base = directory.toAbsolutePath().normalize();
+        Path file = base.resolve(fileName).normalize();
+        if (fileName.isEmpty() || !base.equals(file.getParent()) || !Paths.get(fileName).equals(file.getFileName())) {
+            throw new IllegalArgumentException("Not a trace file name: " + fileName);
+        }
+        return file;
+    }
+
+    /**
+     * Fails with {@link java.nio.file.FileAlreadyExistsException} when the file exists.
+     */
+    public CacheTraceRecorder(Path file, long maxRecords) throws IOException {
+        if (maxRecords <= 0 || maxRecords > MAX_RECORDS) {
+            throw new IllegalArgumentException("maxRecords must be between 1 and " + MAX_RECORDS + ": " + maxRecords);
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.file = file;
+        this.capacity = maxRecords;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                CacheTrace.HEADER_BYTES + maxRecords * CacheTrace.RECORD_BYTES);
+        buffer.putInt(0, CacheTrace.MAGIC);
+        buffer.putInt(Integer.BYTES, CacheTrace.VERSION);
+        buffer.putLong(Integer.BYTES * 2, 0);
+        buffer.putLong(Integer.BYTES * 2 + Long.BYTES, System.nanoTime());
+    }
+
+    public void record(byte operation, int key, int valueLength) {
+        long index = claimed.getAndIncrement();
+        if (index >= capacity) {
+            dropped.increment();
+            return;
+        }
+        int position = CacheTrace.HEADER_BYTES + (int) index * CacheTrace.RECORD_BYTES;
+        buffer.putInt(position + 1, key);
+        buffer.putInt(position + 1 + Integer.BYTES, valueLength);
+        buffer.putLong(position + 1 + Integer.BYTES * 2, System.nanoTime());
+        // written last, a reader skips records whose operation is still 0
+        buffer.put(position, operation);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getRecordCount() {
+        return Math.min(claimed.get(), capacity);
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stores the record count and flushes the file. A record still being written by another thread
+     * may miss the flush, if it is left unfinished it is skipped on load.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.putLong(Integer.BYTES * 2, getRecordCount());
+        buffer.force();
+        channel.close();
+    }
+}
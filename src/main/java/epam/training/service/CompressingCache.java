@@ -0,0 +1,17 @@
+package epam.training.service;
+
+/**
+ * A cache that can keep large values compressed, see {@link ValueCompressor}.
+ */
+public interface CompressingCache {
+    /**
+     * Compresses values written from now on that reach the threshold of the compressor. Entries
+     * already cached stay as they are until they are written again.
+     */
+    void enableCompression(ValueCompressor compressor);
+
+    /**
+     * The compressor in use with its statistics, null when compression is off.
+     */
+    ValueCompressor getCompressor();
+}
@@ -0,0 +1,25 @@
+package epam.training.service;
+
+/**
+ * Estimates how much memory a cache entry takes, for caches bounded in bytes rather than entries.
+ * Assumes a 64-bit JVM with compressed references and compact strings of one byte per character:
+ * map node, boxed key and entry object are covered by a fixed overhead, the value by its string
+ * header, array header and characters, or by its array header and bytes when stored as bytes.
+ */
+final class EntryWeigher {
+
+    static final int ENTRY_OVERHEAD = 96;
+    static final int VALUE_OVERHEAD = 40;
+    static final int BYTES_OVERHEAD = 16;
+
+    private EntryWeigher() {
+    }
+
+    static int weigh(String value) {
+        return value == null ? ENTRY_OVERHEAD : ENTRY_OVERHEAD + VALUE_OVERHEAD + value.length();
+    }
+
+    static int weigh(byte[] value) {
+        return value == null ? ENTRY_OVERHEAD : ENTRY_OVERHEAD + BYTES_OVERHEAD + value.length;
+    }
+}
@@ -0,0 +1,46 @@
+package epam.training.service;
+
+/**
+ * Time to live of a single entry, counted either from when it was written or from when it was
+ * last read. See {@link CacheService#put(int, String, Expiry)}.
+ */
+public final class Expiry {
+
+    private final long timeToLiveMillis;
+    private final boolean afterAccess;
+
+    private Expiry(long timeToLiveMillis, boolean afterAccess) {
+        if (timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive: " + timeToLiveMillis);
+        }
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.afterAccess = afterAccess;
+    }
+
+    /**
+     * The entry expires a fixed time after it was written, reads do not extend it.
+     */
+    public static Expiry afterWrite(long timeToLiveMillis) {
+        return new Expiry(timeToLiveMillis, false);
+    }
+
+    /**
+     * The entry expires once it has not been read or written for the given time.
+     */
+    public static Expiry afterAccess(long timeToLiveMillis) {
+        return new Expiry(timeToLiveMillis, true);
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public boolean isAfterAccess() {
+        return afterAccess;
+    }
+
+    @Override
+    public String toString() {
+        return (afterAccess ? "afterAccess(" : "afterWrite(") + timeToLiveMillis + "ms)";
+    }
+}
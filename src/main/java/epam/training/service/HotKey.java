@@ -0,0 +1,35 @@
+package epam.training.service;
+
+/**
+ * A key reported by a {@link HotKeyTracker} with its estimated count in the window. The count
+ * overestimates by at most the error, so the key was seen at least {@code count - error} times.
+ */
+public final class HotKey {
+
+    private final int key;
+    private final long count;
+    private final long error;
+
+    HotKey(int key, long count, long error) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+    }
+
+    public int getKey() {
+        return key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + count + (error == 0 ? "" : "(-" + error + ")");
+    }
+}
@@ -0,0 +1,169 @@
+package epam.training.service;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Windowed top-K of the keys a cache is asked for and of the keys it misses, in constant memory.
+ * Each window counts into fresh {@link SpaceSaving} summaries with eight counters per reported key,
+ * at its end they are frozen as the last complete window. Recording never parks a request thread:
+ * when another thread holds the summaries the key is skipped and counted as dropped, which under
+ * contention turns the tracker into a sample of the traffic.
+ */
+public class HotKeyTracker {
+
+    static final int COUNTERS_PER_KEY = 8;
+
+    private final int top;
+    private final long windowMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder dropped = new LongAdder();
+    private final ScheduledFuture<?> rotation;
+    private SpaceSaving accesses;
+    private SpaceSaving misses;
+    private long windowStart;
+    private volatile Window lastWindow;
+
+    public HotKeyTracker(int top, long windowMillis) {
+        if (top <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("Top and window must be positive: " + top + ", " + windowMillis);
+        }
+        this.top = top;
+        this.windowMillis = windowMillis;
+        this.accesses = new SpaceSaving(top * COUNTERS_PER_KEY);
+        this.misses = new SpaceSaving(top * COUNTERS_PER_KEY);
+        this.windowStart = System.currentTimeMillis();
+        this.rotation = CacheMaintenanceScheduler.scheduleAtFixedRate(this::rotate, windowMillis);
+    }
+
+    /**
+     * Counts a lookup or a write of the key.
+     */
+    public void recordAccess(int key) {
+        if (!lock.tryLock()) {
+            dropped.increment();
+            return;
+        }
+        try {
+            accesses.add(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordMiss(int key) {
+        if (!lock.tryLock()) {
+            dropped.increment();
+            return;
+        }
+        try {
+            misses.add(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The window being counted, up to now.
+     */
+    public Window currentWindow() {
+        lock.lock();
+        try {
+            return window(System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The last complete window, null until the first one ends.
+     */
+    public Window lastWindow() {
+        return lastWindow;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Keys skipped because another thread was recording, since creation.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public void shutdown() {
+        rotation.cancel(false);
+    }
+
+    void rotate() {
+        long now = System.currentTimeMillis();
+        Window completed;
+        lock.lock();
+        try {
+            completed = window(now);
+            accesses = new SpaceSaving(top * COUNTERS_PER_KEY);
+            misses = new SpaceSaving(top * COUNTERS_PER_KEY);
+            windowStart = now;
+        } finally {
+            lock.unlock();
+        }
+        lastWindow = completed;
+    }
+
+    private Window window(long end) {
+        return new Window(windowStart, end, accesses.total(), misses.total(), accesses.top(top), misses.top(top));
+    }
+
+    public static final class Window {
+        private final long start;
+        private final long end;
+        private final long accessCount;
+        private final long missCount;
+        private final List<HotKey> hotKeys;
+        private final List<HotKey> hotMisses;
+
+        private Window(long start, long end, long accessCount, long missCount, List<HotKey> hotKeys,
+                       List<HotKey> hotMisses) {
+            this.start = start;
+            this.end = end;
+            this.accessCount = accessCount;
+            this.missCount = missCount;
+            this.hotKeys = hotKeys;
+            this.hotMisses = hotMisses;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getAccessCount() {
+            return accessCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Most accessed keys, highest count first.
+         */
+        public List<HotKey> getHotKeys() {
+            return hotKeys;
+        }
+
+        /**
+         * Most missed keys, highest count first.
+         */
+        public List<HotKey> getHotMisses() {
+            return hotMisses;
+        }
+    }
+}
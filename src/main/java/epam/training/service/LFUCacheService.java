@@ -1,31 +1,57 @@
 package epam.training.service;
 
-import org.springframework.stereotype.Service;
-
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.List;
-import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-@Service
-public class LFUCacheService implements CacheService {
+public class LFUCacheService implements CacheService, WeightedCache, CompressingCache, ResizableCache,
+        WriteAheadLog.Target {
+
+    /**
+     * Entries a resize evicts or re-times per run, short enough not to hold up requests for long.
+     */
+    static final int RESIZE_BATCH = 256;
+    private static final long RESIZE_PERIOD_MILLIS = 5;
+    /**
+     * Entries a snapshot copies per hold of the lock.
+     */
+    private static final int SNAPSHOT_BATCH = 256;
 
-    private Map<Integer, String> valueMap = new ConcurrentHashMap<>();
-    private Map<Integer, Integer> countMap = new ConcurrentHashMap<>();
-    private TreeMap<Integer, List<Integer>> frequencyMap = new TreeMap<>();
-    private Map<Integer, Long> timeMap = new ConcurrentHashMap<>();
+    private Map<Integer, LFUFrequencyList.Entry> entryMap = new ConcurrentHashMap<>();
+    private LFUFrequencyList frequencyList = new LFUFrequencyList();
+    private TimerWheel<LFUFrequencyList.Entry> timerWheel = new TimerWheel<>(System.currentTimeMillis());
     private ReadWriteLock lock = new ReentrantReadWriteLock();
     private Lock writeLock = lock.writeLock();
     private Lock readLock = lock.readLock();
-    private int cacheCapacity;
-    private int timeStampOfRemoval;
-    private Double averageTimeSpentAddingNewValues = 0.0;
+    private volatile int cacheCapacity;
+    private volatile int timeStampOfRemoval;
+    private long maxBytes;
+    private volatile long weightedSize;
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final LoadCoalescer loadCoalescer = new LoadCoalescer(metrics);
+    private final CacheEventPublisher events = new CacheEventPublisher();
     private Long numberOfEvictions = 0L;
+    private Long numberOfExpirations = 0L;
+    private OffHeapValueStore valueStore;
+    private ScheduledFuture<?> cleaner;
+    private long cleanerPeriod;
+    private PeriodicSnapshot snapshots;
+    private WriteAheadLog writeAheadLog;
+    private boolean syncWrites;
+    private volatile double refreshAheadRatio;
+    private volatile ValueCompressor compressor;
+    private volatile HotKeyTracker hotKeys;
+    private Resizer resizer;
+    private volatile CacheResize lastResize;
 
     public LFUCacheService() {
         initializeCleaner();
@@ -37,33 +63,115 @@ public class LFUCacheService implements CacheService {
         initializeCleaner();
     }
 
+    public LFUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval, OffHeapValueStore valueStore) {
+        this(cacheCapacity, timeStampOfRemoval);
+        this.valueStore = valueStore;
+    }
+
     @Override
     public String get(int key) {
-        readLock.lock();
-        try {
-            if (!valueMap.containsKey(key) || cacheCapacity == 0) {
-                System.out.println("Key - " + key + " not found");
-                return null;
-            }
-            int frequency = countMap.get(key);
-            frequencyMap.get(frequency).remove(Integer.valueOf(key));
+        return lookup(key, null);
+    }
+
+    /**
+     * With refresh-ahead on, a hit on an entry close to its expiration also reloads it in the
+     * background, the current value is returned meanwhile.
+     */
+    @Override
+    public String get(int key, ValueLoader loader) {
+        String value = lookup(key, loader);
+        if (value != null) {
+            return value;
+        }
+        return loadCoalescer.load(key, loader, this::peek, this::put);
+    }
 
-            if (frequencyMap.get(frequency).size() == 0) {
-                frequencyMap.remove(frequency);
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        CompletableFuture<String> found;
+        if (writeLock.tryLock()) {
+            try {
+                // the lock is reentrant, the lookup takes it again without waiting
+                found = CompletableFuture.completedFuture(lookup(key, loader));
+            } finally {
+                writeLock.unlock();
             }
-            frequencyMap.computeIfAbsent(frequency + 1, k -> new LinkedList<>()).add(key);
-            countMap.put(key, frequency + 1);
-            addOrUpdateTimeInTimeMap(key);
-            return valueMap.get(key);
+        } else {
+            // only the lookup is handed off, a pool thread never waits for a load queued behind it
+            found = CacheAsyncExecutor.supplyAsync(() -> lookup(key, loader));
+        }
+        return found.thenCompose(value -> value != null
+                ? CompletableFuture.completedFuture(value)
+                : loadCoalescer.loadAsync(key, loader, this::peek, this::put, CacheAsyncExecutor.get()));
+    }
 
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        long start = System.nanoTime();
+        if (!writeLock.tryLock()) {
+            return CacheAsyncExecutor.supplyAsync(() -> get(key));
+        }
+        String value;
+        try {
+            value = getValue(key);
         } finally {
-            readLock.unlock();
+            writeLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return CompletableFuture.completedFuture(value);
+    }
+
+    /**
+     * With a log that syncs writes, the future completes on the log's writer thread once the batch
+     * holding the put is on disk, nothing waits for it in between.
+     */
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        if (!writeLock.tryLock()) {
+            return CacheAsyncExecutor.runAsync(() -> put(key, value));
+        }
+        long sequence;
+        try {
+            putValue(key, value, null, null);
+            sequence = writeAheadLog == null ? 0 : writeAheadLog.appendPut(key, value);
+        } finally {
+            writeLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+        if (syncWrites && sequence > 0) {
+            return writeAheadLog.whenDurable(sequence);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        Map<Integer, String> values = new LinkedHashMap<>();
+        writeLock.lock();
+        try {
+            for (int key : keys) {
+                String value = getValue(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        } finally {
+            writeLock.unlock();
         }
+        metrics.recordGets(keys.length, values.size(), System.nanoTime() - start);
+        return values;
     }
 
     @Override
     public double getAverageTimeSpentAddingNewValues() {
-        return averageTimeSpentAddingNewValues;
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
@@ -71,108 +179,826 @@ public class LFUCacheService implements CacheService {
         return numberOfEvictions;
     }
 
+    @Override
+    public long getNumberOfExpirations() {
+        return numberOfExpirations;
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        events.addListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        events.removeListener(listener);
+    }
 
     @Override
     public void put(int key, String value) {
+        put(key, value, null);
+    }
+
+    /**
+     * A log replay or a restored snapshot brings the entry back with the time to live of the cache.
+     */
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        long start = System.nanoTime();
+        long sequence;
         writeLock.lock();
-        long start = System.currentTimeMillis();
-        try {
-            if (!valueMap.containsKey(key)) {
-                if (valueMap.size() == cacheCapacity && valueMap.size() != 0) {
-                    int lowestCount = frequencyMap.firstKey();
-                    int keyToDelete = frequencyMap.get(lowestCount).remove(0);
-                    if (frequencyMap.get(lowestCount).size() == 0) {
-                        frequencyMap.remove(lowestCount);
-                    }
-                    String valueOfDeletedEntity = valueMap.remove(keyToDelete);
-                    countMap.remove(keyToDelete);
-                    numberOfEvictions++;
-                    System.out.println("Removing entity: key = " + keyToDelete +
-                            " value = " + valueOfDeletedEntity);
-                }
-                valueMap.put(key, value);
-                countMap.put(key, 1);
-                frequencyMap.computeIfAbsent(1, k -> new LinkedList<>()).add(key);
-                addOrUpdateTimeInTimeMap(key);
-            } else {
-                valueMap.put(key, value);
-                int frequency = countMap.get(key);
-                frequencyMap.get(frequency).remove(Integer.valueOf(key));
-
-                if (frequencyMap.get(frequency).size() == 0) {
-                    frequencyMap.remove(frequency);
+        try {
+            putValue(key, value, null, expiry);
+            sequence = writeAheadLog == null ? 0 : writeAheadLog.appendPut(key, value);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(sequence);
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public void putBytes(int key, byte[] value) {
+        long start = System.nanoTime();
+        long sequence;
+        writeLock.lock();
+        try {
+            putValue(key, null, value, null);
+            sequence = writeAheadLog == null ? 0 : writeAheadLog.appendPut(key, value);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(sequence);
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public byte[] getBytes(int key) {
+        long start = System.nanoTime();
+        byte[] value;
+        writeLock.lock();
+        try {
+            LFUFrequencyList.Entry entry = getEntry(key);
+            value = entry == null ? null : readBytes(entry);
+        } finally {
+            writeLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long sequence = 0;
+        writeLock.lock();
+        try {
+            for (Map.Entry<Integer, String> entry : entries.entrySet()) {
+                putValue(entry.getKey(), entry.getValue(), null, null);
+                if (writeAheadLog != null) {
+                    sequence = writeAheadLog.appendPut(entry.getKey(), entry.getValue());
                 }
-                frequencyMap.computeIfAbsent(frequency + 1, k -> new LinkedList<>()).add(key);
-                countMap.put(key, frequency + 1);
-                addOrUpdateTimeInTimeMap(key);
             }
         } finally {
-            long finish = System.currentTimeMillis();
-            long timeElapsed = finish - start;
-            calculateAverageTimeSpentAddingNewValues(timeElapsed);
             writeLock.unlock();
         }
+        awaitDurable(sequence);
+        metrics.recordPuts(entries.size(), System.nanoTime() - start);
     }
 
+    @Override
     public String removeValueFromCache(int key) {
+        String value;
+        long sequence;
+        writeLock.lock();
+        try {
+            LFUFrequencyList.Entry entry = entryMap.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            frequencyList.remove(entry);
+            timerWheel.deschedule(entry);
+            value = discardValue(entry);
+            events.publish(CacheEventType.REMOVAL, key, value);
+            sequence = writeAheadLog == null ? 0 : writeAheadLog.appendRemove(key);
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(sequence);
+        return value;
+    }
+
+    /**
+     * Copies the entries with their use counts and expiration times, least frequently used first.
+     * Only the order is taken in one pass, the entries are then copied and decompressed
+     * {@link #SNAPSHOT_BATCH} at a time, so requests wait for one batch at most. An entry changed in
+     * between is copied as it is when its batch comes, one removed in between is left out.
+     */
+    @Override
+    public CacheSnapshot snapshot() {
+        long createdAt;
+        int[] keys;
+        readLock.lock();
+        try {
+            createdAt = new Date().getTime();
+            keys = new int[frequencyList.size()];
+            int[] next = {0};
+            frequencyList.forEach(entry -> keys[next[0]++] = entry.key);
+        } finally {
+            readLock.unlock();
+        }
+        CacheSnapshot snapshot = new CacheSnapshot(createdAt, keys.length);
+        for (int from = 0; from < keys.length; from += SNAPSHOT_BATCH) {
+            copyEntries(snapshot, keys, from, Math.min(from + SNAPSHOT_BATCH, keys.length));
+        }
+        return snapshot;
+    }
+
+    private void copyEntries(CacheSnapshot snapshot, int[] keys, int from, int to) {
+        readLock.lock();
+        try {
+            for (int i = from; i < to; i++) {
+                LFUFrequencyList.Entry entry = entryMap.get(keys[i]);
+                if (entry == null) {
+                    continue;
+                }
+                Expiry expiry = entry.defaultExpiry ? null : entry.expireAfterAccess
+                        ? Expiry.afterAccess(entry.timeToLive) : Expiry.afterWrite(entry.timeToLive);
+                if (valueStore == null && entry.bytes == null) {
+                    snapshot.add(entry.key, entry.value, entry.getFrequency(), entry.expirationTime, expiry);
+                } else {
+                    snapshot.addBytes(entry.key, readBytes(entry), entry.getFrequency(), entry.expirationTime, expiry);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the contents of the cache with a snapshot and returns the number of entries restored.
+     * Entries that expired in the meantime are skipped, use counts and the order among equal counts
+     * are kept. When the snapshot holds more than fits, the least frequently used entries are dropped.
+     * An entry that carries its own expiry keeps it, the others take the time to live of this cache.
+     */
+    @Override
+    public int restore(CacheSnapshot snapshot) {
+        writeLock.lock();
+        try {
+            clearEntries();
+            long now = new Date().getTime();
+            for (int i = 0; i < snapshot.size(); i++) {
+                int key = snapshot.getKey(i);
+                if (snapshot.isExpired(i, now) || entryMap.containsKey(key)) {
+                    continue;
+                }
+                LFUFrequencyList.Entry entry = frequencyList.restore(key, null, snapshot.getFrequency(i));
+                entryMap.put(key, entry);
+                if (snapshot.isBinary(i)) {
+                    storeBytes(entry, snapshot.getValueBytes(i));
+                } else {
+                    storeValue(entry, snapshot.getValue(i));
+                }
+                Expiry expiry = snapshot.getExpiry(i);
+                if (expiry != null) {
+                    entry.timeToLive = expiry.getTimeToLiveMillis();
+                    entry.expireAfterAccess = expiry.isAfterAccess();
+                    entry.defaultExpiry = false;
+                    entry.expirationTime = snapshot.getExpirationTime(i);
+                    timerWheel.schedule(entry);
+                    startCleaner(entry.timeToLive);
+                } else {
+                    entry.timeToLive = timeStampOfRemoval;
+                    entry.expireAfterAccess = true;
+                    entry.defaultExpiry = true;
+                    if (timeStampOfRemoval > 0) {
+                        long expirationTime = snapshot.getExpirationTime(i);
+                        entry.expirationTime = expirationTime == 0 ? now + timeStampOfRemoval : expirationTime;
+                        timerWheel.schedule(entry);
+                    }
+                }
+            }
+            while (entryMap.size() > cacheCapacity || (maxBytes > 0 && weightedSize > maxBytes)) {
+                LFUFrequencyList.Entry dropped = frequencyList.evict();
+                entryMap.remove(dropped.key);
+                timerWheel.deschedule(dropped);
+                discardValue(dropped);
+            }
+            return entryMap.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Warm restart: restores the snapshot kept by the store, if there is a readable one, then saves
+     * a fresh snapshot every {@code periodMillis} and a last one on {@link #shutdown()}.
+     */
+    public int enableSnapshots(CacheSnapshotStore store, long periodMillis) {
+        int restored = PeriodicSnapshot.restore(store, this::restore);
+        snapshots = new PeriodicSnapshot(store, this::snapshot, periodMillis);
+        return restored;
+    }
+
+    /**
+     * Durable mode: replays the log into the cache, then appends every put, removal, clear and
+     * expiration to it. With {@code syncWrites} a mutation returns only once its record is on disk,
+     * otherwise the log trails the cache by at most one group commit. Returns the number of entries
+     * after the replay. A log replaces whatever a snapshot restored before it.
+     */
+    public int enableWriteAheadLog(WriteAheadLog writeAheadLog, boolean syncWrites) throws IOException {
+        writeAheadLog.start(this);
+        metrics.reset();
         writeLock.lock();
         try {
-            countMap.remove(key);
-            frequencyMap.remove(key);
-            timeMap.remove(key);
-            return valueMap.remove(key);
+            this.writeAheadLog = writeAheadLog;
+            this.syncWrites = syncWrites;
+            return entryMap.size();
         } finally {
             writeLock.unlock();
         }
     }
 
+    /**
+     * Whether writes wait until the write-ahead log has them on disk.
+     */
+    public boolean isSyncingWrites() {
+        return writeAheadLog != null && syncWrites;
+    }
+
     @Override
     public void clearCache() {
-        valueMap.clear();
-        countMap.clear();
-        timeMap.clear();
-        frequencyMap.clear();
-        averageTimeSpentAddingNewValues = 0.0;
-        numberOfEvictions = 0L;
+        long sequence;
+        writeLock.lock();
+        try {
+            clearEntries();
+            metrics.reset();
+            numberOfEvictions = 0L;
+            numberOfExpirations = 0L;
+            sequence = writeAheadLog == null ? 0 : writeAheadLog.appendClear();
+        } finally {
+            writeLock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Stops the expiration task of this cache, entries past their time are then only dropped on access.
+     * Pending events are delivered, a last snapshot is saved and the log is closed before the
+     * background tasks stop.
+     */
+    @Override
+    public void shutdown() {
+        if (cleaner != null) {
+            cleaner.cancel(false);
+        }
+        writeLock.lock();
+        try {
+            if (resizer != null) {
+                resizer.future.cancel(false);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (snapshots != null) {
+            snapshots.stop();
+        }
+        if (hotKeys != null) {
+            hotKeys.shutdown();
+        }
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close write-ahead log", e);
+            }
+        }
+        events.shutdown();
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Bounds the cache by estimated bytes on top of the entry count, whichever is hit first evicts.
+     */
+    @Override
+    public void setMaxBytes(long maxBytes) {
+        writeLock.lock();
+        try {
+            this.maxBytes = maxBytes;
+            evictOverweight(null);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return cacheCapacity;
+    }
+
+    @Override
+    public int getTimeToLive() {
+        return timeStampOfRemoval;
+    }
+
+    /**
+     * Writes respect the new capacity at once. Entries above it are evicted least frequently used
+     * first, {@link #RESIZE_BATCH} per run of the maintenance thread, meanwhile a write into a full
+     * cache still evicts one entry. Entries written without an {@link Expiry} then expire the new
+     * time to live after their last access, they are re-timed in the same batches. A resize replaces
+     * one that is still running.
+     */
+    @Override
+    public CacheResize resize(int capacity, int timeToLive) {
+        if (capacity < 0 || timeToLive < 0) {
+            throw new IllegalArgumentException("Capacity and time to live must not be negative: " + capacity + ", " + timeToLive);
+        }
+        writeLock.lock();
+        try {
+            if (resizer != null) {
+                resizer.future.cancel(false);
+                resizer.resize.finish();
+                resizer = null;
+            }
+            int[] keys = timeToLive == timeStampOfRemoval
+                    ? new int[0]
+                    : entryMap.keySet().stream().mapToInt(Integer::intValue).toArray();
+            CacheResize resize = new CacheResize(cacheCapacity, timeStampOfRemoval, capacity, timeToLive,
+                    Math.max(entryMap.size() - capacity, 0) + keys.length, metrics);
+            cacheCapacity = capacity;
+            timeStampOfRemoval = timeToLive;
+            // the cleaner follows the new time to live, faster or slower
+            if (timeToLive > 0 && (cleaner == null || cleanupPeriod(timeToLive) != cleanerPeriod)) {
+                scheduleCleaner(cleanupPeriod(timeToLive));
+            }
+            if (!resize.isDone()) {
+                resizer = new Resizer(resize, keys);
+            }
+            lastResize = resize;
+            return resize;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CacheResize getLastResize() {
+        return lastResize;
+    }
+
+    public double getRefreshAheadRatio() {
+        return refreshAheadRatio;
+    }
+
+    /**
+     * Refresh-ahead: an entry written with {@link Expiry#afterWrite} that is read through a loader in
+     * the last {@code ratio} of its time to live is reloaded in the background. 0 turns it off.
+     */
+    public void setRefreshAheadRatio(double ratio) {
+        if (ratio < 0 || ratio >= 1) {
+            throw new IllegalArgumentException("Refresh-ahead ratio must be in [0, 1): " + ratio);
+        }
+        this.refreshAheadRatio = ratio;
+    }
+
+    @Override
+    public void enableCompression(ValueCompressor compressor) {
+        writeLock.lock();
+        try {
+            this.compressor = compressor;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ValueCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Reports the most looked up, written and missed keys to the tracker, which the cache stops on shutdown.
+     */
+    public void enableHotKeyTracking(HotKeyTracker tracker) {
+        this.hotKeys = tracker;
+    }
+
+    public HotKeyTracker getHotKeyTracker() {
+        return hotKeys;
+    }
+
+    public long getOffHeapBytesAllocated() {
+        return valueStore == null ? 0L : valueStore.getOffHeapBytesAllocated();
+    }
+
+    /**
+     * Looks a key up without counting it as a use.
+     */
+    private String peek(int key) {
+        readLock.lock();
+        try {
+            LFUFrequencyList.Entry entry = entryMap.get(key);
+            if (entry == null || isExpired(entry, new Date().getTime())) {
+                return null;
+            }
+            return readValue(entry);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        if (syncWrites && sequence > 0) {
+            writeAheadLog.awaitDurable(sequence);
+        }
+    }
+
+    private void clearEntries() {
+        weightedSize = 0;
+        entryMap.clear();
+        frequencyList.clear();
+        timerWheel.clear();
+        if (valueStore != null) {
+            valueStore.clear();
+        }
+    }
+
+    private String lookup(int key, ValueLoader refreshLoader) {
+        long start = System.nanoTime();
+        String value;
+        long refreshTimeToLive = 0;
+        // promotion relinks the entry, so even reads need exclusive access
+        writeLock.lock();
+        try {
+            value = getValue(key);
+            if (value != null && refreshLoader != null && refreshAheadRatio > 0) {
+                refreshTimeToLive = refreshDue(entryMap.get(key));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        if (refreshTimeToLive > 0) {
+            Expiry expiry = Expiry.afterWrite(refreshTimeToLive);
+            loadCoalescer.refresh(key, refreshLoader, (k, v) -> put(k, v, expiry), CacheAsyncExecutor.get());
+        }
+        return value;
+    }
+
+    /**
+     * Time to live to reload an entry with when it expires after write and is within the refresh
+     * window of its expiration, 0 otherwise. Entries that expire after access never get close to
+     * their expiration while they are read.
+     */
+    private long refreshDue(LFUFrequencyList.Entry entry) {
+        if (entry.expireAfterAccess || entry.timeToLive <= 0) {
+            return 0;
+        }
+        long remaining = entry.expirationTime - new Date().getTime();
+        return remaining < entry.timeToLive * refreshAheadRatio ? entry.timeToLive : 0;
+    }
+
+    private String getValue(int key) {
+        LFUFrequencyList.Entry entry = getEntry(key);
+        return entry == null ? null : readValue(entry);
+    }
+
+    /**
+     * Finds a live entry and counts the use, null on a miss.
+     */
+    private LFUFrequencyList.Entry getEntry(int key) {
+        HotKeyTracker tracker = hotKeys;
+        if (tracker != null) {
+            tracker.recordAccess(key);
+        }
+        LFUFrequencyList.Entry entry = entryMap.get(key);
+        if (entry == null || cacheCapacity == 0) {
+            miss(key, tracker);
+            return null;
+        }
+        if (isExpired(entry, new Date().getTime())) {
+            expire(entry);
+            miss(key, tracker);
+            return null;
+        }
+        frequencyList.touch(entry);
+        if (entry.expireAfterAccess) {
+            addOrUpdateTime(entry);
+        }
+        if (compressor != null) {
+            compressor.recordHit(entry.compressor != null);
+        }
+        return entry;
+    }
+
+    private void miss(int key, HotKeyTracker tracker) {
+        if (tracker != null) {
+            tracker.recordMiss(key);
+        }
+        events.publish(CacheEventType.MISS, key, null);
+    }
+
+    /**
+     * Stores either the String or, when it is not null, the byte value.
+     */
+    private void putValue(int key, String value, byte[] bytes, Expiry expiry) {
+        HotKeyTracker tracker = hotKeys;
+        if (tracker != null) {
+            tracker.recordAccess(key);
+        }
+        LFUFrequencyList.Entry entry = entryMap.get(key);
+        if (entry == null) {
+            if (entryMap.size() >= cacheCapacity && entryMap.size() != 0) {
+                evict(frequencyList.victim(null));
+            }
+            entry = frequencyList.add(key, null);
+            entryMap.put(key, entry);
+        } else {
+            frequencyList.touch(entry);
+        }
+        if (bytes == null) {
+            storeValue(entry, value);
+        } else {
+            storeBytes(entry, bytes);
+        }
+        entry.defaultExpiry = expiry == null;
+        if (expiry == null) {
+            entry.timeToLive = timeStampOfRemoval;
+            entry.expireAfterAccess = true;
+        } else {
+            entry.timeToLive = expiry.getTimeToLiveMillis();
+            entry.expireAfterAccess = expiry.isAfterAccess();
+            startCleaner(entry.timeToLive);
+        }
+        addOrUpdateTime(entry);
+        if (bytes == null) {
+            events.publish(CacheEventType.WRITE, key, value);
+        } else {
+            events.publishBytes(CacheEventType.WRITE, key, bytes);
+        }
+        if (maxBytes > 0) {
+            evictOverweight(entry);
+        }
+    }
+
+    /**
+     * Evicts least frequently used entries until the weight fits the budget, sparing the entry just
+     * written unless it alone is larger than the whole budget.
+     */
+    private void evictOverweight(LFUFrequencyList.Entry written) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        if (written != null && written.weight > maxBytes) {
+            evict(written);
+            return;
+        }
+        while (weightedSize > maxBytes) {
+            LFUFrequencyList.Entry victim = frequencyList.victim(written);
+            if (victim == null) {
+                return;
+            }
+            evict(victim);
+        }
+    }
+
+    private void evict(LFUFrequencyList.Entry victim) {
+        long start = System.nanoTime();
+        frequencyList.remove(victim);
+        entryMap.remove(victim.key);
+        timerWheel.deschedule(victim);
+        numberOfEvictions++;
+        publishDiscarded(CacheEventType.EVICTION, victim);
+        metrics.recordEviction(System.nanoTime() - start);
+    }
+
+    private void storeValue(LFUFrequencyList.Entry entry, String value) {
+        byte[] packed = compressor == null ? null : compressor.compress(value);
+        if (packed != null) {
+            storeBytes(entry, packed, compressor);
+            return;
+        }
+        int weight = EntryWeigher.weigh(value);
+        weightedSize += weight - entry.weight;
+        entry.weight = weight;
+        entry.compressor = null;
+        if (valueStore == null) {
+            entry.value = value;
+            entry.bytes = null;
+        } else {
+            valueStore.put(entry.key, value);
+        }
+    }
+
+    private void storeBytes(LFUFrequencyList.Entry entry, byte[] value) {
+        byte[] packed = compressor == null ? null : compressor.compress(value);
+        storeBytes(entry, packed == null ? value : packed, packed == null ? null : compressor);
+    }
+
+    /**
+     * Stores bytes as they are, compressed by {@code packedBy} unless it is null. The weight is the
+     * compressed size, so a byte budget holds more compressed entries.
+     */
+    private void storeBytes(LFUFrequencyList.Entry entry, byte[] value, ValueCompressor packedBy) {
+        int weight = EntryWeigher.weigh(value);
+        weightedSize += weight - entry.weight;
+        entry.weight = weight;
+        entry.compressor = packedBy;
+        if (valueStore == null) {
+            entry.value = null;
+            entry.bytes = value;
+        } else {
+            valueStore.putBytes(entry.key, value);
+        }
+    }
+
+    private String readValue(LFUFrequencyList.Entry entry) {
+        if (entry.compressor != null) {
+            return entry.compressor.decompressToString(storedBytes(entry));
+        }
+        if (valueStore != null) {
+            return valueStore.get(entry.key);
+        }
+        return entry.bytes == null ? entry.value : new String(entry.bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(LFUFrequencyList.Entry entry) {
+        if (entry.compressor != null) {
+            return entry.compressor.decompress(storedBytes(entry));
+        }
+        if (valueStore != null) {
+            return valueStore.getBytes(entry.key);
+        }
+        return entry.value == null ? entry.bytes : entry.value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] storedBytes(LFUFrequencyList.Entry entry) {
+        return valueStore == null ? entry.bytes : valueStore.getBytes(entry.key);
     }
 
-    private void addOrUpdateTimeInTimeMap(int key) {
-        Date date = new Date();
-        timeMap.put(key, date.getTime());
+    private String discardValue(LFUFrequencyList.Entry entry) {
+        String value = readValue(entry);
+        releaseValue(entry);
+        return value;
     }
 
-    private void calculateAverageTimeSpentAddingNewValues(long timeValue) {
-        averageTimeSpentAddingNewValues = (averageTimeSpentAddingNewValues + timeValue) / 2;
+    private void releaseValue(LFUFrequencyList.Entry entry) {
+        weightedSize -= entry.weight;
+        entry.weight = 0;
+        if (valueStore != null) {
+            valueStore.removeBytes(entry.key);
+        }
+    }
+
+    /**
+     * Publishes the value of an entry that is leaving the cache without decoding it on this thread.
+     */
+    private void publishDiscarded(CacheEventType type, LFUFrequencyList.Entry entry) {
+        if (valueStore == null && entry.bytes != null && entry.compressor == null) {
+            releaseValue(entry);
+            events.publishBytes(type, entry.key, entry.bytes);
+        } else {
+            events.publish(type, entry.key, discardValue(entry));
+        }
+    }
+
+    private void addOrUpdateTime(LFUFrequencyList.Entry entry) {
+        if (entry.timeToLive > 0) {
+            Date date = new Date();
+            entry.expirationTime = date.getTime() + entry.timeToLive;
+            timerWheel.schedule(entry);
+        } else if (entry.expirationTime != 0) {
+            entry.expirationTime = 0;
+            timerWheel.deschedule(entry);
+        }
+    }
+
+    /**
+     * Moves the expiration of an entry that follows the time to live of the cache to the new one,
+     * counted from its last access. Entries that never expired so far count from now.
+     */
+    private void retime(LFUFrequencyList.Entry entry) {
+        long now = new Date().getTime();
+        long lastAccess = entry.timeToLive > 0 ? entry.expirationTime - entry.timeToLive : now;
+        entry.timeToLive = timeStampOfRemoval;
+        if (timeStampOfRemoval == 0) {
+            addOrUpdateTime(entry);
+        } else if (now > lastAccess + timeStampOfRemoval) {
+            expire(entry);
+        } else {
+            entry.expirationTime = lastAccess + timeStampOfRemoval;
+            timerWheel.schedule(entry);
+        }
+    }
+
+    private boolean isExpired(LFUFrequencyList.Entry entry, long currentTime) {
+        return entry.expirationTime > 0 && currentTime > entry.expirationTime;
+    }
+
+    private void expire(LFUFrequencyList.Entry entry) {
+        entryMap.remove(entry.key);
+        frequencyList.remove(entry);
+        timerWheel.deschedule(entry);
+        numberOfExpirations++;
+        publishDiscarded(CacheEventType.EXPIRATION, entry);
+        if (writeAheadLog != null) {
+            writeAheadLog.appendRemove(entry.key);
+        }
     }
 
     private void initializeCleaner() {
-        new LFUCacheService.CleanerThread().start();
+        if (timeStampOfRemoval > 0) {
+            startCleaner(timeStampOfRemoval);
+        }
+    }
+
+    /**
+     * Starts the cleaner on the first entry that can expire, a cache without a time to live of its
+     * own only needs one once entries are written with one. An entry that expires sooner than the
+     * cleaner keeps up with makes it run more often.
+     */
+    private void startCleaner(long timeToLive) {
+        long period = cleanupPeriod(timeToLive);
+        if (cleaner == null || period < cleanerPeriod) {
+            scheduleCleaner(period);
+        }
+    }
+
+    private void scheduleCleaner(long period) {
+        if (cleaner != null) {
+            cleaner.cancel(false);
+        }
+        cleanerPeriod = period;
+        cleaner = CacheMaintenanceScheduler.scheduleAtFixedRate(this::cleanCache, period);
+    }
+
+    private static long cleanupPeriod(long timeToLive) {
+        return CacheMaintenanceScheduler.cleanupPeriod((int) Math.min(timeToLive, Integer.MAX_VALUE));
+    }
+
+    private void cleanCache() {
+        writeLock.lock();
+        try {
+            timerWheel.advance(new Date().getTime(), this::expire);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    class CleanerThread extends Thread {
+    /**
+     * Background part of a resize: evicts down to the capacity, then re-times the entries that
+     * were cached when it started. Runs under the write lock, one batch at a time.
+     */
+    private final class Resizer implements Runnable {
+        private final CacheResize resize;
+        private final int[] keys;
+        private final ScheduledFuture<?> future;
+        private int next;
+
+        private Resizer(CacheResize resize, int[] keys) {
+            this.resize = resize;
+            this.keys = keys;
+            this.future = CacheMaintenanceScheduler.scheduleAtFixedRate(this, RESIZE_PERIOD_MILLIS);
+        }
+
         @Override
         public void run() {
-            System.out.println("Initiating Cleaner Thread..");
-            while (true) {
-                cleanCache();
-                try {
-                    Thread.sleep(timeStampOfRemoval / 2);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            writeLock.lock();
+            try {
+                if (resizer != this) {
+                    return;
                 }
-            }
-        }
-
-        private void cleanCache() {
-            long currentTime = new Date().getTime();
-            String valueOfDeletedEntity = null;
-            for (Integer key : timeMap.keySet()) {
-                if (currentTime > (timeMap.get(key) + timeStampOfRemoval)) {
-                    valueOfDeletedEntity = removeValueFromCache(key);
-                    numberOfEvictions++;
-                    System.out.println("Removing entity: key = " + key +
-                            " value = " + valueOfDeletedEntity);
+                int budget = RESIZE_BATCH;
+                for (; budget > 0 && entryMap.size() > cacheCapacity; budget--) {
+                    evict(frequencyList.victim(null));
+                    resize.advance(1);
+                }
+                for (; budget > 0 && next < keys.length; budget--) {
+                    LFUFrequencyList.Entry entry = entryMap.get(keys[next++]);
+                    if (entry != null && entry.defaultExpiry) {
+                        retime(entry);
+                    }
+                    resize.advance(1);
+                }
+                if (entryMap.size() <= cacheCapacity && next == keys.length) {
+                    resize.finish();
+                    future.cancel(false);
+                    resizer = null;
                 }
+            } finally {
+                writeLock.unlock();
             }
         }
     }
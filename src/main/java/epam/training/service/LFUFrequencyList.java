@@ -0,0 +1,216 @@
+package epam.training.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Constant time LFU bookkeeping: a doubly linked list of frequency nodes in ascending order,
+ * each holding a doubly linked list of the entries that have been used exactly that many times.
+ * Entries carry their own links, so promotion and eviction never search a collection.
+ * Not thread safe, callers are expected to guard it with their own lock.
+ */
+class LFUFrequencyList {
+
+    private FrequencyNode head;
+    private FrequencyNode tail;
+    private int size;
+
+    Entry add(int key, String value) {
+        Entry entry = new Entry(key, value);
+        FrequencyNode node = head;
+        if (node == null || node.frequency != 1) {
+            node = insertAfter(null, 1);
+        }
+        node.append(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Adds an entry that has already been used {@code frequency} times, as the most recent of them.
+     * Meant for rebuilding a list in eviction order, a frequency below the highest one present is
+     * raised to it.
+     */
+    Entry restore(int key, String value, int frequency) {
+        Entry entry = new Entry(key, value);
+        FrequencyNode node = tail;
+        if (node == null || node.frequency < frequency) {
+            node = insertAfter(node, Math.max(frequency, 1));
+        }
+        node.append(entry);
+        size++;
+        return entry;
+    }
+
+    void touch(Entry entry) {
+        FrequencyNode current = entry.parent;
+        FrequencyNode next = current.next;
+        if (next == null || next.frequency != current.frequency + 1) {
+            next = insertAfter(current, current.frequency + 1);
+        }
+        current.unlink(entry);
+        next.append(entry);
+        if (current.isEmpty()) {
+            removeNode(current);
+        }
+    }
+
+    /**
+     * Removes the least frequently used entry, the oldest one among equals.
+     */
+    Entry evict() {
+        if (head == null) {
+            return null;
+        }
+        Entry victim = head.first;
+        remove(victim);
+        return victim;
+    }
+
+    /**
+     * The entry {@link #evict()} would remove, passing over {@code spare}. Null when there is no other.
+     */
+    Entry victim(Entry spare) {
+        if (head == null) {
+            return null;
+        }
+        Entry candidate = head.first;
+        if (candidate != spare) {
+            return candidate;
+        }
+        if (candidate.next != null) {
+            return candidate.next;
+        }
+        return head.next == null ? null : head.next.first;
+    }
+
+    void remove(Entry entry) {
+        FrequencyNode node = entry.parent;
+        node.unlink(entry);
+        entry.parent = null;
+        if (node.isEmpty()) {
+            removeNode(node);
+        }
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Visits all entries in eviction order: ascending frequency, oldest first among equals.
+     */
+    void forEach(Consumer<Entry> action) {
+        for (FrequencyNode node = head; node != null; node = node.next) {
+            for (Entry entry = node.first; entry != null; entry = entry.next) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    void clear() {
+        head = null;
+        tail = null;
+        size = 0;
+    }
+
+    private FrequencyNode insertAfter(FrequencyNode previous, int frequency) {
+        FrequencyNode node = new FrequencyNode(frequency);
+        node.prev = previous;
+        node.next = previous == null ? head : previous.next;
+        if (node.next == null) {
+            tail = node;
+        } else {
+            node.next.prev = node;
+        }
+        if (previous == null) {
+            head = node;
+        } else {
+            previous.next = node;
+        }
+        return node;
+    }
+
+    private void removeNode(FrequencyNode node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+    }
+
+    static final class Entry extends TimerWheel.Node {
+        final int key;
+        String value;
+        // set instead of value for entries stored as bytes
+        byte[] bytes;
+        // compressor of the stored bytes, null when they are raw
+        ValueCompressor compressor;
+        int weight;
+        // time to live of the entry, 0 when it never expires
+        long timeToLive;
+        boolean expireAfterAccess;
+        // written without an expiry, follows the time to live of the cache when that changes
+        boolean defaultExpiry;
+        private FrequencyNode parent;
+        private Entry prev;
+        private Entry next;
+
+        Entry(int key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        int getFrequency() {
+            return parent == null ? 0 : parent.frequency;
+        }
+    }
+
+    private static final class FrequencyNode {
+        private final int frequency;
+        private Entry first;
+        private Entry last;
+        private FrequencyNode prev;
+        private FrequencyNode next;
+
+        private FrequencyNode(int frequency) {
+            this.frequency = frequency;
+        }
+
+        private void append(Entry entry) {
+            entry.parent = this;
+            entry.prev = last;
+            entry.next = null;
+            if (last == null) {
+                first = entry;
+            } else {
+                last.next = entry;
+            }
+            last = entry;
+        }
+
+        private void unlink(Entry entry) {
+            if (entry.prev == null) {
+                first = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next == null) {
+                last = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+        }
+
+        private boolean isEmpty() {
+            return first == null;
+        }
+    }
+}
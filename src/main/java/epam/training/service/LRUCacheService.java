@@ -2,55 +2,1238 @@ package epam.training.service;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
-import org.springframework.stereotype.Service;
+import com.google.common.cache.RemovalNotification;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 //Guava
-@Service
-public class LRUCacheService implements CacheService {
+public class LRUCacheService implements CacheService, WeightedCache, CompressingCache, ResizableCache,
+        WriteAheadLog.Target {
 
-    private Cache<Integer, String> cache;
+    /**
+     * Entries a resize moves or evicts per run, short enough not to hold up requests for long.
+     */
+    static final int RESIZE_BATCH = 256;
+    private static final long RESIZE_PERIOD_MILLIS = 5;
+    private static final int LOG_STRIPES = 64;
+
+    private volatile Cache<Integer, Entry> cache;
+    // the cache a resize is moving entries out of, null otherwise
+    private volatile Cache<Integer, Entry> draining;
+    private OffHeapValueStore valueStore;
+    private volatile int cacheCapacity;
+    private volatile int timeStampOfRemoval;
+    private int concurrencyLevel = 1;
+    private long maxBytes;
+    private final LongAdder weightedSize = new LongAdder();
+    // orders the writes of heap entries, off-heap the store stamps them
+    private final AtomicLong writes = new AtomicLong();
+    private final LongAdder numberOfEvictions = new LongAdder();
+    private final LongAdder numberOfExpirations = new LongAdder();
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final LoadCoalescer loadCoalescer = new LoadCoalescer(metrics);
+    private final CacheEventPublisher events = new CacheEventPublisher();
+    private PeriodicSnapshot snapshots;
+    private volatile WriteAheadLog writeAheadLog;
+    // with a log, a key changes and is logged under its stripe, so both see its writes in one order
+    private final ReentrantLock[] logStripes = newStripes();
+    // expirations Guava reported while their stripe was taken, logged by the next mutation
+    private final ConcurrentLinkedQueue<Integer> expiredKeys = new ConcurrentLinkedQueue<>();
+    private boolean syncWrites;
+    private volatile double refreshAheadRatio;
+    private volatile ValueCompressor compressor;
+    private volatile HotKeyTracker hotKeys;
+    private volatile ScheduledFuture<?> cleaner;
+    private Migration migration;
+    private volatile CacheResize lastResize;
 
     public LRUCacheService() {
     }
 
     public LRUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval) {
+        this(cacheCapacity, timeStampOfRemoval, 1, null);
+    }
+
+    public LRUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval, OffHeapValueStore valueStore) {
+        this(cacheCapacity, timeStampOfRemoval, 1, valueStore);
+    }
+
+    public LRUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval, Integer concurrencyLevel) {
+        this(cacheCapacity, timeStampOfRemoval, concurrencyLevel, null);
+    }
 
-        cache = CacheBuilder.newBuilder().maximumSize(cacheCapacity)
-                .expireAfterAccess(timeStampOfRemoval, TimeUnit.MILLISECONDS)
-                .removalListener((RemovalListener<Integer, String>) notification -> System.out.println("Key - " + notification.getKey()
-                        + " with value - " + notification.getValue()
-                        + " removed due to " + notification.getCause()))
-                .recordStats()
-                .concurrencyLevel(1).
-                build();
+    /**
+     * With a concurrency level of 1 the cache is one Guava segment: eviction follows the exact
+     * recency order, but every write and every drain of buffered reads takes the same lock. A higher
+     * level splits it into that many segments, rounded up to a power of two, each with its own lock,
+     * recency order and share of the capacity. Writes to different segments no longer contend and
+     * eviction picks the least recently used entry of the segment written to, which is close to LRU
+     * once segments hold many entries each.
+     */
+    public LRUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval, Integer concurrencyLevel,
+                           OffHeapValueStore valueStore) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level must be at least 1: " + concurrencyLevel);
+        }
+        this.cacheCapacity = cacheCapacity;
+        this.timeStampOfRemoval = timeStampOfRemoval;
+        this.concurrencyLevel = concurrencyLevel;
+        this.valueStore = valueStore;
+        cache = buildCache();
     }
 
     @Override
     public String get(int key) {
-        return cache.getIfPresent(key);
+        return lookup(key, null);
+    }
+
+    /**
+     * With refresh-ahead on, a hit on an entry close to its expiration also reloads it in the
+     * background, the current value is returned meanwhile.
+     */
+    @Override
+    public String get(int key, ValueLoader loader) {
+        String value = lookup(key, loader);
+        if (value != null) {
+            return value;
+        }
+        return loadCoalescer.load(key, loader, this::peek, this::put);
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        String value = lookup(key, loader);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        return loadCoalescer.loadAsync(key, loader, this::peek, this::put, CacheAsyncExecutor.get());
+    }
+
+    /**
+     * Guava reads take no lock, so lookups are always answered on the calling thread.
+     */
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        return CompletableFuture.completedFuture(get(key));
+    }
+
+    /**
+     * Guava holds its lock only for the update itself, the put runs on the calling thread. With a
+     * log that syncs writes the future completes on the log's writer thread once the put is on disk.
+     */
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        WriteAheadLog log = writeAheadLog;
+        long sequence = 0;
+        lockStripe(log, key);
+        try {
+            supersede(key);
+            store(key, newEntry(value, System.currentTimeMillis(), null));
+            sequence = log == null ? 0 : log.appendPut(key, value);
+        } finally {
+            unlockStripe(log, key);
+        }
+        trackWrite(key);
+        events.publish(CacheEventType.WRITE, key, value);
+        metrics.recordPut(System.nanoTime() - start);
+        if (syncWrites && sequence > 0) {
+            return log.whenDurable(sequence);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        List<Integer> boxedKeys = new ArrayList<>(keys.length);
+        for (int key : keys) {
+            boxedKeys.add(key);
+        }
+        Map<Integer, String> values = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        Cache<Integer, Entry> before = draining;
+        Map<Integer, Entry> found = cache.getAllPresent(boxedKeys);
+        if ((before != null || draining != null) && found.size() < keys.length) {
+            found = new LinkedHashMap<>(found);
+            for (int key : keys) {
+                Entry entry = found.containsKey(key) ? null : find(key);
+                if (entry != null) {
+                    found.put(key, entry);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Entry> present : found.entrySet()) {
+            String value = readValue(present.getKey(), present.getValue(), now);
+            if (value != null) {
+                values.put(present.getKey(), value);
+            }
+        }
+        if (hotKeys != null) {
+            for (int key : keys) {
+                trackLookup(key, values.containsKey(key));
+            }
+        }
+        if (events.hasListeners()) {
+            for (int key : keys) {
+                if (!values.containsKey(key)) {
+                    events.publish(CacheEventType.MISS, key, null);
+                }
+            }
+        }
+        metrics.recordGets(keys.length, values.size(), System.nanoTime() - start);
+        return values;
     }
 
     @Override
     public double getAverageTimeSpentAddingNewValues() {
-        return cache.stats().averageLoadPenalty();
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public long getNumberOfEvictions() {
-        return cache.stats().evictionCount();
+        // Guava's evictionCount lumps expirations in with size evictions
+        return numberOfEvictions.sum();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return numberOfExpirations.sum();
     }
 
     @Override
     public void put(int key, String value) {
-        cache.put(key, value);
+        put(key, value, null);
+    }
+
+    /**
+     * The expiry of the entry is checked on every read and by a periodic sweep, on top of the
+     * expire-after-access Guava applies to the whole cache. An entry therefore lives no longer than
+     * either allows. A log
+     * replay or a restored snapshot brings the entry back with the time to live of the cache.
+     */
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        long start = System.nanoTime();
+        if (expiry != null && cleaner == null) {
+            startCleaner(expiry.getTimeToLiveMillis());
+        }
+        WriteAheadLog log = writeAheadLog;
+        long sequence = 0;
+        lockStripe(log, key);
+        try {
+            supersede(key);
+            store(key, newEntry(value, System.currentTimeMillis(), expiry));
+            sequence = log == null ? 0 : log.appendPut(key, value);
+        } finally {
+            unlockStripe(log, key);
+        }
+        trackWrite(key);
+        events.publish(CacheEventType.WRITE, key, value);
+        if (log != null) {
+            awaitDurable(log, sequence);
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public void putBytes(int key, byte[] value) {
+        long start = System.nanoTime();
+        WriteAheadLog log = writeAheadLog;
+        long sequence = 0;
+        lockStripe(log, key);
+        try {
+            supersede(key);
+            store(key, newEntry(value, System.currentTimeMillis(), null));
+            sequence = log == null ? 0 : log.appendPut(key, value);
+        } finally {
+            unlockStripe(log, key);
+        }
+        trackWrite(key);
+        events.publishBytes(CacheEventType.WRITE, key, value);
+        if (log != null) {
+            awaitDurable(log, sequence);
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public byte[] getBytes(int key) {
+        long start = System.nanoTime();
+        Entry entry = find(key);
+        byte[] value = entry == null ? null : readBytes(key, entry, System.currentTimeMillis());
+        trackLookup(key, value != null);
+        if (value == null) {
+            events.publish(CacheEventType.MISS, key, null);
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        WriteAheadLog log = writeAheadLog;
+        long sequence = 0;
+        for (Map.Entry<Integer, String> entry : entries.entrySet()) {
+            int key = entry.getKey();
+            lockStripe(log, key);
+            try {
+                supersede(key);
+                store(key, newEntry(entry.getValue(), now, null));
+                sequence = log == null ? 0 : log.appendPut(key, entry.getValue());
+            } finally {
+                unlockStripe(log, key);
+            }
+            trackWrite(key);
+        }
+        if (events.hasListeners()) {
+            entries.forEach((key, value) -> events.publish(CacheEventType.WRITE, key, value));
+        }
+        if (log != null && !entries.isEmpty()) {
+            awaitDurable(log, sequence);
+        }
+        metrics.recordPuts(entries.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        events.addListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        events.removeListener(listener);
     }
 
     @Override
     public void clearCache() {
-        cache.cleanUp();
+        WriteAheadLog log = writeAheadLog;
+        long sequence = 0;
+        // all stripes, in order, so no write of any key falls between the clear and its record
+        for (int i = 0; log != null && i < LOG_STRIPES; i++) {
+            logStripes[i].lock();
+        }
+        try {
+            cache.cleanUp();
+            cache.invalidateAll();
+            Cache<Integer, Entry> old = draining;
+            if (old != null) {
+                old.invalidateAll();
+            }
+            sequence = log == null ? 0 : log.appendClear();
+        } finally {
+            for (int i = LOG_STRIPES - 1; log != null && i >= 0; i--) {
+                logStripes[i].unlock();
+            }
+        }
+        numberOfEvictions.reset();
+        numberOfExpirations.reset();
+        metrics.reset();
+        if (log != null) {
+            expiredKeys.clear();
+            awaitDurable(log, sequence);
+        }
+    }
+
+    /**
+     * A resize that starts or finishes during the remove, or a move of the entry in progress, may
+     * have left the key in the other cache. The remove is then repeated with the caches as they are
+     * now.
+     */
+    @Override
+    public String removeValueFromCache(int key) {
+        WriteAheadLog log = writeAheadLog;
+        long sequence = 0;
+        String value = null;
+        boolean removed = false;
+        lockStripe(log, key);
+        try {
+            while (true) {
+                Cache<Integer, Entry> target = cache;
+                Cache<Integer, Entry> old = draining;
+                if (old != null) {
+                    // brings the entry over from the cache a resize is draining
+                    find(key);
+                }
+                Entry entry = target.asMap().get(key);
+                if (entry != null) {
+                    // the removal listener frees an off-heap value, read it first
+                    byte[] stored = valueStore == null ? null : valueStore.getBytes(key, entry.stamp);
+                    if (!target.asMap().remove(key, entry)) {
+                        // a concurrent write replaced the entry in between, remove that one instead
+                        continue;
+                    }
+                    value = valueStore == null ? storedValue(key, entry) : decode(entry, stored);
+                    removed = true;
+                }
+                // a move in progress puts the entry in before it takes it out of the old cache, so one
+                // that is gone from the old cache is in the new one unless it was removed
+                boolean gone = old == null || !old.asMap().containsKey(key) && !target.asMap().containsKey(key);
+                // checked last, so a resize that starts or finishes meanwhile is always noticed
+                if (gone && cache == target && draining == old) {
+                    break;
+                }
+            }
+            if (removed && log != null) {
+                sequence = log.appendRemove(key);
+            }
+        } finally {
+            unlockStripe(log, key);
+        }
+        if (sequence > 0) {
+            awaitDurable(log, sequence);
+        }
+        return value;
+    }
+
+    /**
+     * Copies the entries, least recently used first. Expiration times are derived from the last
+     * access, as Guava expires entries a fixed time after it, or are the expiration of the entry
+     * itself when that comes first. During a resize it covers the entries not moved yet as well.
+     */
+    @Override
+    public CacheSnapshot snapshot() {
+        Map<Integer, Entry> cached = cache.asMap();
+        Cache<Integer, Entry> old = draining;
+        if (old != null) {
+            cached = new HashMap<>(old.asMap());
+            cached.putAll(cache.asMap());
+        }
+        List<Map.Entry<Integer, Entry>> entries = new ArrayList<>(cached.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        CacheSnapshot snapshot = new CacheSnapshot(System.currentTimeMillis(), entries.size());
+        for (Map.Entry<Integer, Entry> entry : entries) {
+            long lastAccess = entry.getValue().lastAccess;
+            long expirationTime = timeStampOfRemoval > 0 ? lastAccess + timeStampOfRemoval : 0L;
+            long ownExpirationTime = entry.getValue().expirationTime;
+            if (ownExpirationTime > 0 && (expirationTime == 0 || ownExpirationTime < expirationTime)) {
+                expirationTime = ownExpirationTime;
+            }
+            Expiry expiry = expiryOf(entry.getValue());
+            if (valueStore == null && entry.getValue().bytes == null) {
+                if (entry.getValue().value != null) {
+                    snapshot.add(entry.getKey(), entry.getValue().value, 0, expirationTime, expiry);
+                }
+            } else {
+                byte[] value = storedBytes(entry.getKey(), entry.getValue());
+                if (value != null) {
+                    snapshot.addBytes(entry.getKey(), value, 0, expirationTime, expiry);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replaces the contents of the cache with a snapshot and returns the number of entries restored.
+     * Entries are inserted from least to most recently used, which rebuilds the recency order, and
+     * entries that expired during the downtime are skipped. Guava cannot shorten the time to live of
+     * a single entry, so the others start a full one again. An entry that carries its own expiry
+     * keeps it and expires when the snapshot says.
+     */
+    @Override
+    public int restore(CacheSnapshot snapshot) {
         cache.invalidateAll();
+        Cache<Integer, Entry> old = draining;
+        if (old != null) {
+            old.invalidateAll();
+        }
+        long now = System.currentTimeMillis();
+        List<Integer> live = new ArrayList<>(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (!snapshot.isExpired(i, now)) {
+                live.add(i);
+            }
+        }
+        // the most recently used entries are at the end, keep those that fit
+        for (int i = Math.max(0, live.size() - cacheCapacity); i < live.size(); i++) {
+            int index = live.get(i);
+            long expirationTime = snapshot.getExpirationTime(index);
+            long lastAccess = expirationTime == 0 ? snapshot.getCreatedAt() : expirationTime - timeStampOfRemoval;
+            int key = snapshot.getKey(index);
+            Expiry expiry = snapshot.getExpiry(index);
+            Entry entry = snapshot.isBinary(index)
+                    ? newEntry(snapshot.getValueBytes(index), lastAccess, expiry)
+                    : newEntry(snapshot.getValue(index), lastAccess, expiry);
+            if (expiry != null) {
+                entry.expirationTime = expirationTime;
+                if (cleaner == null) {
+                    startCleaner(expiry.getTimeToLiveMillis());
+                }
+            }
+            store(key, entry);
+        }
+        return (int) cache.size();
+    }
+
+    /**
+     * Warm restart: restores the snapshot kept by the store, if there is a readable one, then saves
+     * a fresh snapshot every {@code periodMillis} and a last one on {@link #shutdown()}.
+     */
+    public int enableSnapshots(CacheSnapshotStore store, long periodMillis) {
+        int restored = PeriodicSnapshot.restore(store, this::restore);
+        snapshots = new PeriodicSnapshot(store, this::snapshot, periodMillis);
+        return restored;
+    }
+
+    /**
+     * Durable mode: replays the log into the cache, then appends every put, removal, clear and
+     * expiration to it. With {@code syncWrites} a mutation returns only once its record is on disk.
+     * A key is changed and logged under one of a set of striped locks, so concurrent writes of a
+     * key reach the log in the order they reached the cache, and a clear takes all of them.
+     * Expirations are logged once their stripe is free, unless the key was written again.
+     * Returns the number of entries after the replay.
+     */
+    public int enableWriteAheadLog(WriteAheadLog writeAheadLog, boolean syncWrites) throws IOException {
+        writeAheadLog.start(this);
+        metrics.reset();
+        this.syncWrites = syncWrites;
+        this.writeAheadLog = writeAheadLog;
+        return (int) cache.size();
+    }
+
+    /**
+     * Whether writes wait until the write-ahead log has them on disk.
+     */
+    public boolean isSyncingWrites() {
+        return writeAheadLog != null && syncWrites;
+    }
+
+    /**
+     * Delivers pending events, saves a last snapshot and closes the log before the background tasks stop.
+     */
+    @Override
+    public void shutdown() {
+        if (cleaner != null) {
+            cleaner.cancel(false);
+        }
+        synchronized (this) {
+            if (migration != null) {
+                migration.future.cancel(false);
+            }
+        }
+        if (snapshots != null) {
+            snapshots.stop();
+        }
+        if (hotKeys != null) {
+            hotKeys.shutdown();
+        }
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close write-ahead log", e);
+            }
+        }
+        events.shutdown();
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return weightedSize.sum();
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    /**
+     * Bounds the cache by estimated bytes instead of the entry count, Guava supports only one of the
+     * two. Guava fixes the bound when the cache is built, so the entries are drained into a new cache
+     * the way {@link #resize} does it: the cache keeps serving, moved entries keep their own
+     * {@link Expiry} and publish no events. A resize still running is completed first.
+     */
+    @Override
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (migration != null) {
+            migration.step(Integer.MAX_VALUE);
+        }
+        this.maxBytes = maxBytes;
+        migrate(cacheCapacity, timeStampOfRemoval);
+    }
+
+    @Override
+    public int getCapacity() {
+        return cacheCapacity;
+    }
+
+    @Override
+    public int getTimeToLive() {
+        return timeStampOfRemoval;
+    }
+
+    /**
+     * Guava fixes the size bound and the time to live when the cache is built, so a resize builds a
+     * new cache and drains the current one into it. Requests go to the new cache first and take an
+     * entry they find only in the old one along. In the background the entries are moved
+     * {@link #RESIZE_BATCH} per run, least recently used first; when shrinking, those that no longer
+     * fit are evicted instead. Guava counts the time to live of a moved entry from the move. With a
+     * byte budget the capacity does not bound the cache and nothing is evicted up front. A resize
+     * still running is completed first.
+     */
+    @Override
+    public synchronized CacheResize resize(int capacity, int timeToLive) {
+        if (capacity < 0 || timeToLive < 0) {
+            throw new IllegalArgumentException("Capacity and time to live must not be negative: " + capacity + ", " + timeToLive);
+        }
+        if (migration != null) {
+            migration.step(Integer.MAX_VALUE);
+        }
+        lastResize = migrate(capacity, timeToLive);
+        return lastResize;
+    }
+
+    /**
+     * Applies the new limits and starts draining the current cache into one built with them.
+     */
+    private CacheResize migrate(int capacity, int timeToLive) {
+        Cache<Integer, Entry> old = cache;
+        // reads keep changing the access times, sort a copy of them
+        List<Map.Entry<Integer, Long>> accesses = new ArrayList<>((int) old.size());
+        old.asMap().forEach((key, entry) -> accesses.add(new AbstractMap.SimpleImmutableEntry<>(key, entry.lastAccess)));
+        accesses.sort(Map.Entry.comparingByValue());
+        int[] keys = accesses.stream().mapToInt(Map.Entry::getKey).toArray();
+        int evictions = maxBytes > 0 ? 0 : Math.max(keys.length - capacity, 0);
+        CacheResize resize = new CacheResize(cacheCapacity, timeStampOfRemoval, capacity, timeToLive, keys.length, metrics);
+        cacheCapacity = capacity;
+        timeStampOfRemoval = timeToLive;
+        // readers that see the new cache must also see the old one, which is never both at once
+        Cache<Integer, Entry> next = buildCache();
+        draining = old;
+        cache = next;
+        migration = new Migration(old, keys, evictions, resize);
+        return resize;
+    }
+
+    @Override
+    public CacheResize getLastResize() {
+        return lastResize;
+    }
+
+    public double getRefreshAheadRatio() {
+        return refreshAheadRatio;
+    }
+
+    /**
+     * Refresh-ahead: an entry written with {@link Expiry#afterWrite} that is read through a loader in
+     * the last {@code ratio} of its time to live is reloaded in the background. 0 turns it off.
+     */
+    public void setRefreshAheadRatio(double ratio) {
+        if (ratio < 0 || ratio >= 1) {
+            throw new IllegalArgumentException("Refresh-ahead ratio must be in [0, 1): " + ratio);
+        }
+        this.refreshAheadRatio = ratio;
+    }
+
+    @Override
+    public void enableCompression(ValueCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    public ValueCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Reports the most looked up, written and missed keys to the tracker, which the cache stops on shutdown.
+     */
+    public void enableHotKeyTracking(HotKeyTracker tracker) {
+        this.hotKeys = tracker;
+    }
+
+    public HotKeyTracker getHotKeyTracker() {
+        return hotKeys;
+    }
+
+    public long getOffHeapBytesAllocated() {
+        return valueStore == null ? 0L : valueStore.getOffHeapBytesAllocated();
+    }
+
+    private void trackLookup(int key, boolean hit) {
+        HotKeyTracker tracker = hotKeys;
+        if (tracker != null) {
+            tracker.recordAccess(key);
+            if (!hit) {
+                tracker.recordMiss(key);
+            }
+        }
+    }
+
+    private void trackWrite(int key) {
+        HotKeyTracker tracker = hotKeys;
+        if (tracker != null) {
+            tracker.recordAccess(key);
+        }
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] stripes = new ReentrantLock[LOG_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        return stripes;
+    }
+
+    /**
+     * Without a log there is nothing to keep in order with the cache, and no lock is taken.
+     */
+    private void lockStripe(WriteAheadLog log, int key) {
+        if (log != null) {
+            logStripes[key & (LOG_STRIPES - 1)].lock();
+        }
+    }
+
+    private void unlockStripe(WriteAheadLog log, int key) {
+        if (log != null) {
+            logStripes[key & (LOG_STRIPES - 1)].unlock();
+            logExpirations();
+        }
+    }
+
+    /**
+     * Logs the removal of expired keys that are still gone. Guava reports an expiration from
+     * whichever thread cleans up, possibly holding the stripe of another key, so stripes are only
+     * tried here and a key whose stripe is taken waits for the next mutation. A key written again
+     * meanwhile had that write logged after its expiration, and is skipped.
+     */
+    private void logExpirations() {
+        WriteAheadLog log = writeAheadLog;
+        for (int i = expiredKeys.size(); log != null && i > 0; i--) {
+            Integer key = expiredKeys.poll();
+            if (key == null) {
+                return;
+            }
+            ReentrantLock stripe = logStripes[key & (LOG_STRIPES - 1)];
+            if (!stripe.tryLock()) {
+                expiredKeys.add(key);
+                return;
+            }
+            try {
+                if (!isCached(key)) {
+                    log.appendRemove(key);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Whether either cache holds the key, looked at again when a resize started or finished
+     * meanwhile, as a move of the entry may have taken it past the lookups.
+     */
+    private boolean isCached(int key) {
+        while (true) {
+            Cache<Integer, Entry> old = draining;
+            Cache<Integer, Entry> target = cache;
+            boolean cached = old != null && old.asMap().containsKey(key) || target.asMap().containsKey(key);
+            if (cached || cache == target && draining == old) {
+                return cached;
+            }
+        }
+    }
+
+    private void awaitDurable(WriteAheadLog log, long sequence) {
+        if (syncWrites) {
+            log.awaitDurable(sequence);
+        }
+    }
+
+    private String lookup(int key, ValueLoader refreshLoader) {
+        long start = System.nanoTime();
+        Entry entry = find(key);
+        long now = System.currentTimeMillis();
+        String value = entry == null ? null : readValue(key, entry, now);
+        trackLookup(key, value != null);
+        if (value == null) {
+            events.publish(CacheEventType.MISS, key, null);
+        } else if (refreshLoader != null && isRefreshDue(entry, now)) {
+            Expiry expiry = Expiry.afterWrite(entry.timeToLive);
+            loadCoalescer.refresh(key, refreshLoader, (k, v) -> put(k, v, expiry), CacheAsyncExecutor.get());
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    /**
+     * Entries that expire after access never get close to their expiration while they are read,
+     * only those that expire after write are refreshed.
+     */
+    private boolean isRefreshDue(Entry entry, long now) {
+        double ratio = refreshAheadRatio;
+        return ratio > 0 && entry.timeToLive > 0 && !entry.expireAfterAccess
+                && entry.expirationTime - now < entry.timeToLive * ratio;
+    }
+
+    private String peek(int key) {
+        Entry entry = find(key);
+        return entry == null ? null : readValue(key, entry, System.currentTimeMillis());
+    }
+
+    /**
+     * Looks the key up, during a resize also in the cache being drained, moving a hit found there.
+     * A miss while a resize started or finished in the middle of the lookup is looked up again, so
+     * an entry moved meanwhile is not missed.
+     */
+    private Entry find(int key) {
+        while (true) {
+            Cache<Integer, Entry> old = draining;
+            Cache<Integer, Entry> target = cache;
+            Entry entry = target.getIfPresent(key);
+            if (entry == null && old != null) {
+                Entry drained = old.getIfPresent(key);
+                entry = drained != null ? move(old, key, drained) : target.getIfPresent(key);
+            }
+            if (entry != null || cache == target && draining == old) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Moves an entry from the cache being drained to the current one and returns what the current
+     * one holds for the key afterwards. The copy goes in before the entry comes out, so a
+     * concurrent read always finds one of the two. The thread that retires the entry owns it, the
+     * removal listener skips it. A copy that went into a cache another resize replaced meanwhile
+     * is handed over as a write would be.
+     */
+    private Entry move(Cache<Integer, Entry> old, int key, Entry entry) {
+        Cache<Integer, Entry> target = cache;
+        if (!entry.retire()) {
+            // another thread moves or removes it, until it is out of the old cache it still answers
+            Entry current = target.getIfPresent(key);
+            return current != null || old.asMap().get(key) != entry ? current : entry;
+        }
+        Entry moved = new Entry(entry);
+        Entry current = target.asMap().putIfAbsent(key, moved);
+        boolean removed = old.asMap().remove(key, entry);
+        // otherwise Guava expired it in the meantime, or a late write replaced it in the old cache
+        RemovalCause cause = old.asMap().containsKey(key) ? RemovalCause.REPLACED : RemovalCause.EXPIRED;
+        if (current == null) {
+            if (removed) {
+                handOver(target, key, moved);
+                return moved;
+            }
+            // the copy goes as well, unless a write replaced it
+            if (moved.retire()) {
+                if (target.asMap().remove(key, moved)) {
+                    onRemoval(key, moved, cause);
+                } else {
+                    weightedSize.add(-moved.weight);
+                }
+            }
+            return target.getIfPresent(key);
+        }
+        if (!removed) {
+            onRemoval(key, entry, cause);
+            return current;
+        }
+        // the key is in both caches, the later of the two writes stays
+        while (current != null && isLater(key, moved, current)) {
+            current = target.asMap().replace(key, current, moved) ? null : target.asMap().putIfAbsent(key, moved);
+        }
+        if (current != null) {
+            // a later write got there first, the old value is simply dropped
+            weightedSize.add(-entry.weight);
+            return current;
+        }
+        handOver(target, key, moved);
+        return moved;
+    }
+
+    /**
+     * Whether an entry holds a later write of the key than another one. A write handed over from
+     * the cache being drained can be later than the copy a resize moved before it. Off-heap the
+     * store keeps only the last value of a key, so an entry whose value is gone is never later.
+     */
+    private boolean isLater(int key, Entry entry, Entry other) {
+        return entry.stamp > other.stamp && (valueStore == null || valueStore.containsKey(key, entry.stamp));
+    }
+
+    /**
+     * A write that read the cache just before a resize replaced it lands in the cache being
+     * drained, possibly after the migration went through it. The writer then moves its entry over
+     * itself, unless the migration or a read did already. It replaces the copy of an older value
+     * the migration may have moved meanwhile.
+     */
+    private void handOver(Cache<Integer, Entry> target, int key, Entry entry) {
+        if (target == cache) {
+            return;
+        }
+        // the write is only done once the entry is out of the old cache, another thread may be
+        // moving it, with the resize already finished and the old cache no longer looked in
+        while (target.asMap().get(key) == entry) {
+            move(target, key, entry);
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Evicts an entry of the cache being drained that does not fit the new capacity.
+     */
+    private void evict(Cache<Integer, Entry> old, int key, Entry entry) {
+        if (entry.retire()) {
+            onRemoval(key, entry, old.asMap().remove(key, entry) ? RemovalCause.SIZE : RemovalCause.EXPIRED);
+        }
+    }
+
+    /**
+     * During a resize, drops the entry a write is about to replace from the cache being drained,
+     * so its older value is never moved over the new one.
+     */
+    private void supersede(int key) {
+        Cache<Integer, Entry> old = draining;
+        if (old != null) {
+            Entry stale = old.asMap().get(key);
+            if (stale != null && stale.retire()) {
+                old.asMap().remove(key, stale);
+                weightedSize.add(-stale.weight);
+            }
+        }
+    }
+
+    private static Expiry expiryOf(Entry entry) {
+        if (entry.timeToLive == 0) {
+            return null;
+        }
+        return entry.expireAfterAccess ? Expiry.afterAccess(entry.timeToLive) : Expiry.afterWrite(entry.timeToLive);
+    }
+
+    private String readValue(int key, Entry entry, long now) {
+        return touch(key, entry, now) ? storedValue(key, entry) : null;
+    }
+
+    private byte[] readBytes(int key, Entry entry, long now) {
+        return touch(key, entry, now) ? storedBytes(key, entry) : null;
+    }
+
+    /**
+     * Records the access, false when the entry turned out to be past its own expiration.
+     */
+    private boolean touch(int key, Entry entry, long now) {
+        if (entry.expirationTime > 0 && now > entry.expirationTime) {
+            expire(key, entry);
+            return false;
+        }
+        entry.lastAccess = now;
+        if (entry.expireAfterAccess) {
+            entry.expirationTime = now + entry.timeToLive;
+        }
+        ValueCompressor current = compressor;
+        if (current != null) {
+            current.recordHit(entry.compressor != null);
+        }
+        return true;
+    }
+
+    private String storedValue(int key, Entry entry) {
+        if (valueStore != null) {
+            return decode(entry, valueStore.getBytes(key, entry.stamp));
+        }
+        return entry.bytes == null ? entry.value : decode(entry, entry.bytes);
+    }
+
+    private byte[] storedBytes(int key, Entry entry) {
+        byte[] stored = valueStore == null ? entry.bytes : valueStore.getBytes(key, entry.stamp);
+        if (stored != null && entry.compressor != null) {
+            return entry.compressor.decompress(stored);
+        }
+        if (valueStore != null) {
+            return stored;
+        }
+        return entry.value == null ? entry.bytes : entry.value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String decode(Entry entry, byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        return entry.compressor == null
+                ? new String(stored, StandardCharsets.UTF_8)
+                : entry.compressor.decompressToString(stored);
+    }
+
+    /**
+     * Guava cannot expire a single entry, so an entry past its own expiration is removed when it is
+     * read or swept and the removal listener counts it as expired.
+     */
+    private void expire(int key, Entry entry) {
+        entry.expired = true;
+        cache.asMap().remove(key, entry);
+    }
+
+    /**
+     * Starts sweeping for entries past their own expiration on the first put with an {@link Expiry}.
+     * The sweep visits every entry, caches that never use one never pay for it.
+     */
+    private synchronized void startCleaner(long timeToLive) {
+        if (cleaner == null) {
+            cleaner = CacheMaintenanceScheduler.scheduleAtFixedRate(this::cleanCache,
+                    CacheMaintenanceScheduler.cleanupPeriod((int) Math.min(timeToLive, Integer.MAX_VALUE)));
+        }
+    }
+
+    private void cleanCache() {
+        long now = System.currentTimeMillis();
+        cache.asMap().forEach((key, entry) -> {
+            if (entry.expirationTime > 0 && now > entry.expirationTime) {
+                expire(key, entry);
+            }
+        });
+        cache.cleanUp();
+        logExpirations();
+    }
+
+    private Cache<Integer, Entry> buildCache() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (maxBytes > 0) {
+            builder.maximumWeight(maxBytes).weigher((Integer key, Entry entry) -> entry.weight);
+        } else {
+            builder.maximumSize(cacheCapacity);
+        }
+        if (timeStampOfRemoval > 0) {
+            builder.expireAfterAccess(timeStampOfRemoval, TimeUnit.MILLISECONDS);
+        }
+        return builder.removalListener((RemovalListener<Integer, Entry>) this::onRemoval)
+                .concurrencyLevel(concurrencyLevel)
+                .build();
+    }
+
+    /**
+     * Caches a new entry. Off-heap its bytes are stored under Guava's lock of the key, so the value
+     * in the store is always the one of the last entry cached for the key. The stamp of the entry
+     * orders it among the writes of the key, see {@link #isLater}.
+     */
+    private void store(int key, Entry entry) {
+        Cache<Integer, Entry> target = cache;
+        if (valueStore == null) {
+            entry.stamp = writes.incrementAndGet();
+            target.put(key, entry);
+        } else {
+            target.asMap().compute(key, (k, previous) -> {
+                entry.stamp = valueStore.putBytes(k, entry.bytes);
+                entry.bytes = null;
+                return entry;
+            });
+        }
+        handOver(target, key, entry);
+    }
+
+    private Entry newEntry(String value, long lastAccess, Expiry expiry) {
+        ValueCompressor current = compressor;
+        byte[] packed = current == null ? null : current.compress(value);
+        if (packed != null) {
+            return newEntry(packed, current, lastAccess, expiry);
+        }
+        int weight = EntryWeigher.weigh(value);
+        weightedSize.add(weight);
+        if (valueStore == null) {
+            return new Entry(value, null, null, weight, lastAccess, expiry);
+        }
+        return new Entry(null, value == null ? null : value.getBytes(StandardCharsets.UTF_8), null, weight,
+                lastAccess, expiry);
+    }
+
+    private Entry newEntry(byte[] value, long lastAccess, Expiry expiry) {
+        ValueCompressor current = compressor;
+        byte[] packed = current == null ? null : current.compress(value);
+        return packed == null
+                ? newEntry(value, null, lastAccess, expiry)
+                : newEntry(packed, current, lastAccess, expiry);
+    }
+
+    /**
+     * Entry holding bytes as they are, compressed by {@code packedBy} unless it is null. The weight
+     * is the compressed size, so a byte budget holds more compressed entries.
+     */
+    private Entry newEntry(byte[] value, ValueCompressor packedBy, long lastAccess, Expiry expiry) {
+        int weight = EntryWeigher.weigh(value);
+        weightedSize.add(weight);
+        return new Entry(null, value, packedBy, weight, lastAccess, expiry);
+    }
+
+    private void onRemoval(RemovalNotification<Integer, Entry> notification) {
+        // an entry retired by a resize has been dealt with by the thread that retired it
+        if (notification.getValue().retire()) {
+            onRemoval(notification.getKey(), notification.getValue(), notification.getCause());
+        }
+    }
+
+    private void onRemoval(int key, Entry removed, RemovalCause cause) {
+        weightedSize.add(-removed.weight);
+        if (cause == RemovalCause.REPLACED) {
+            // the key stays cached, only its value changed
+            return;
+        }
+        CacheEventType type = CacheEventType.REMOVAL;
+        if (cause == RemovalCause.SIZE) {
+            numberOfEvictions.increment();
+            type = CacheEventType.EVICTION;
+        } else if (cause == RemovalCause.EXPIRED || removed.expired) {
+            numberOfExpirations.increment();
+            type = CacheEventType.EXPIRATION;
+            if (writeAheadLog != null) {
+                expiredKeys.add(key);
+                logExpirations();
+            }
+        }
+        if (valueStore != null) {
+            // the store keeps a value a later write stored for the key
+            events.publish(type, key, decode(removed, valueStore.removeBytes(key, removed.stamp)));
+        } else if (removed.compressor != null) {
+            events.publish(type, key, decode(removed, removed.bytes));
+        } else if (removed.bytes != null) {
+            events.publishBytes(type, key, removed.bytes);
+        } else {
+            events.publish(type, key, removed.value);
+        }
+    }
+
+    /**
+     * Background part of a resize: evicts the entries that no longer fit and moves the others, in
+     * batches under the monitor of the cache, which requests never take. Entries written to the old
+     * cache while it was being replaced are moved at the end, then it is dropped without
+     * invalidating it, so a write landing there late is never thrown away.
+     */
+    private final class Migration implements Runnable {
+        private final Cache<Integer, Entry> old;
+        private final int[] keys;
+        private final int evictions;
+        private final CacheResize resize;
+        private final ScheduledFuture<?> future;
+        private int next;
+
+        private Migration(Cache<Integer, Entry> old, int[] keys, int evictions, CacheResize resize) {
+            this.old = old;
+            this.keys = keys;
+            this.evictions = evictions;
+            this.resize = resize;
+            this.future = CacheMaintenanceScheduler.scheduleAtFixedRate(this, RESIZE_PERIOD_MILLIS);
+        }
+
+        @Override
+        public void run() {
+            synchronized (LRUCacheService.this) {
+                if (migration == this) {
+                    step(RESIZE_BATCH);
+                }
+            }
+        }
+
+        private void step(int batch) {
+            int end = (int) Math.min((long) next + batch, keys.length);
+            for (; next < end; next++) {
+                Entry entry = old.getIfPresent(keys[next]);
+                if (entry != null) {
+                    if (next < evictions) {
+                        evict(old, keys[next], entry);
+                    } else {
+                        move(old, keys[next], entry);
+                    }
+                }
+                resize.advance(1);
+            }
+            if (next == keys.length) {
+                old.asMap().forEach((key, entry) -> move(old, key, entry));
+                draining = null;
+                old.cleanUp();
+                // writes that landed since are moved by their writers, see handOver
+                old.asMap().forEach((key, entry) -> move(old, key, entry));
+                future.cancel(false);
+                migration = null;
+                resize.finish();
+            }
+        }
+    }
+
+    /**
+     * Guava keeps the recency order to itself, entries carry their last access time so snapshots
+     * can reproduce it. Entries stored as bytes hold them instead of a String, compressed when the
+     * entry has a compressor. Off-heap entries hold their bytes only until they are stored, then
+     * the stamp of that write, see {@link #store}.
+     * Entries written with an {@link Expiry} carry their own time to live and expiration time, the
+     * others have 0 in both.
+     */
+    private static final class Entry {
+        private static final AtomicIntegerFieldUpdater<Entry> RETIRED =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "retired");
+
+        private final String value;
+        private byte[] bytes;
+        private long stamp;
+        private final ValueCompressor compressor;
+        private final int weight;
+        private final long timeToLive;
+        private final boolean expireAfterAccess;
+        private volatile long lastAccess;
+        private volatile long expirationTime;
+        private volatile boolean expired;
+        private volatile int retired;
+
+        private Entry(String value, byte[] bytes, ValueCompressor compressor, int weight, long lastAccess,
+                      Expiry expiry) {
+            this.value = value;
+            this.bytes = bytes;
+            this.compressor = compressor;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+            this.timeToLive = expiry == null ? 0 : expiry.getTimeToLiveMillis();
+            this.expireAfterAccess = expiry != null && expiry.isAfterAccess();
+            this.expirationTime = expiry == null ? 0 : lastAccess + timeToLive;
+        }
+
+        /**
+         * A copy for the cache that replaces the one holding the entry.
+         */
+        private Entry(Entry source) {
+            this.value = source.value;
+            this.bytes = source.bytes;
+            this.stamp = source.stamp;
+            this.compressor = source.compressor;
+            this.weight = source.weight;
+            this.timeToLive = source.timeToLive;
+            this.expireAfterAccess = source.expireAfterAccess;
+            this.lastAccess = source.lastAccess;
+            this.expirationTime = source.expirationTime;
+        }
+
+        /**
+         * Claims the removal of the entry, true for the one caller that gets it.
+         */
+        private boolean retire() {
+            return RETIRED.compareAndSet(this, 0, 1);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package epam.training.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Makes concurrent misses on one key share a single call to the {@link ValueLoader}. The first
+ * caller registers a future for the key and runs the load, everyone arriving while it is in flight
+ * waits on that same future. Successful results are stored in the cache before waiters are released.
+ */
+class LoadCoalescer {
+
+    interface ValueSink {
+        void store(int key, String value);
+    }
+
+    private final ConcurrentMap<Integer, CompletableFuture<String>> loads = new ConcurrentHashMap<>();
+    private final CacheMetrics metrics;
+
+    LoadCoalescer(CacheMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Loads on the calling thread unless another thread is already loading the key.
+     */
+    String load(int key, ValueLoader loader, IntFunction<String> cached, ValueSink sink) {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+        run(key, load, loader, cached, sink);
+        return join(load);
+    }
+
+    CompletableFuture<String> loadAsync(int key, ValueLoader loader, IntFunction<String> cached, ValueSink sink,
+                                        Executor executor) {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        try {
+            executor.execute(() -> run(key, load, loader, cached, sink));
+        } catch (RuntimeException e) {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+        return load;
+    }
+
+    /**
+     * Reloads a key that is still cached, unless a load of it is already in flight. Misses arriving
+     * meanwhile wait on the reload. A failed reload is dropped and the cached value stays.
+     */
+    void refresh(int key, ValueLoader loader, ValueSink sink, Executor executor) {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, load) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> run(key, load, loader, k -> null, sink));
+        } catch (RuntimeException e) {
+            loads.remove(key, load);
+            load.completeExceptionally(e);
+        }
+    }
+
+    private void run(int key, CompletableFuture<String> load, ValueLoader loader, IntFunction<String> cached,
+                     ValueSink sink) {
+        try {
+            // a load that finished just before this one was registered leaves nothing to do
+            String value = cached.apply(key);
+            if (value == null) {
+                long start = System.nanoTime();
+                value = loader.load(key);
+                metrics.recordLoad(System.nanoTime() - start);
+                if (value != null) {
+                    sink.store(key, value);
+                }
+            }
+            load.complete(value);
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    private static String join(CompletableFuture<String> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package epam.training.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.function.Consumer;
+
+/**
+ * Writes cache events as {@code key=value} lines. Every {@code sampleRate}-th event of a type is
+ * printed on its own, and once per summary period a line with the number of events of each type
+ * seen since the previous summary. A sample rate of 0 prints summaries only. Lines go to the
+ * application log at INFO unless a stream is given.
+ */
+public class LoggingCacheEventListener implements CacheEventListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingCacheEventListener.class);
+    private static final CacheEventType[] TYPES = CacheEventType.values();
+
+    private final String cacheName;
+    private final int sampleRate;
+    private final long summaryPeriodMillis;
+    private final Consumer<String> out;
+    private final long[] totals = new long[TYPES.length];
+    private final long[] counts = new long[TYPES.length];
+    private long droppedCount;
+    private long lastSummary = System.currentTimeMillis();
+
+    public LoggingCacheEventListener(String cacheName, int sampleRate, long summaryPeriodMillis) {
+        this(cacheName, sampleRate, summaryPeriodMillis, (Consumer<String>) LOG::info);
+    }
+
+    public LoggingCacheEventListener(String cacheName, int sampleRate, long summaryPeriodMillis, PrintStream out) {
+        this(cacheName, sampleRate, summaryPeriodMillis, (Consumer<String>) out::println);
+    }
+
+    private LoggingCacheEventListener(String cacheName, int sampleRate, long summaryPeriodMillis, Consumer<String> out) {
+        this.cacheName = cacheName;
+        this.sampleRate = sampleRate;
+        this.summaryPeriodMillis = summaryPeriodMillis;
+        this.out = out;
+    }
+
+    @Override
+    public void onEvent(CacheEventType type, int key, String value) {
+        counts[type.ordinal()]++;
+        if (sampleRate > 0 && ++totals[type.ordinal()] % sampleRate == 0) {
+            out.accept("cache=" + cacheName + " event=" + type + " key=" + key + " value=" + value);
+        }
+    }
+
+    @Override
+    public void onDropped(long count) {
+        droppedCount += count;
+    }
+
+    @Override
+    public void flush() {
+        long now = System.currentTimeMillis();
+        if (now - lastSummary < summaryPeriodMillis) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder("cache=").append(cacheName)
+                .append(" period_ms=").append(now - lastSummary);
+        for (CacheEventType type : TYPES) {
+            summary.append(' ').append(type.name().toLowerCase()).append('=').append(counts[type.ordinal()]);
+            counts[type.ordinal()] = 0;
+        }
+        summary.append(" dropped=").append(droppedCount);
+        droppedCount = 0;
+        lastSummary = now;
+        out.accept(summary.toString());
+    }
+}
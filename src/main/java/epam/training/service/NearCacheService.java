@@ -0,0 +1,327 @@
+package epam.training.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-level cache: a small lock-free near cache in front of a shared cache. The near cache is a
+ * direct-mapped array of immutable entries. A hit costs a few volatile reads and never touches
+ * the locks of the shared cache. Values are copied in on a shared hit and never on a write.
+ * <p>
+ * Every slot has a version that is bumped to invalidate it. A copy is only served while the
+ * version it was read under is current. A lookup that races with a write can therefore never
+ * install a stale copy. Writes and removals through this cache invalidate right away. Writes,
+ * removals, evictions and expirations made on the shared cache by anyone else arrive through
+ * its events, so another near cache in front of it lags by at most one drain period. When
+ * events are dropped, every slot is invalidated.
+ */
+public class NearCacheService implements CacheService {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final CacheService backing;
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLongArray versions;
+    private final int mask;
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final LongAdder nearHits = new LongAdder();
+    private final CacheEventListener invalidator = new Invalidator();
+
+    public NearCacheService(CacheService backing) {
+        this(backing, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of near cache slots, rounded up to a power of two
+     */
+    public NearCacheService(CacheService backing, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        slots = Math.max(slots, 1);
+        this.backing = backing;
+        this.entries = new AtomicReferenceArray<>(slots);
+        this.versions = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+        backing.addEventListener(invalidator);
+    }
+
+    @Override
+    public void put(int key, String value) {
+        long start = System.nanoTime();
+        backing.put(key, value);
+        invalidate(key);
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    /**
+     * The near copy is not bound by the expiry, it lives until the shared cache reports the
+     * expiration, which it does when it drops the entry.
+     */
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        long start = System.nanoTime();
+        backing.put(key, value, expiry);
+        invalidate(key);
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    /**
+     * Near copies are Strings, so values written as bytes are only copied in once read as a String.
+     * {@link #getBytes(int)} encodes a near copy.
+     */
+    @Override
+    public void putBytes(int key, byte[] value) {
+        long start = System.nanoTime();
+        backing.putBytes(key, value);
+        invalidate(key);
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public String get(int key) {
+        long start = System.nanoTime();
+        String value = nearValue(key);
+        if (value == null) {
+            value = install(key, readVersion(key), backing.get(key));
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public String get(int key, ValueLoader loader) {
+        long start = System.nanoTime();
+        String value = nearValue(key);
+        if (value == null) {
+            value = install(key, readVersion(key), backing.get(key, loader));
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        long start = System.nanoTime();
+        String value = nearValue(key);
+        if (value != null) {
+            metrics.recordGet(System.nanoTime() - start, true);
+            return CompletableFuture.completedFuture(value);
+        }
+        long version = readVersion(key);
+        return backing.getAsync(key, loader).thenApply(loaded -> {
+            metrics.recordGet(System.nanoTime() - start, loaded != null);
+            return install(key, version, loaded);
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        long start = System.nanoTime();
+        String value = nearValue(key);
+        if (value != null) {
+            metrics.recordGet(System.nanoTime() - start, true);
+            return CompletableFuture.completedFuture(value);
+        }
+        long version = readVersion(key);
+        return backing.getAsync(key).thenApply(found -> {
+            metrics.recordGet(System.nanoTime() - start, found != null);
+            return install(key, version, found);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> stored = backing.putAsync(key, value);
+        invalidate(key);
+        return stored.whenComplete((v, failure) -> {
+            // the shared cache may store the value after putAsync returned
+            invalidate(key);
+            metrics.recordPut(System.nanoTime() - start);
+        });
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        long start = System.nanoTime();
+        backing.putAll(entries);
+        entries.keySet().forEach(this::invalidate);
+        metrics.recordPuts(entries.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        Map<Integer, String> near = new LinkedHashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int key : keys) {
+            String value = nearValue(key);
+            if (value != null) {
+                near.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        Map<Integer, String> shared = Collections.emptyMap();
+        if (!missing.isEmpty()) {
+            int[] missingKeys = new int[missing.size()];
+            long[] missingVersions = new long[missing.size()];
+            for (int i = 0; i < missingKeys.length; i++) {
+                missingKeys[i] = missing.get(i);
+                missingVersions[i] = readVersion(missingKeys[i]);
+            }
+            shared = backing.getAll(missingKeys);
+            for (int i = 0; i < missingKeys.length; i++) {
+                install(missingKeys[i], missingVersions[i], shared.get(missingKeys[i]));
+            }
+        }
+        Map<Integer, String> result = new LinkedHashMap<>();
+        for (int key : keys) {
+            String value = near.containsKey(key) ? near.get(key) : shared.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        metrics.recordGets(keys.length, result.size(), System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public String removeValueFromCache(int key) {
+        String value = backing.removeValueFromCache(key);
+        invalidate(key);
+        return value;
+    }
+
+    @Override
+    public double getAverageTimeSpentAddingNewValues() {
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    /**
+     * Gets and puts as seen through both levels, hits count near and shared hits alike.
+     */
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Lookups answered by the near cache alone.
+     */
+    public long getNearHitCount() {
+        return nearHits.sum();
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return backing.getNumberOfEvictions();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return backing.getNumberOfExpirations();
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        backing.addEventListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        backing.removeEventListener(listener);
+    }
+
+    @Override
+    public void clearCache() {
+        backing.clearCache();
+        invalidateAll();
+        metrics.reset();
+        nearHits.reset();
+    }
+
+    /**
+     * Stops listening to the shared cache, which stays usable on its own.
+     */
+    @Override
+    public void shutdown() {
+        backing.removeEventListener(invalidator);
+        invalidateAll();
+    }
+
+    private String nearValue(int key) {
+        int slot = slot(key);
+        Entry entry = entries.get(slot);
+        if (entry != null && entry.key == key && entry.version == versions.get(slot)) {
+            nearHits.increment();
+            return entry.value;
+        }
+        return null;
+    }
+
+    /**
+     * Version to install a copy under, read before the shared cache is asked.
+     */
+    private long readVersion(int key) {
+        return versions.get(slot(key));
+    }
+
+    private String install(int key, long version, String value) {
+        if (value != null) {
+            int slot = slot(key);
+            entries.set(slot, new Entry(key, value, version));
+        }
+        return value;
+    }
+
+    private void invalidate(int key) {
+        versions.incrementAndGet(slot(key));
+    }
+
+    private void invalidateAll() {
+        for (int slot = 0; slot < versions.length(); slot++) {
+            versions.incrementAndGet(slot);
+        }
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static final class Entry {
+        private final int key;
+        private final String value;
+        private final long version;
+
+        private Entry(int key, String value, long version) {
+            this.key = key;
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    private final class Invalidator implements CacheEventListener {
+        @Override
+        public void onEvent(CacheEventType type, int key, String value) {
+            if (type != CacheEventType.MISS) {
+                invalidate(key);
+            }
+        }
+
+        @Override
+        public void onDropped(long count) {
+            invalidateAll();
+        }
+    }
+}
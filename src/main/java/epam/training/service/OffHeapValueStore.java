@@ -0,0 +1,387 @@
+package epam.training.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Value storage that keeps cached strings out of the Java heap. Keys live in an open addressing
+ * table of primitive ints, values are stored as UTF-8 bytes in direct {@link ByteBuffer} slabs.
+ * Slabs are cut into power-of-two chunks per size class and freed chunks are reused for later
+ * values of the same class, values larger than a slab get a dedicated buffer that is released on
+ * removal. The eviction policy stays with the owning cache service, this class only stores bytes.
+ * Every write of a key gets a new stamp, a caller that writes without holding a lock of its own
+ * reads and removes by stamp, so it never touches a value a later write stored.
+ */
+public class OffHeapValueStore {
+
+    public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    private static final int MIN_CHUNK_SIZE = 16;
+    private static final long EMPTY = -1L;
+    private static final int NULL_VALUE = -1;
+
+    private final int slabSize;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final List<Integer> releasedSlabIndexes = new ArrayList<>();
+    private final long[][] freeChunks;
+    private final int[] freeChunkCounts;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock writeLock = lock.writeLock();
+    private final Lock readLock = lock.readLock();
+
+    private int[] keys;
+    private long[] handles;
+    private int[] lengths;
+    private long[] stamps;
+    private long lastStamp;
+    private int mask;
+    private int size;
+    private long allocatedBytes;
+    private long usedBytes;
+
+    public OffHeapValueStore() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    public OffHeapValueStore(int slabSize) {
+        if (Integer.bitCount(slabSize) != 1 || slabSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Slab size must be a power of two of at least "
+                    + MIN_CHUNK_SIZE + " bytes: " + slabSize);
+        }
+        this.slabSize = slabSize;
+        int sizeClasses = Integer.numberOfTrailingZeros(slabSize) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE) + 1;
+        this.freeChunks = new long[sizeClasses][];
+        this.freeChunkCounts = new int[sizeClasses];
+        for (int i = 0; i < sizeClasses; i++) {
+            freeChunks[i] = new long[16];
+        }
+        initTable(16);
+    }
+
+    public long put(int key, String value) {
+        return putBytes(key, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stores bytes as they are, {@link #get(int)} decodes them as UTF-8. Returns the stamp of the write.
+     */
+    public long putBytes(int key, byte[] bytes) {
+        int length = bytes == null ? NULL_VALUE : bytes.length;
+        writeLock.lock();
+        try {
+            int index = indexOf(key);
+            if (index >= 0) {
+                int chunkClass = chunkClass(length);
+                if (chunkClass != chunkClass(lengths[index]) || (chunkClass < 0 && length != lengths[index])) {
+                    release(handles[index], lengths[index]);
+                    handles[index] = allocate(length);
+                }
+                usedBytes += Math.max(length, 0) - Math.max(lengths[index], 0);
+                lengths[index] = length;
+                write(handles[index], bytes);
+                stamps[index] = ++lastStamp;
+                return lastStamp;
+            }
+            if (size + 1 > (mask + 1) * 3 / 4) {
+                resize();
+            }
+            long handle = allocate(length);
+            write(handle, bytes);
+            insert(key, handle, length, ++lastStamp);
+            usedBytes += Math.max(length, 0);
+            return lastStamp;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public String get(int key) {
+        byte[] bytes = getBytes(key);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the value out of its slab without decoding it.
+     */
+    public byte[] getBytes(int key) {
+        readLock.lock();
+        try {
+            int index = indexOf(key);
+            if (index < 0 || lengths[index] == NULL_VALUE) {
+                return null;
+            }
+            return read(handles[index], lengths[index]);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * The value if it is still the one written with the stamp, null otherwise.
+     */
+    public byte[] getBytes(int key, long stamp) {
+        readLock.lock();
+        try {
+            int index = indexOf(key);
+            if (index < 0 || stamps[index] != stamp || lengths[index] == NULL_VALUE) {
+                return null;
+            }
+            return read(handles[index], lengths[index]);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public boolean containsKey(int key) {
+        readLock.lock();
+        try {
+            return indexOf(key) >= 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Whether the key still holds the value written with the stamp.
+     */
+    public boolean containsKey(int key, long stamp) {
+        readLock.lock();
+        try {
+            int index = indexOf(key);
+            return index >= 0 && stamps[index] == stamp;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public String remove(int key) {
+        byte[] bytes = removeBytes(key);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes the key and returns its value as stored, null when it was absent.
+     */
+    public byte[] removeBytes(int key) {
+        return removeBytes(key, 0);
+    }
+
+    /**
+     * Removes the key only if its value is the one written with the stamp and returns that value
+     * as stored, null otherwise. A stamp of 0 matches any value.
+     */
+    public byte[] removeBytes(int key, long stamp) {
+        writeLock.lock();
+        try {
+            int index = indexOf(key);
+            if (index < 0 || (stamp != 0 && stamps[index] != stamp)) {
+                return null;
+            }
+            byte[] bytes = lengths[index] == NULL_VALUE ? null : read(handles[index], lengths[index]);
+            release(handles[index], lengths[index]);
+            usedBytes -= Math.max(lengths[index], 0);
+            deleteAt(index);
+            return bytes;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public void clear() {
+        writeLock.lock();
+        try {
+            slabs.clear();
+            releasedSlabIndexes.clear();
+            Arrays.fill(freeChunkCounts, 0);
+            allocatedBytes = 0;
+            usedBytes = 0;
+            initTable(16);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Bytes reserved in direct buffers, including free chunks kept for reuse.
+     */
+    public long getOffHeapBytesAllocated() {
+        readLock.lock();
+        try {
+            return allocatedBytes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Bytes taken by the encoded values currently stored.
+     */
+    public long getOffHeapBytesUsed() {
+        readLock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void initTable(int capacity) {
+        keys = new int[capacity];
+        handles = new long[capacity];
+        lengths = new int[capacity];
+        stamps = new long[capacity];
+        Arrays.fill(handles, EMPTY);
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int indexOf(int key) {
+        int index = hash(key) & mask;
+        while (handles[index] != EMPTY) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(int key, long handle, int length, long stamp) {
+        int index = hash(key) & mask;
+        while (handles[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        handles[index] = handle;
+        lengths[index] = length;
+        stamps[index] = stamp;
+        size++;
+    }
+
+    private void deleteAt(int index) {
+        // backward shift keeps every probe chain unbroken without tombstones
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (handles[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                handles[hole] = handles[next];
+                lengths[hole] = lengths[next];
+                stamps[hole] = stamps[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        handles[hole] = EMPTY;
+        size--;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldHandles = handles;
+        int[] oldLengths = lengths;
+        long[] oldStamps = stamps;
+        initTable(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHandles[i] != EMPTY) {
+                insert(oldKeys[i], oldHandles[i], oldLengths[i], oldStamps[i]);
+            }
+        }
+    }
+
+    private int chunkClass(int length) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, length);
+        if (chunkSize > slabSize) {
+            return -1;
+        }
+        int rounded = Integer.highestOneBit(chunkSize - 1) << 1;
+        return Integer.numberOfTrailingZeros(rounded) - Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE);
+    }
+
+    private long allocate(int length) {
+        int chunkClass = chunkClass(length);
+        if (chunkClass < 0) {
+            return handle(addSlab(ByteBuffer.allocateDirect(length)), 0);
+        }
+        if (freeChunkCounts[chunkClass] == 0) {
+            int chunkSize = MIN_CHUNK_SIZE << chunkClass;
+            int slabIndex = addSlab(ByteBuffer.allocateDirect(slabSize));
+            for (int offset = slabSize - chunkSize; offset >= 0; offset -= chunkSize) {
+                pushFreeChunk(chunkClass, handle(slabIndex, offset));
+            }
+        }
+        return freeChunks[chunkClass][--freeChunkCounts[chunkClass]];
+    }
+
+    private void release(long handle, int length) {
+        int chunkClass = chunkClass(length);
+        if (chunkClass < 0) {
+            int slabIndex = (int) (handle >>> 32);
+            allocatedBytes -= slabs.get(slabIndex).capacity();
+            slabs.set(slabIndex, null);
+            releasedSlabIndexes.add(slabIndex);
+        } else {
+            pushFreeChunk(chunkClass, handle);
+        }
+    }
+
+    private int addSlab(ByteBuffer slab) {
+        allocatedBytes += slab.capacity();
+        if (!releasedSlabIndexes.isEmpty()) {
+            int slabIndex = releasedSlabIndexes.remove(releasedSlabIndexes.size() - 1);
+            slabs.set(slabIndex, slab);
+            return slabIndex;
+        }
+        slabs.add(slab);
+        return slabs.size() - 1;
+    }
+
+    private void pushFreeChunk(int chunkClass, long handle) {
+        if (freeChunkCounts[chunkClass] == freeChunks[chunkClass].length) {
+            freeChunks[chunkClass] = Arrays.copyOf(freeChunks[chunkClass], freeChunks[chunkClass].length * 2);
+        }
+        freeChunks[chunkClass][freeChunkCounts[chunkClass]++] = handle;
+    }
+
+    private static long handle(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | offset;
+    }
+
+    private void write(long handle, byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        ByteBuffer slab = slabs.get((int) (handle >>> 32)).duplicate();
+        slab.position((int) handle);
+        slab.put(bytes);
+    }
+
+    private byte[] read(long handle, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slab = slabs.get((int) (handle >>> 32)).duplicate();
+        slab.position((int) handle);
+        slab.get(bytes);
+        return bytes;
+    }
+}
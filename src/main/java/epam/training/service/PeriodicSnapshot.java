@@ -0,0 +1,72 @@
+package epam.training.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Saves a cache's snapshot at a fixed rate and once more when stopped. Saves write and sync a file,
+ * so they run on a thread of their own rather than on the {@link CacheMaintenanceScheduler}, where
+ * they would hold up expiration and resizes. Request threads only ever wait for the copy taken
+ * under the cache lock, never for the file.
+ */
+final class PeriodicSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PeriodicSnapshot.class);
+
+    private static final ScheduledExecutorService SAVER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CacheSnapshotStore store;
+    private final Supplier<CacheSnapshot> source;
+    private final ScheduledFuture<?> task;
+
+    PeriodicSnapshot(CacheSnapshotStore store, Supplier<CacheSnapshot> source, long periodMillis) {
+        this.store = store;
+        this.source = source;
+        this.task = SAVER.scheduleAtFixedRate(() -> {
+            try {
+                save();
+            } catch (RuntimeException e) {
+                // a failing save must not cancel the following ones
+                LOG.error("Periodic snapshot to {} failed", store.getFile(), e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        task.cancel(false);
+        save();
+    }
+
+    private synchronized void save() {
+        try {
+            store.save(source.get());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save snapshot to " + store.getFile(), e);
+        }
+    }
+
+    /**
+     * Loads the snapshot kept by the store, a missing or unreadable one leaves the cache cold.
+     */
+    static int restore(CacheSnapshotStore store, ToIntFunction<CacheSnapshot> target) {
+        try {
+            return store.load().map(target::applyAsInt).orElse(0);
+        } catch (IOException e) {
+            LOG.warn("Starting without snapshot: {}", e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package epam.training.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Replays a sample of the live key stream against ghost caches of every candidate policy at
+ * several sizes. Sampling is spatial: a key is either always or never sampled, chosen by its hash.
+ * A ghost holding {@code rate * capacity} sampled keys then sees roughly the hit rate the full
+ * cache would, for a fraction of the work. Ghosts are real cache instances storing empty values.
+ * <p>
+ * Request threads only ever try the simulator lock and drop the sample when it is taken. Hit rates
+ * are kept per window and decayed by half at every {@link #rollWindow()}, so the curves follow
+ * changes in the traffic.
+ */
+public class PolicySimulator {
+
+    private static final String GHOST_VALUE = "";
+    private static final int HISTORY = 60;
+
+    private final String[] policies;
+    private final int[] capacities;
+    private final CacheService[][] ghosts;
+    private final long sampleThreshold;
+    private final double sampleRate;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder droppedSamples = new LongAdder();
+    private final long[][] windowHits;
+    private long windowAccesses;
+    private final double[][] decayedHits;
+    private double decayedAccesses;
+    private final List<double[]> history = new ArrayList<>();
+
+    /**
+     * @param policies   factories of the candidate caches by name, called with the ghost capacity
+     * @param capacities full cache capacities to simulate
+     * @param sampleRate fraction of keys replayed, between 0 and 1
+     */
+    public PolicySimulator(Map<String, IntFunction<CacheService>> policies, int[] capacities, double sampleRate) {
+        if (sampleRate <= 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+        }
+        this.policies = policies.keySet().toArray(new String[0]);
+        this.capacities = capacities.clone();
+        Arrays.sort(this.capacities);
+        this.sampleRate = sampleRate;
+        this.sampleThreshold = (long) (sampleRate * (1L << 32));
+        this.ghosts = new CacheService[this.policies.length][this.capacities.length];
+        for (int p = 0; p < this.policies.length; p++) {
+            for (int c = 0; c < this.capacities.length; c++) {
+                int ghostCapacity = (int) Math.max(1, Math.round(this.capacities[c] * sampleRate));
+                ghosts[p][c] = policies.get(this.policies[p]).apply(ghostCapacity);
+            }
+        }
+        this.windowHits = new long[this.policies.length][this.capacities.length];
+        this.decayedHits = new double[this.policies.length][this.capacities.length];
+    }
+
+    /**
+     * Replays a lookup when the key is sampled: a ghost hit counts, a ghost miss inserts the key.
+     */
+    public void recordGet(int key) {
+        if (!isSampled(key)) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            droppedSamples.increment();
+            return;
+        }
+        try {
+            windowAccesses++;
+            for (int p = 0; p < ghosts.length; p++) {
+                for (int c = 0; c < ghosts[p].length; c++) {
+                    if (ghosts[p][c].get(key) != null) {
+                        windowHits[p][c]++;
+                    } else {
+                        ghosts[p][c].put(key, GHOST_VALUE);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays a write when the key is sampled, writes are not counted as accesses.
+     */
+    public void recordPut(int key) {
+        if (!isSampled(key)) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            droppedSamples.increment();
+            return;
+        }
+        try {
+            for (CacheService[] policyGhosts : ghosts) {
+                for (CacheService ghost : policyGhosts) {
+                    ghost.put(key, GHOST_VALUE);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the current window: its hit rates join the history and the decayed totals.
+     */
+    public void rollWindow() {
+        lock.lock();
+        try {
+            double[] rates = new double[policies.length * capacities.length];
+            decayedAccesses = decayedAccesses / 2 + windowAccesses;
+            for (int p = 0; p < policies.length; p++) {
+                for (int c = 0; c < capacities.length; c++) {
+                    decayedHits[p][c] = decayedHits[p][c] / 2 + windowHits[p][c];
+                    rates[p * capacities.length + c] = windowAccesses == 0 ? 0 : (double) windowHits[p][c] / windowAccesses;
+                    windowHits[p][c] = 0;
+                }
+            }
+            windowAccesses = 0;
+            history.add(rates);
+            if (history.size() > HISTORY) {
+                history.remove(0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Decayed hit rate of the policy at the simulated capacity closest to the given one.
+     */
+    public double getHitRate(String policy, int capacity) {
+        int p = Arrays.asList(policies).indexOf(policy);
+        if (p < 0) {
+            throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+        lock.lock();
+        try {
+            return decayedAccesses == 0 ? 0 : decayedHits[p][closestCapacity(capacity)] / decayedAccesses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Policy with the highest decayed hit rate at the capacity closest to the given one.
+     */
+    public String getBestPolicy(int capacity) {
+        String best = policies[0];
+        for (String policy : policies) {
+            if (getHitRate(policy, capacity) > getHitRate(best, capacity)) {
+                best = policy;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Decayed number of sampled lookups the hit rates are based on.
+     */
+    public double getSampledAccesses() {
+        lock.lock();
+        try {
+            return decayedAccesses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.sum();
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Miss-ratio curve and recent hit rates of every policy.
+     */
+    public Map<String, Curve> getCurves() {
+        lock.lock();
+        try {
+            Map<String, Curve> curves = new LinkedHashMap<>();
+            for (int p = 0; p < policies.length; p++) {
+                double[] missRatios = new double[capacities.length];
+                List<double[]> windows = new ArrayList<>(history.size());
+                for (int c = 0; c < capacities.length; c++) {
+                    missRatios[c] = decayedAccesses == 0 ? 1 : 1 - decayedHits[p][c] / decayedAccesses;
+                }
+                for (double[] rates : history) {
+                    windows.add(Arrays.copyOfRange(rates, p * capacities.length, (p + 1) * capacities.length));
+                }
+                curves.put(policies[p], new Curve(capacities.clone(), missRatios, windows));
+            }
+            return curves;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        for (CacheService[] policyGhosts : ghosts) {
+            for (CacheService ghost : policyGhosts) {
+                ghost.shutdown();
+            }
+        }
+    }
+
+    private int closestCapacity(int capacity) {
+        int closest = 0;
+        for (int c = 1; c < capacities.length; c++) {
+            if (Math.abs((long) capacities[c] - capacity) < Math.abs((long) capacities[closest] - capacity)) {
+                closest = c;
+            }
+        }
+        return closest;
+    }
+
+    private boolean isSampled(int key) {
+        int h = key * 0x9E3779B9;
+        h ^= h >>> 16;
+        return (h & 0xFFFFFFFFL) < sampleThreshold;
+    }
+
+    /**
+     * Miss ratio per simulated capacity, and the hit rates per capacity of the last windows,
+     * oldest first.
+     */
+    public static final class Curve {
+        private final int[] capacities;
+        private final double[] missRatios;
+        private final List<double[]> recentHitRates;
+
+        Curve(int[] capacities, double[] missRatios, List<double[]> recentHitRates) {
+            this.capacities = capacities;
+            this.missRatios = missRatios;
+            this.recentHitRates = Collections.unmodifiableList(recentHitRates);
+        }
+
+        public int[] getCapacities() {
+            return capacities;
+        }
+
+        public double[] getMissRatios() {
+            return missRatios;
+        }
+
+        public List<double[]> getRecentHitRates() {
+            return recentHitRates;
+        }
+    }
+}
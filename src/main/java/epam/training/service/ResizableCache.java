@@ -0,0 +1,27 @@
+package epam.training.service;
+
+/**
+ * A cache whose capacity and time to live can be changed while it serves requests.
+ */
+public interface ResizableCache {
+    /**
+     * Entries the cache holds at most.
+     */
+    int getCapacity();
+
+    /**
+     * Time to live in milliseconds of entries written without an {@link Expiry}, 0 when they never expire.
+     */
+    int getTimeToLive();
+
+    /**
+     * Applies a new capacity and time to live. The cache answers with the new limits right away and
+     * reaches them in small batches in the background, the returned progress tracks those.
+     */
+    CacheResize resize(int capacity, int timeToLive);
+
+    /**
+     * The last resize, running or done, null before the first.
+     */
+    CacheResize getLastResize();
+}
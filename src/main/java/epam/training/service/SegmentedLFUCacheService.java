@@ -0,0 +1,441 @@
+package epam.training.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LFU cache for concurrent use. Keys are spread over independently locked segments, each one
+ * running its own {@link LFUFrequencyList} over an equal share of the capacity, so threads only
+ * contend when they touch the same segment. Eviction picks the least frequently used entry of the
+ * segment the new key lands in, which approximates global LFU while never exceeding the capacity.
+ */
+public class SegmentedLFUCacheService implements CacheService {
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int timeStampOfRemoval;
+
+    private final LongAdder numberOfEvictions = new LongAdder();
+    private final LongAdder numberOfExpirations = new LongAdder();
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final LoadCoalescer loadCoalescer = new LoadCoalescer(metrics);
+    private final CacheEventPublisher events = new CacheEventPublisher();
+    private ScheduledFuture<?> cleaner;
+
+    public SegmentedLFUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval) {
+        this(cacheCapacity, timeStampOfRemoval, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public SegmentedLFUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval, Integer concurrencyLevel) {
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount * 2 <= Math.max(cacheCapacity, 1)) {
+            segmentCount <<= 1;
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        this.timeStampOfRemoval = timeStampOfRemoval;
+        for (int i = 0; i < segmentCount; i++) {
+            int share = cacheCapacity / segmentCount + (i < cacheCapacity % segmentCount ? 1 : 0);
+            segments[i] = new Segment(share);
+        }
+        if (timeStampOfRemoval > 0) {
+            cleaner = CacheMaintenanceScheduler.scheduleAtFixedRate(this::cleanCache,
+                    CacheMaintenanceScheduler.cleanupPeriod(timeStampOfRemoval));
+        }
+    }
+
+    @Override
+    public void put(int key, String value) {
+        long start = System.nanoTime();
+        segmentFor(key).put(key, value, System.currentTimeMillis());
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public String get(int key) {
+        long start = System.nanoTime();
+        String value = segmentFor(key).get(key, System.currentTimeMillis());
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public String get(int key, ValueLoader loader) {
+        String value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return loadCoalescer.load(key, loader, this::peek, this::put);
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        // the lookup never parks the caller either, a miss is loaded once it is answered
+        return getAsync(key).thenCompose(value -> value != null
+                ? CompletableFuture.completedFuture(value)
+                : loadCoalescer.loadAsync(key, loader, this::peek, this::put, CacheAsyncExecutor.get()));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        long start = System.nanoTime();
+        Segment segment = segmentFor(key);
+        if (!segment.lock.tryLock()) {
+            return CacheAsyncExecutor.supplyAsync(() -> get(key));
+        }
+        String value;
+        try {
+            value = segment.getValue(key, System.currentTimeMillis());
+        } finally {
+            segment.lock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return CompletableFuture.completedFuture(value);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        Segment segment = segmentFor(key);
+        if (segment.capacity > 0) {
+            if (!segment.lock.tryLock()) {
+                return CacheAsyncExecutor.runAsync(() -> put(key, value));
+            }
+            try {
+                segment.putValue(key, value, System.currentTimeMillis());
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        metrics.recordPut(System.nanoTime() - start);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        String[] values = new String[keys.length];
+        int[] positions = new int[keys.length];
+        int[] bounds = groupBySegment(keys, positions);
+        for (int i = 0; i < segments.length; i++) {
+            if (bounds[i] < bounds[i + 1]) {
+                segments[i].getAll(keys, positions, bounds[i], bounds[i + 1], values, now);
+            }
+        }
+        Map<Integer, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                result.put(keys[i], values[i]);
+            }
+        }
+        metrics.recordGets(keys.length, result.size(), System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int[] keys = new int[entries.size()];
+        String[] values = new String[entries.size()];
+        int index = 0;
+        for (Map.Entry<Integer, String> entry : entries.entrySet()) {
+            keys[index] = entry.getKey();
+            values[index++] = entry.getValue();
+        }
+        int[] positions = new int[keys.length];
+        int[] bounds = groupBySegment(keys, positions);
+        for (int i = 0; i < segments.length; i++) {
+            if (bounds[i] < bounds[i + 1]) {
+                segments[i].putAll(keys, positions, bounds[i], bounds[i + 1], values, now);
+            }
+        }
+        metrics.recordPuts(keys.length, System.nanoTime() - start);
+    }
+
+    @Override
+    public String removeValueFromCache(int key) {
+        return segmentFor(key).remove(key);
+    }
+
+    @Override
+    public double getAverageTimeSpentAddingNewValues() {
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return numberOfEvictions.sum();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return numberOfExpirations.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        events.addListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        events.removeListener(listener);
+    }
+
+    @Override
+    public void clearCache() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        numberOfEvictions.reset();
+        numberOfExpirations.reset();
+        metrics.reset();
+    }
+
+    /**
+     * Stops the expiration task of this cache, entries past their time are then only dropped on access.
+     * Pending events are delivered before the event drain task stops.
+     */
+    @Override
+    public void shutdown() {
+        if (cleaner != null) {
+            cleaner.cancel(false);
+        }
+        events.shutdown();
+    }
+
+    private String peek(int key) {
+        return segmentFor(key).peek(key, System.currentTimeMillis());
+    }
+
+    private void cleanCache() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.expireEntries(now);
+        }
+    }
+
+    private Segment segmentFor(int key) {
+        return segments[segmentIndex(key)];
+    }
+
+    private int segmentIndex(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & segmentMask;
+    }
+
+    /**
+     * Counting sort of key positions by segment, so a batch visits every segment at most once.
+     * Positions of segment {@code i} end up in {@code positions[bounds[i]]..positions[bounds[i + 1] - 1]}.
+     */
+    private int[] groupBySegment(int[] keys, int[] positions) {
+        int[] bounds = new int[segments.length + 1];
+        for (int key : keys) {
+            bounds[segmentIndex(key) + 1]++;
+        }
+        for (int i = 0; i < segments.length; i++) {
+            bounds[i + 1] += bounds[i];
+        }
+        int[] next = bounds.clone();
+        for (int i = 0; i < keys.length; i++) {
+            positions[next[segmentIndex(keys[i])]++] = i;
+        }
+        return bounds;
+    }
+
+    private boolean isExpired(LFUFrequencyList.Entry entry, long now) {
+        return timeStampOfRemoval > 0 && now > entry.expirationTime;
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Integer, LFUFrequencyList.Entry> entryMap = new HashMap<>();
+        private final LFUFrequencyList frequencyList = new LFUFrequencyList();
+        private final TimerWheel<LFUFrequencyList.Entry> timerWheel = new TimerWheel<>(System.currentTimeMillis());
+        private final int capacity;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private String get(int key, long now) {
+            lock.lock();
+            try {
+                return getValue(key, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void getAll(int[] keys, int[] positions, int from, int to, String[] values, long now) {
+            lock.lock();
+            try {
+                for (int i = from; i < to; i++) {
+                    values[positions[i]] = getValue(keys[positions[i]], now);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(int key, String value, long now) {
+            if (capacity == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                putValue(key, value, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void putAll(int[] keys, int[] positions, int from, int to, String[] values, long now) {
+            if (capacity == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                for (int i = from; i < to; i++) {
+                    putValue(keys[positions[i]], values[positions[i]], now);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private String peek(int key, long now) {
+            lock.lock();
+            try {
+                LFUFrequencyList.Entry entry = entryMap.get(key);
+                return entry == null || isExpired(entry, now) ? null : entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private String getValue(int key, long now) {
+            LFUFrequencyList.Entry entry = entryMap.get(key);
+            if (entry == null) {
+                events.publish(CacheEventType.MISS, key, null);
+                return null;
+            }
+            if (isExpired(entry, now)) {
+                expire(entry);
+                events.publish(CacheEventType.MISS, key, null);
+                return null;
+            }
+            frequencyList.touch(entry);
+            updateExpirationTime(entry, now);
+            return entry.value;
+        }
+
+        private void putValue(int key, String value, long now) {
+            LFUFrequencyList.Entry entry = entryMap.get(key);
+            if (entry == null) {
+                if (entryMap.size() >= capacity) {
+                    long start = System.nanoTime();
+                    LFUFrequencyList.Entry evicted = frequencyList.evict();
+                    entryMap.remove(evicted.key);
+                    timerWheel.deschedule(evicted);
+                    numberOfEvictions.increment();
+                    events.publish(CacheEventType.EVICTION, evicted.key, evicted.value);
+                    metrics.recordEviction(System.nanoTime() - start);
+                }
+                entry = frequencyList.add(key, value);
+                entryMap.put(key, entry);
+            } else {
+                entry.value = value;
+                frequencyList.touch(entry);
+            }
+            updateExpirationTime(entry, now);
+        }
+
+        private String remove(int key) {
+            lock.lock();
+            try {
+                LFUFrequencyList.Entry entry = entryMap.remove(key);
+                if (entry == null) {
+                    return null;
+                }
+                frequencyList.remove(entry);
+                timerWheel.deschedule(entry);
+                events.publish(CacheEventType.REMOVAL, key, entry.value);
+                return entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void expireEntries(long now) {
+            lock.lock();
+            try {
+                timerWheel.advance(now, this::expire);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void updateExpirationTime(LFUFrequencyList.Entry entry, long now) {
+            if (timeStampOfRemoval > 0) {
+                entry.expirationTime = now + timeStampOfRemoval;
+                timerWheel.schedule(entry);
+            }
+        }
+
+        private void expire(LFUFrequencyList.Entry entry) {
+            entryMap.remove(entry.key);
+            frequencyList.remove(entry);
+            timerWheel.deschedule(entry);
+            numberOfExpirations.increment();
+            events.publish(CacheEventType.EXPIRATION, entry.key, entry.value);
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return entryMap.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                entryMap.clear();
+                frequencyList.clear();
+                timerWheel.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package epam.training.service;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Spreads keys over several caches with a consistent-hash ring. Every node sits on the ring at a
+ * number of virtual points and a key belongs to the first point at or after its hash, so nodes get
+ * similar shares and adding or removing one only moves the keys of the ranges it takes over or
+ * gives up.
+ * <p>
+ * Moved entries are copied eagerly out of nodes that implement {@link SnapshotCache}. Any other
+ * node losing keys is cleared instead, so that a key cannot come back to it stale after a later
+ * change of the ring. Lookups take the read side of a lock, node changes the write side.
+ */
+public class ShardedCacheService implements CacheService {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private final Map<String, CacheService> nodes = new LinkedHashMap<>();
+    private final List<CacheEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final Lock readLock;
+    private final Lock writeLock;
+    private volatile Ring ring;
+
+    public ShardedCacheService(Map<String, ? extends CacheService> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardedCacheService(Map<String, ? extends CacheService> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one node is required");
+        }
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+        this.nodes.putAll(nodes);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+        this.ring = buildRing();
+    }
+
+    /**
+     * Puts a node on the ring and moves over the entries of the key ranges it takes.
+     */
+    public void addNode(String name, CacheService node) {
+        writeLock.lock();
+        try {
+            if (nodes.containsKey(name)) {
+                throw new IllegalArgumentException("Node already exists: " + name);
+            }
+            nodes.put(name, node);
+            listeners.forEach(node::addEventListener);
+            ring = buildRing();
+            for (CacheService existing : nodes.values()) {
+                if (existing != node) {
+                    rebalance(existing);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a node off the ring and hands its entries to the nodes now owning them. The removed
+     * node is returned untouched, shutting it down is up to the caller.
+     */
+    public CacheService removeNode(String name) {
+        writeLock.lock();
+        try {
+            if (nodes.containsKey(name) && nodes.size() == 1) {
+                throw new IllegalStateException("Cannot remove the last node " + name);
+            }
+            CacheService removed = nodes.remove(name);
+            if (removed == null) {
+                return null;
+            }
+            ring = buildRing();
+            if (removed instanceof SnapshotCache) {
+                CacheSnapshot snapshot = ((SnapshotCache) removed).snapshot();
+                Map<CacheService, Map<Integer, String>> moved = new IdentityHashMap<>();
+                for (int i = 0; i < snapshot.size(); i++) {
+                    int key = snapshot.getKey(i);
+                    if (snapshot.isBinary(i)) {
+                        ring.owner(key).putBytes(key, snapshot.getValueBytes(i));
+                    } else {
+                        moved.computeIfAbsent(ring.owner(key), n -> new LinkedHashMap<>()).put(key, snapshot.getValue(i));
+                    }
+                }
+                moved.forEach(CacheService::putAll);
+            }
+            listeners.forEach(removed::removeEventListener);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Map<String, CacheService> getNodes() {
+        readLock.lock();
+        try {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Name of the node owning the key.
+     */
+    public String nodeFor(int key) {
+        return ring.ownerName(key);
+    }
+
+    @Override
+    public void put(int key, String value) {
+        long start = System.nanoTime();
+        readLock.lock();
+        try {
+            ring.owner(key).put(key, value);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    /**
+     * Entries moved to another node by a change of the ring take the time to live of that node.
+     */
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        long start = System.nanoTime();
+        readLock.lock();
+        try {
+            ring.owner(key).put(key, value, expiry);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public String get(int key) {
+        long start = System.nanoTime();
+        String value;
+        readLock.lock();
+        try {
+            value = ring.owner(key).get(key);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public void putBytes(int key, byte[] value) {
+        long start = System.nanoTime();
+        readLock.lock();
+        try {
+            ring.owner(key).putBytes(key, value);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public byte[] getBytes(int key) {
+        long start = System.nanoTime();
+        byte[] value;
+        readLock.lock();
+        try {
+            value = ring.owner(key).getBytes(key);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public String get(int key, ValueLoader loader) {
+        String value = get(key);
+        if (value != null) {
+            return value;
+        }
+        readLock.lock();
+        try {
+            return ring.owner(key).get(key, loader);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        readLock.lock();
+        try {
+            return ring.owner(key).getAsync(key, loader);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        long start = System.nanoTime();
+        CompletableFuture<String> value;
+        readLock.lock();
+        try {
+            value = ring.owner(key).getAsync(key);
+        } finally {
+            readLock.unlock();
+        }
+        return value.whenComplete((v, failure) -> metrics.recordGet(System.nanoTime() - start, v != null));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> stored;
+        readLock.lock();
+        try {
+            stored = ring.owner(key).putAsync(key, value);
+        } finally {
+            readLock.unlock();
+        }
+        return stored.whenComplete((v, failure) -> metrics.recordPut(System.nanoTime() - start));
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        long start = System.nanoTime();
+        readLock.lock();
+        try {
+            Map<CacheService, Map<Integer, String>> byNode = new IdentityHashMap<>();
+            entries.forEach((key, value) ->
+                    byNode.computeIfAbsent(ring.owner(key), node -> new LinkedHashMap<>()).put(key, value));
+            byNode.forEach(CacheService::putAll);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.recordPuts(entries.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        Map<Integer, String> found = new HashMap<>();
+        readLock.lock();
+        try {
+            Map<CacheService, List<Integer>> byNode = new IdentityHashMap<>();
+            for (int key : keys) {
+                byNode.computeIfAbsent(ring.owner(key), node -> new ArrayList<>()).add(key);
+            }
+            byNode.forEach((node, nodeKeys) ->
+                    found.putAll(node.getAll(nodeKeys.stream().mapToInt(Integer::intValue).toArray())));
+        } finally {
+            readLock.unlock();
+        }
+        Map<Integer, String> result = new LinkedHashMap<>();
+        for (int key : keys) {
+            String value = found.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        metrics.recordGets(keys.length, result.size(), System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public String removeValueFromCache(int key) {
+        readLock.lock();
+        try {
+            return ring.owner(key).removeValueFromCache(key);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public double getAverageTimeSpentAddingNewValues() {
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    /**
+     * Gets and puts as seen through the facade, the nodes keep their own metrics as well.
+     */
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return sum(CacheService::getNumberOfEvictions);
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return sum(CacheService::getNumberOfExpirations);
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        writeLock.lock();
+        try {
+            listeners.add(listener);
+            nodes.values().forEach(node -> node.addEventListener(listener));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        writeLock.lock();
+        try {
+            listeners.remove(listener);
+            nodes.values().forEach(node -> node.removeEventListener(listener));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clearCache() {
+        readLock.lock();
+        try {
+            nodes.values().forEach(CacheService::clearCache);
+        } finally {
+            readLock.unlock();
+        }
+        metrics.reset();
+    }
+
+    /**
+     * Moves the entries of the node that now belong to another node, or clears the node when its
+     * entries cannot be listed.
+     */
+    private void rebalance(CacheService node) {
+        if (!(node instanceof SnapshotCache)) {
+            node.clearCache();
+            return;
+        }
+        CacheSnapshot snapshot = ((SnapshotCache) node).snapshot();
+        Map<CacheService, Map<Integer, String>> moved = new IdentityHashMap<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            int key = snapshot.getKey(i);
+            CacheService owner = ring.owner(key);
+            if (owner == node) {
+                continue;
+            }
+            if (snapshot.isBinary(i)) {
+                owner.putBytes(key, snapshot.getValueBytes(i));
+                node.removeValueFromCache(key);
+            } else {
+                moved.computeIfAbsent(owner, n -> new LinkedHashMap<>()).put(key, snapshot.getValue(i));
+            }
+        }
+        moved.forEach((owner, entries) -> {
+            owner.putAll(entries);
+            entries.keySet().forEach(node::removeValueFromCache);
+        });
+    }
+
+    private long sum(ToLongFunction<CacheService> statistic) {
+        readLock.lock();
+        try {
+            return nodes.values().stream().mapToLong(statistic).sum();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private Ring buildRing() {
+        int size = nodes.size() * virtualNodes;
+        long[] points = new long[size];
+        String[] names = new String[size];
+        Map<Long, String> owners = new HashMap<>();
+        int index = 0;
+        for (String name : nodes.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                long point = Hashing.murmur3_128().hashString(name + "#" + i, StandardCharsets.UTF_8).asLong();
+                if (owners.putIfAbsent(point, name) == null) {
+                    points[index++] = point;
+                }
+            }
+        }
+        points = Arrays.copyOf(points, index);
+        Arrays.sort(points);
+        CacheService[] services = new CacheService[index];
+        for (int i = 0; i < index; i++) {
+            names[i] = owners.get(points[i]);
+            services[i] = nodes.get(names[i]);
+        }
+        return new Ring(points, Arrays.copyOf(names, index), services);
+    }
+
+    /**
+     * Sorted ring points with the node owning each, replaced as a whole whenever nodes change.
+     */
+    private static final class Ring {
+        private final long[] points;
+        private final String[] names;
+        private final CacheService[] services;
+
+        private Ring(long[] points, String[] names, CacheService[] services) {
+            this.points = points;
+            this.names = names;
+            this.services = services;
+        }
+
+        CacheService owner(int key) {
+            return services[index(key)];
+        }
+
+        String ownerName(int key) {
+            return names[index(key)];
+        }
+
+        private int index(int key) {
+            int index = Arrays.binarySearch(points, mix(key));
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index == points.length ? 0 : index;
+        }
+
+        /**
+         * SplitMix64 finalizer, spreads consecutive keys over the whole ring.
+         */
+        private static long mix(long x) {
+            x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+            x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+            return x ^ (x >>> 31);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package epam.training.service;
+
+/**
+ * A cache whose contents can be copied out and put back, for warm restarts and for moving entries
+ * between caches.
+ */
+public interface SnapshotCache {
+    CacheSnapshot snapshot();
+
+    int restore(CacheSnapshot snapshot);
+}
@@ -0,0 +1,122 @@
+package epam.training.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent keys of a stream in a fixed number of counters. A key
+ * that is not counted yet takes over the smallest counter and inherits its count as the error of
+ * its own, so a count overestimates by at most that error. Every key seen more often than
+ * total / capacity times is guaranteed to hold a counter. Counters form a binary min-heap with a
+ * key index, so an update costs O(log capacity).
+ * Not thread safe, callers are expected to guard it with their own lock.
+ */
+class SpaceSaving {
+
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<Integer, Integer> positions;
+    private int size;
+    private long total;
+
+    SpaceSaving(int capacity) {
+        int counters = Math.max(capacity, 1);
+        this.keys = new int[counters];
+        this.counts = new long[counters];
+        this.errors = new long[counters];
+        this.positions = new HashMap<>(counters * 2);
+    }
+
+    void add(int key) {
+        total++;
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position]++;
+            siftDown(position);
+            return;
+        }
+        if (size < keys.length) {
+            keys[size] = key;
+            counts[size] = 1;
+            errors[size] = 0;
+            positions.put(key, size);
+            siftUp(size++);
+            return;
+        }
+        // the smallest counter sits at the root
+        positions.remove(keys[0]);
+        keys[0] = key;
+        errors[0] = counts[0];
+        counts[0]++;
+        positions.put(key, 0);
+        siftDown(0);
+    }
+
+    /**
+     * The {@code limit} keys with the highest counts, highest first.
+     */
+    List<HotKey> top(int limit) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        List<HotKey> top = new ArrayList<>(Math.min(limit, size));
+        for (int i = 0; i < Math.min(limit, size); i++) {
+            top.add(new HotKey(keys[order[i]], counts[order[i]], errors[order[i]]));
+        }
+        return top;
+    }
+
+    long total() {
+        return total;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int key = keys[i];
+        long count = counts[i];
+        long error = errors[i];
+        keys[i] = keys[j];
+        counts[i] = counts[j];
+        errors[i] = errors[j];
+        keys[j] = key;
+        counts[j] = count;
+        errors[j] = error;
+        positions.put(keys[i], i);
+        positions.put(keys[j], j);
+    }
+}
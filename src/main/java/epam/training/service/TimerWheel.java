@@ -0,0 +1,155 @@
+package epam.training.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel over entry expiration times, in milliseconds.
+ * Each level is a ring of buckets covering a coarser span than the one below, entries are linked
+ * into the bucket that matches their deadline and move to finer levels as the wheel turns. Scheduling
+ * and descheduling are O(1) and advancing only visits buckets whose time has come, so the cost
+ * of expiration follows the number of due entries rather than the size of the cache.
+ * Not thread safe, callers are expected to guard it with their own lock.
+ */
+class TimerWheel<E extends TimerWheel.Node> {
+
+    // 64ms, 4s, 4.4min, 4.6h buckets and one overflow bucket for anything further away
+    private static final int[] BUCKETS = {64, 64, 64, 64, 1};
+    private static final long[] SPANS = {1L << 6, 1L << 12, 1L << 18, 1L << 24, 1L << 30, 1L << 30};
+    private static final int[] SHIFT = {6, 12, 18, 24, 30};
+
+    private final Node[][] wheel;
+    private long time;
+
+    TimerWheel(long now) {
+        this.time = now;
+        this.wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = sentinel();
+            }
+        }
+    }
+
+    void schedule(E entry) {
+        if (entry.timerNext != null) {
+            unlink(entry);
+        }
+        link(findBucket(entry.expirationTime), entry);
+    }
+
+    void deschedule(E entry) {
+        if (entry.timerNext != null) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Moves the wheel to {@code now} and hands every entry whose expiration time has passed to
+     * {@code onExpired}, the entry is already unlinked from the wheel at that point.
+     */
+    void advance(long now, Consumer<? super E> onExpired) {
+        if (now <= time) {
+            return;
+        }
+        long previousTime = time;
+        time = now;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks, onExpired);
+        }
+    }
+
+    /**
+     * Drops every entry. Their links are reset as well, so descheduling one of them afterwards
+     * cannot reach into the emptied buckets.
+     */
+    void clear() {
+        for (Node[] buckets : wheel) {
+            for (Node sentinel : buckets) {
+                Node entry = sentinel.timerNext;
+                while (entry != sentinel) {
+                    Node next = entry.timerNext;
+                    entry.timerPrev = null;
+                    entry.timerNext = null;
+                    entry = next;
+                }
+                sentinel.timerPrev = sentinel;
+                sentinel.timerNext = sentinel;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expire(int level, long previousTicks, long delta, Consumer<? super E> onExpired) {
+        Node[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+        for (int i = start; i < end; i++) {
+            Node sentinel = buckets[i & mask];
+            Node entry = sentinel.timerNext;
+            sentinel.timerPrev = sentinel;
+            sentinel.timerNext = sentinel;
+            while (entry != sentinel) {
+                Node next = entry.timerNext;
+                entry.timerPrev = null;
+                entry.timerNext = null;
+                if (entry.expirationTime < time) {
+                    onExpired.accept((E) entry);
+                } else {
+                    link(findBucket(entry.expirationTime), entry);
+                }
+                entry = next;
+            }
+        }
+    }
+
+    private Node findBucket(long expirationTime) {
+        long duration = expirationTime - time;
+        long bucketTime = Math.max(expirationTime, time);
+        int last = wheel.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = bucketTime >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (wheel[i].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    private static void link(Node sentinel, Node entry) {
+        entry.timerPrev = sentinel.timerPrev;
+        entry.timerNext = sentinel;
+        sentinel.timerPrev.timerNext = entry;
+        sentinel.timerPrev = entry;
+    }
+
+    private static void unlink(Node entry) {
+        entry.timerPrev.timerNext = entry.timerNext;
+        entry.timerNext.timerPrev = entry.timerPrev;
+        entry.timerPrev = null;
+        entry.timerNext = null;
+    }
+
+    private static Node sentinel() {
+        Node sentinel = new Node();
+        sentinel.timerPrev = sentinel;
+        sentinel.timerNext = sentinel;
+        return sentinel;
+    }
+
+    /**
+     * Timer links embedded in every entry the wheel can hold, so scheduling never allocates.
+     */
+    static class Node {
+        long expirationTime;
+        Node timerPrev;
+        Node timerNext;
+    }
+}
@@ -0,0 +1,516 @@
+package epam.training.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * W-TinyLFU cache. New entries land in a small LRU window, entries pushed out of the window
+ * compete with the least recently used entry of the main region for a place in it, and a
+ * {@link FrequencySketch} of recent accesses decides which of the two is kept. The main region is
+ * a segmented LRU: a hit in probation promotes the entry to the protected segment, overflow of the
+ * protected segment demotes back to probation. The window absorbs bursts of new keys, the sketch
+ * keeps one-off scans from flushing popular entries and its periodic halving lets stale ones go.
+ * An entry put with an {@link Expiry} follows it instead of the time to live of the cache.
+ */
+public class TinyLFUCacheService implements CacheService {
+
+    public static final int DEFAULT_WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Map<Integer, Node> entryMap = new HashMap<>();
+    private final AccessOrderQueue window = new AccessOrderQueue();
+    private final AccessOrderQueue probation = new AccessOrderQueue();
+    private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+    private final TimerWheel<Node> timerWheel = new TimerWheel<>(System.currentTimeMillis());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final int cacheCapacity;
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final int timeStampOfRemoval;
+
+    private final LongAdder numberOfEvictions = new LongAdder();
+    private final LongAdder numberOfExpirations = new LongAdder();
+    private final CacheMetrics metrics = new CacheMetrics();
+    private final LoadCoalescer loadCoalescer = new LoadCoalescer(metrics);
+    private final CacheEventPublisher events = new CacheEventPublisher();
+    private volatile ScheduledFuture<?> cleaner;
+
+    public TinyLFUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval) {
+        this(cacheCapacity, timeStampOfRemoval, DEFAULT_WINDOW_PERCENT);
+    }
+
+    public TinyLFUCacheService(Integer cacheCapacity, Integer timeStampOfRemoval, Integer windowPercent) {
+        if (windowPercent < 0 || windowPercent > 100) {
+            throw new IllegalArgumentException("Window percent must be between 0 and 100: " + windowPercent);
+        }
+        this.cacheCapacity = cacheCapacity;
+        this.windowCapacity = cacheCapacity == 0 ? 0 : Math.max(1, (int) ((long) cacheCapacity * windowPercent / 100));
+        this.protectedCapacity = (int) ((long) (cacheCapacity - windowCapacity) * PROTECTED_PERCENT / 100);
+        this.timeStampOfRemoval = timeStampOfRemoval;
+        this.sketch = new FrequencySketch(cacheCapacity);
+        if (timeStampOfRemoval > 0) {
+            startCleaner(timeStampOfRemoval);
+        }
+    }
+
+    @Override
+    public void put(int key, String value) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            putValue(key, value, System.currentTimeMillis(), null);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    /**
+     * A later put without an expiry brings the entry back to the time to live of the cache.
+     */
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        long start = System.nanoTime();
+        if (expiry != null && cleaner == null) {
+            startCleaner(expiry.getTimeToLiveMillis());
+        }
+        lock.lock();
+        try {
+            putValue(key, value, System.currentTimeMillis(), expiry);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+    }
+
+    @Override
+    public String get(int key) {
+        long start = System.nanoTime();
+        String value;
+        lock.lock();
+        try {
+            value = getValue(key, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return value;
+    }
+
+    @Override
+    public String get(int key, ValueLoader loader) {
+        String value = get(key);
+        if (value != null) {
+            return value;
+        }
+        return loadCoalescer.load(key, loader, this::peek, this::put);
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        // the lookup never parks the caller either, a miss is loaded once it is answered
+        return getAsync(key).thenCompose(value -> value != null
+                ? CompletableFuture.completedFuture(value)
+                : loadCoalescer.loadAsync(key, loader, this::peek, this::put, CacheAsyncExecutor.get()));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        long start = System.nanoTime();
+        if (!lock.tryLock()) {
+            return CacheAsyncExecutor.supplyAsync(() -> get(key));
+        }
+        String value;
+        try {
+            value = getValue(key, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGet(System.nanoTime() - start, value != null);
+        return CompletableFuture.completedFuture(value);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        long start = System.nanoTime();
+        if (!lock.tryLock()) {
+            return CacheAsyncExecutor.runAsync(() -> put(key, value));
+        }
+        try {
+            putValue(key, value, System.currentTimeMillis(), null);
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPut(System.nanoTime() - start);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        long start = System.nanoTime();
+        Map<Integer, String> values = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (int key : keys) {
+                String value = getValue(key, now);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordGets(keys.length, values.size(), System.nanoTime() - start);
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Integer, String> entry : entries.entrySet()) {
+                putValue(entry.getKey(), entry.getValue(), now, null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        metrics.recordPuts(entries.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public String removeValueFromCache(int key) {
+        lock.lock();
+        try {
+            Node node = entryMap.get(key);
+            if (node == null) {
+                return null;
+            }
+            remove(node);
+            events.publish(CacheEventType.REMOVAL, key, node.value);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public double getAverageTimeSpentAddingNewValues() {
+        return metrics.getAveragePutTimeMillis();
+    }
+
+    @Override
+    public CacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return numberOfEvictions.sum();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return numberOfExpirations.sum();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entryMap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        events.addListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        events.removeListener(listener);
+    }
+
+    @Override
+    public void clearCache() {
+        lock.lock();
+        try {
+            entryMap.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            timerWheel.clear();
+            sketch.clear();
+            numberOfEvictions.reset();
+            numberOfExpirations.reset();
+            metrics.reset();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the expiration task of this cache, entries past their time are then only dropped on access.
+     * Pending events are delivered before the event drain task stops.
+     */
+    @Override
+    public void shutdown() {
+        if (cleaner != null) {
+            cleaner.cancel(false);
+        }
+        events.shutdown();
+    }
+
+    /**
+     * Looks a key up without counting it as a use.
+     */
+    private String peek(int key) {
+        lock.lock();
+        try {
+            Node node = entryMap.get(key);
+            return node == null || isExpired(node, System.currentTimeMillis()) ? null : node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String getValue(int key, long now) {
+        Node node = entryMap.get(key);
+        if (node == null) {
+            events.publish(CacheEventType.MISS, key, null);
+            return null;
+        }
+        if (isExpired(node, now)) {
+            expire(node);
+            events.publish(CacheEventType.MISS, key, null);
+            return null;
+        }
+        sketch.increment(key);
+        onHit(node);
+        updateExpirationTime(node, now, false);
+        return node.value;
+    }
+
+    private void putValue(int key, String value, long now, Expiry expiry) {
+        sketch.increment(key);
+        Node node = entryMap.get(key);
+        if (node != null) {
+            node.value = value;
+            onHit(node);
+            setExpiry(node, expiry);
+            updateExpirationTime(node, now, true);
+            return;
+        }
+        if (cacheCapacity == 0) {
+            return;
+        }
+        node = new Node(key, value);
+        setExpiry(node, expiry);
+        window.addLast(node, Region.WINDOW);
+        entryMap.put(key, node);
+        updateExpirationTime(node, now, true);
+        if (window.size > windowCapacity) {
+            Node candidate = window.first();
+            window.remove(candidate);
+            probation.addLast(candidate, Region.PROBATION);
+            if (entryMap.size() > cacheCapacity) {
+                evict(candidate);
+            }
+        }
+    }
+
+    private void onHit(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedQueue.addLast(node, Region.PROTECTED);
+                if (protectedQueue.size > protectedCapacity) {
+                    Node demoted = protectedQueue.first();
+                    protectedQueue.remove(demoted);
+                    probation.addLast(demoted, Region.PROBATION);
+                }
+                break;
+            case PROTECTED:
+                protectedQueue.moveToBack(node);
+                break;
+        }
+    }
+
+    /**
+     * Decides between the entry that just left the window and the least recently used entry of
+     * the main region. The candidate has to be strictly more popular to win, so ties keep the
+     * entry that has already proven itself.
+     */
+    private void evict(Node candidate) {
+        long start = System.nanoTime();
+        Node victim = probation.first();
+        if (victim == candidate) {
+            victim = protectedQueue.first();
+        }
+        if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+            victim = candidate;
+        }
+        remove(victim);
+        numberOfEvictions.increment();
+        events.publish(CacheEventType.EVICTION, victim.key, victim.value);
+        metrics.recordEviction(System.nanoTime() - start);
+    }
+
+    private void remove(Node node) {
+        entryMap.remove(node.key);
+        queueOf(node).remove(node);
+        timerWheel.deschedule(node);
+    }
+
+    private AccessOrderQueue queueOf(Node node) {
+        switch (node.region) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedQueue;
+        }
+    }
+
+    private void setExpiry(Node node, Expiry expiry) {
+        node.timeToLive = expiry == null ? 0 : expiry.getTimeToLiveMillis();
+        node.expireAfterAccess = expiry != null && expiry.isAfterAccess();
+    }
+
+    /**
+     * The time to live of the cache counts from the last access, an entry's own one from the last
+     * write unless it expires after access.
+     */
+    private void updateExpirationTime(Node node, long now, boolean write) {
+        long timeToLive = node.timeToLive > 0 ? node.timeToLive : timeStampOfRemoval;
+        if (timeToLive <= 0) {
+            node.expirationTime = 0;
+            timerWheel.deschedule(node);
+        } else if (write || node.timeToLive == 0 || node.expireAfterAccess) {
+            node.expirationTime = now + timeToLive;
+            timerWheel.schedule(node);
+        }
+    }
+
+    private boolean isExpired(Node node, long now) {
+        return node.expirationTime > 0 && now > node.expirationTime;
+    }
+
+    /**
+     * Started with the cache when it has a time to live, otherwise on the first put with an
+     * {@link Expiry}.
+     */
+    private synchronized void startCleaner(long timeToLive) {
+        if (cleaner == null) {
+            cleaner = CacheMaintenanceScheduler.scheduleAtFixedRate(this::cleanCache,
+                    CacheMaintenanceScheduler.cleanupPeriod((int) Math.min(timeToLive, Integer.MAX_VALUE)));
+        }
+    }
+
+    private void expire(Node node) {
+        remove(node);
+        numberOfExpirations.increment();
+        events.publish(CacheEventType.EXPIRATION, node.key, node.value);
+    }
+
+    private void cleanCache() {
+        lock.lock();
+        try {
+            timerWheel.advance(System.currentTimeMillis(), this::expire);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private enum Region {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    private static final class Node extends TimerWheel.Node {
+        private final int key;
+        private String value;
+        private Region region;
+        // 0 when the entry follows the time to live of the cache
+        private long timeToLive;
+        private boolean expireAfterAccess;
+        private Node prev;
+        private Node next;
+
+        private Node(int key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list from least to most recently used.
+     */
+    private static final class AccessOrderQueue {
+        private Node head;
+        private Node tail;
+        private int size;
+
+        private Node first() {
+            return head;
+        }
+
+        private void addLast(Node node, Region region) {
+            node.region = region;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        private void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        private void moveToBack(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node, node.region);
+            }
+        }
+
+        private void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package epam.training.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Passes every operation on to a cache and, while recording, appends it to a
+ * {@link CacheTraceRecorder}. When not recording the only cost is one volatile read per operation.
+ */
+public class TracingCacheService implements CacheService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TracingCacheService.class);
+
+    private final CacheService delegate;
+    private volatile CacheTraceRecorder recorder;
+
+    public TracingCacheService(CacheService delegate) {
+        this.delegate = delegate;
+    }
+
+    public CacheService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Starts writing a trace of at most {@code maxRecords} operations to a new file.
+     */
+    public synchronized void startRecording(Path file, long maxRecords) throws IOException {
+        if (recorder != null) {
+            throw new IllegalStateException("Already recording to " + recorder.getFile());
+        }
+        recorder = new CacheTraceRecorder(file, maxRecords);
+    }
+
+    /**
+     * Stops recording and returns the number of operations in the trace, 0 when not recording.
+     */
+    public synchronized long stopRecording() throws IOException {
+        CacheTraceRecorder stopped = recorder;
+        if (stopped == null) {
+            return 0;
+        }
+        recorder = null;
+        stopped.close();
+        return stopped.getRecordCount();
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    @Override
+    public void put(int key, String value) {
+        delegate.put(key, value);
+        recordPut(key, value);
+    }
+
+    @Override
+    public void put(int key, String value, Expiry expiry) {
+        delegate.put(key, value, expiry);
+        recordPut(key, value);
+    }
+
+    @Override
+    public String get(int key) {
+        return recordGet(key, delegate.get(key));
+    }
+
+    @Override
+    public void putBytes(int key, byte[] value) {
+        delegate.putBytes(key, value);
+        CacheTraceRecorder current = recorder;
+        if (current != null) {
+            current.record(CacheTrace.PUT, key, value.length);
+        }
+    }
+
+    @Override
+    public byte[] getBytes(int key) {
+        byte[] value = delegate.getBytes(key);
+        CacheTraceRecorder current = recorder;
+        if (current != null) {
+            if (value == null) {
+                current.record(CacheTrace.GET_MISS, key, -1);
+            } else {
+                current.record(CacheTrace.GET_HIT, key, value.length);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public String get(int key, ValueLoader loader) {
+        return recordGet(key, delegate.get(key, loader));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key, ValueLoader loader) {
+        return delegate.getAsync(key, loader).thenApply(value -> recordGet(key, value));
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(int key) {
+        return delegate.getAsync(key).thenApply(value -> recordGet(key, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(int key, String value) {
+        recordPut(key, value);
+        return delegate.putAsync(key, value);
+    }
+
+    @Override
+    public void putAll(Map<Integer, String> entries) {
+        delegate.putAll(entries);
+        if (recorder != null) {
+            entries.forEach(this::recordPut);
+        }
+    }
+
+    @Override
+    public Map<Integer, String> getAll(int[] keys) {
+        Map<Integer, String> values = delegate.getAll(keys);
+        if (recorder != null) {
+            for (int key : keys) {
+                recordGet(key, values.get(key));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String removeValueFromCache(int key) {
+        String value = delegate.removeValueFromCache(key);
+        CacheTraceRecorder current = recorder;
+        if (current != null) {
+            current.record(CacheTrace.REMOVE, key, value == null ? -1 : utf8Length(value));
+        }
+        return value;
+    }
+
+    @Override
+    public double getAverageTimeSpentAddingNewValues() {
+        return delegate.getAverageTimeSpentAddingNewValues();
+    }
+
+    @Override
+    public CacheMetrics getMetrics() {
+        return delegate.getMetrics();
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return delegate.getNumberOfEvictions();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return delegate.getNumberOfExpirations();
+    }
+
+    @Override
+    public void addEventListener(CacheEventListener listener) {
+        delegate.addEventListener(listener);
+    }
+
+    @Override
+    public void removeEventListener(CacheEventListener listener) {
+        delegate.removeEventListener(listener);
+    }
+
+    @Override
+    public void clearCache() {
+        delegate.clearCache();
+        CacheTraceRecorder current = recorder;
+        if (current != null) {
+            current.record(CacheTrace.CLEAR, 0, -1);
+        }
+    }
+
+    /**
+     * Stops recording, the cache itself belongs to whoever created it.
+     */
+    @Override
+    public void shutdown() {
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            LOG.warn("Could not close cache trace", e);
+        }
+    }
+
+    private String recordGet(int key, String value) {
+        CacheTraceRecorder current = recorder;
+        if (current != null) {
+            if (value == null) {
+                current.record(CacheTrace.GET_MISS, key, -1);
+            } else {
+                current.record(CacheTrace.GET_HIT, key, utf8Length(value));
+            }
+        }
+        return value;
+    }
+
+    private void recordPut(int key, String value) {
+        CacheTraceRecorder current = recorder;
+        if (current != null) {
+            current.record(CacheTrace.PUT, key, value == null ? -1 : utf8Length(value));
+        }
+    }
+
+    /**
+     * Bytes the value takes in UTF-8, the length recorded for byte values too, counted without
+     * encoding it.
+     */
+    private static int utf8Length(String value) {
+        int length = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                // a surrogate pair takes 4 bytes for its 2 chars, anything else up there 3
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,236 @@
+package epam.training.service;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses cached values of at least a threshold size with raw DEFLATE at its fastest level,
+ * optionally primed with a preset dictionary of sequences the values have in common, see
+ * {@link #trainDictionary}. A value is only kept compressed when that saves at least an eighth of
+ * it. Compressed values start with their original length as an int32.
+ * <p>
+ * Also holds the statistics of the cache it is enabled on: hits on compressed and on raw entries,
+ * bytes before and after compression and the decompression latency in nanoseconds.
+ */
+public class ValueCompressor {
+
+    /**
+     * DEFLATE only looks back 32 KiB, a longer dictionary would never be referenced.
+     */
+    public static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+
+    private static final int HEADER_BYTES = 4;
+    private static final int SEQUENCE_BYTES = 16;
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final int threshold;
+    private final byte[] dictionary;
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    private final LongAdder compressedHits = new LongAdder();
+    private final LongAdder rawHits = new LongAdder();
+    private final LongAdder compressedValues = new LongAdder();
+    private final LongAdder incompressibleValues = new LongAdder();
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+    private final LongAdder bytesAfterCompression = new LongAdder();
+    private final Recorder decompressionRecorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram decompressionHistogram = new Histogram(SIGNIFICANT_DIGITS);
+
+    public ValueCompressor(int threshold) {
+        this(threshold, null);
+    }
+
+    public ValueCompressor(int threshold, byte[] dictionary) {
+        if (threshold <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Compression threshold must be above " + HEADER_BYTES + " bytes: " + threshold);
+        }
+        if (dictionary != null && dictionary.length > MAX_DICTIONARY_BYTES) {
+            dictionary = Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_BYTES, dictionary.length);
+        }
+        this.threshold = threshold;
+        this.dictionary = dictionary == null || dictionary.length == 0 ? null : dictionary;
+    }
+
+    /**
+     * Builds a dictionary from sample values: the 16 byte sequences found in the most samples, the
+     * most common ones last, where DEFLATE reaches them with the shortest distances. Sequences found
+     * in a single sample are left out. Every offset of every sample is counted, so a few hundred
+     * typical values are enough and a lot more only costs time.
+     */
+    public static byte[] trainDictionary(List<byte[]> samples, int maxBytes) {
+        Map<String, int[]> counts = new HashMap<>();
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int i = 0; i + SEQUENCE_BYTES <= sample.length; i++) {
+                // ISO-8859-1 maps every byte to one char, a cheap hashable copy of the sequence
+                String sequence = new String(sample, i, SEQUENCE_BYTES, StandardCharsets.ISO_8859_1);
+                int[] count = counts.computeIfAbsent(sequence, k -> new int[] { 0, -1 });
+                if (count[1] != s) {
+                    count[0]++;
+                    count[1] = s;
+                }
+            }
+        }
+        List<Map.Entry<String, int[]>> common = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            if (entry.getValue()[0] > 1) {
+                common.add(entry);
+            }
+        }
+        common.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+        int limit = Math.min(maxBytes, MAX_DICTIONARY_BYTES);
+        StringBuilder chosen = new StringBuilder();
+        List<String> sequences = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : common) {
+            if (chosen.length() + SEQUENCE_BYTES > limit) {
+                break;
+            }
+            // overlapping sequences of one repeated run are covered by the first one taken
+            if (chosen.indexOf(entry.getKey()) < 0) {
+                chosen.append(entry.getKey());
+                sequences.add(entry.getKey());
+            }
+        }
+        StringBuilder dictionary = new StringBuilder(chosen.length());
+        for (int i = sequences.size() - 1; i >= 0; i--) {
+            dictionary.append(sequences.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public boolean hasDictionary() {
+        return dictionary != null;
+    }
+
+    /**
+     * The compressed UTF-8 encoding of the value, null when it stays raw.
+     */
+    byte[] compress(String value) {
+        // a character takes one to three bytes, only strings that may reach the threshold are encoded
+        if (value == null || value.length() * 3L < threshold) {
+            return null;
+        }
+        return compress(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The compressed value, null when it is below the threshold or does not shrink enough.
+     */
+    public byte[] compress(byte[] value) {
+        if (value == null || value.length < threshold) {
+            return null;
+        }
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(value);
+        deflater.finish();
+        byte[] packed = new byte[value.length - value.length / 8];
+        ByteBuffer.wrap(packed).putInt(value.length);
+        int length = HEADER_BYTES;
+        while (!deflater.finished() && length < packed.length) {
+            length += deflater.deflate(packed, length, packed.length - length);
+        }
+        if (!deflater.finished()) {
+            incompressibleValues.increment();
+            return null;
+        }
+        compressedValues.increment();
+        bytesBeforeCompression.add(value.length);
+        bytesAfterCompression.add(length);
+        return Arrays.copyOf(packed, length);
+    }
+
+    public byte[] decompress(byte[] packed) {
+        long start = System.nanoTime();
+        byte[] value = new byte[ByteBuffer.wrap(packed).getInt()];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(packed, HEADER_BYTES, packed.length - HEADER_BYTES);
+        try {
+            int length = 0;
+            while (length < value.length) {
+                int inflated = inflater.inflate(value, length, value.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Compressed value ends after " + length + " of " + value.length + " bytes");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed value", e);
+        }
+        decompressionRecorder.recordValue(Math.max(System.nanoTime() - start, 0));
+        return value;
+    }
+
+    String decompressToString(byte[] packed) {
+        return new String(decompress(packed), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Counts a hit of the owning cache by the kind of entry that answered it.
+     */
+    void recordHit(boolean compressed) {
+        (compressed ? compressedHits : rawHits).increment();
+    }
+
+    public long getCompressedHitCount() {
+        return compressedHits.sum();
+    }
+
+    public long getRawHitCount() {
+        return rawHits.sum();
+    }
+
+    /**
+     * Values stored compressed, counting every write.
+     */
+    public long getCompressedValueCount() {
+        return compressedValues.sum();
+    }
+
+    /**
+     * Values at or above the threshold that were stored raw because they did not shrink enough.
+     */
+    public long getIncompressibleValueCount() {
+        return incompressibleValues.sum();
+    }
+
+    /**
+     * Compressed size over original size of the values stored compressed, 1 before there are any.
+     */
+    public double getCompressionRatio() {
+        long before = bytesBeforeCompression.sum();
+        return before == 0 ? 1.0 : (double) bytesAfterCompression.sum() / before;
+    }
+
+    public long getBytesSaved() {
+        return bytesBeforeCompression.sum() - bytesAfterCompression.sum();
+    }
+
+    public synchronized CacheMetrics.LatencySnapshot decompressionLatency() {
+        decompressionHistogram.add(decompressionRecorder.getIntervalHistogram());
+        return new CacheMetrics.LatencySnapshot(decompressionHistogram);
+    }
+}
@@ -0,0 +1,10 @@
+package epam.training.service;
+
+/**
+ * Source of values for read-through lookups, typically the backing database.
+ * Returning null means there is no value, nothing gets cached in that case.
+ */
+@FunctionalInterface
+public interface ValueLoader {
+    String load(int key);
+}
@@ -0,0 +1,21 @@
+package epam.training.service;
+
+/**
+ * A cache that tracks the estimated memory of its entries and can be bounded by it.
+ */
+public interface WeightedCache {
+    /**
+     * Estimated bytes held by the cached entries, see {@link EntryWeigher}.
+     */
+    long getWeightedSize();
+
+    /**
+     * Budget for {@link #getWeightedSize()}, 0 when only the entry count bounds the cache.
+     */
+    long getMaxBytes();
+
+    /**
+     * Bounds the cache by estimated bytes, evicting right away if it holds more. 0 removes the bound.
+     */
+    void setMaxBytes(long maxBytes);
+}
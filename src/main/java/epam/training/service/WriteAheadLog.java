@@ -0,0 +1,486 @@
+package epam.training.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of cache mutations split into numbered segment files. Request threads only queue
+ * their record, a single writer thread drains everything queued so far, writes it with one call and
+ * forces it to disk once for the whole batch, so concurrent writers share each fsync. Callers that
+ * need durability wait with {@link #awaitDurable(long)} after releasing their own locks.
+ * <p>
+ * Record layout, big-endian: int8 operation, int32 key, int32 value length (-1 without value),
+ * value bytes (UTF-8 for String values), int32 CRC32 of everything before it. When the number of finished segments reaches
+ * the limit the log is compacted on a thread of its own, so appends never wait for it: the cache
+ * state is saved as a checkpoint through a {@link CacheSnapshotStore} and the segments it covers
+ * are deleted. Boot replays the checkpoint,
+ * then the segments in order; a torn record at the end of the last segment is cut off.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final byte CLOSE = 0;
+    private static final int RECORD_OVERHEAD = 1 + Integer.BYTES * 3;
+    private static final int MAX_BATCH = 4096;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final CacheSnapshotStore checkpointStore;
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<>();
+    private final CRC32 crc = new CRC32();
+    private final Queue<DurabilityWaiter> waiters = new PriorityQueue<>();
+    private long lastSequence;
+    private long durableSequence;
+    private IOException failure;
+    private Target target;
+    private Thread writer;
+    private Thread compaction;
+    private FileChannel segment;
+    private long segmentIndex;
+    private long segmentSize;
+    private int finishedSegments;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    public WriteAheadLog(Path directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public WriteAheadLog(Path directory, long segmentBytes, int maxSegments) {
+        if (segmentBytes <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("Segment size and count must be positive");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.checkpointStore = new CacheSnapshotStore(directory.resolve("checkpoint.snapshot"));
+    }
+
+    /**
+     * The cache a log replays into and takes its checkpoints from.
+     */
+    interface Target extends SnapshotCache {
+        void put(int key, String value);
+
+        void putBytes(int key, byte[] value);
+
+        String removeValueFromCache(int key);
+
+        void clearCache();
+    }
+
+    /**
+     * Replays the checkpoint and segments into the target, then starts appending to a fresh segment.
+     */
+    synchronized void start(Target target) throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("Write-ahead log in " + directory + " is already in use");
+        }
+        Files.createDirectories(directory);
+        this.target = target;
+        checkpointStore.load().ifPresent(target::restore);
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            replay(segments.get(i), i == segments.size() - 1);
+        }
+        finishedSegments = segments.size();
+        segmentIndex = segments.isEmpty() ? 0 : indexOf(segments.get(segments.size() - 1)) + 1;
+        openSegment();
+        writer = new Thread(this::writeLoop, "cache-wal-" + directory.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public long appendPut(int key, String value) {
+        return append(new Record(PUT, key, value, null));
+    }
+
+    /**
+     * Logs a value stored as bytes, the array is written as is on the writer thread.
+     */
+    public long appendPut(int key, byte[] value) {
+        return append(new Record(PUT, key, null, value));
+    }
+
+    public long appendRemove(int key) {
+        return append(new Record(REMOVE, key, null, null));
+    }
+
+    public long appendClear() {
+        return append(new Record(CLEAR, 0, null, null));
+    }
+
+    /**
+     * Blocks until the record with the given sequence, and all before it, have been forced to disk.
+     */
+    public synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        while (durableSequence < sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (durableSequence < sequence) {
+            throw new UncheckedIOException("Write-ahead log in " + directory + " failed", failure);
+        }
+    }
+
+    /**
+     * Non-blocking {@link #awaitDurable(long)}: the future completes on the writer thread right after
+     * the batch holding the record has been forced, dependent actions should be short.
+     */
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (durableSequence < sequence && failure == null) {
+                waiters.add(new DurabilityWaiter(sequence, future));
+                return future;
+            }
+        }
+        complete(future, sequence);
+        return future;
+    }
+
+    /**
+     * Writes what is queued, then stops the writer thread and closes the current segment. A
+     * compaction put off while the previous one was still running is done before returning.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            thread = writer;
+        }
+        if (thread == null) {
+            return;
+        }
+        awaitDurable(append(new Record(CLOSE, 0, null, null)));
+        Thread compacting;
+        try {
+            thread.join();
+            synchronized (this) {
+                compacting = compaction;
+            }
+            if (compacting != null) {
+                compacting.join();
+            }
+            // compactions skipped while the previous one still ran are caught up on here
+            if (finishedSegments >= maxSegments) {
+                finishedSegments = 0;
+                compact(segmentIndex);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            writer = null;
+            compaction = null;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private long append(Record record) {
+        synchronized (pending) {
+            synchronized (this) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log in " + directory + " failed", failure);
+                }
+                if (writer == null) {
+                    throw new IllegalStateException("Write-ahead log in " + directory + " is not started");
+                }
+            }
+            record.sequence = ++lastSequence;
+            pending.add(record);
+            return record.sequence;
+        }
+    }
+
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.clear();
+                batch.add(pending.take());
+                pending.drainTo(batch, MAX_BATCH - 1);
+                boolean closing = false;
+                for (Record record : batch) {
+                    if (record.operation == CLOSE) {
+                        closing = true;
+                    } else {
+                        encode(record);
+                    }
+                }
+                flushBuffer();
+                segment.force(false);
+                markDurable(batch.get(batch.size() - 1).sequence);
+                if (closing) {
+                    segment.close();
+                    return;
+                }
+                if (segmentSize >= segmentBytes) {
+                    rollSegment();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("Write-ahead log writer interrupted", e));
+        }
+    }
+
+    private void encode(Record record) throws IOException {
+        byte[] bytes = record.value == null ? record.bytes : record.value.getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_OVERHEAD + (bytes == null ? 0 : bytes.length);
+        if (buffer.remaining() < size) {
+            flushBuffer();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(size);
+            }
+        }
+        int start = buffer.position();
+        buffer.put(record.operation).putInt(record.key).putInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.put(bytes);
+        }
+        ByteBuffer written = buffer.duplicate();
+        written.position(start).limit(buffer.position());
+        crc.reset();
+        crc.update(written);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentSize += segment.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Starts a new segment and starts a compaction once enough finished ones have piled up, unless
+     * the previous one is still running. The snapshot is taken after the switch, so it covers every
+     * record of the finished segments.
+     */
+    private void rollSegment() throws IOException {
+        segment.close();
+        finishedSegments++;
+        segmentIndex++;
+        openSegment();
+        synchronized (this) {
+            if (finishedSegments < maxSegments || compaction != null && compaction.isAlive()) {
+                return;
+            }
+            long covered = segmentIndex;
+            compaction = new Thread(() -> compact(covered), "cache-wal-compaction-" + directory.getFileName());
+            compaction.setDaemon(true);
+            compaction.start();
+        }
+        finishedSegments = 0;
+    }
+
+    /**
+     * Saves the checkpoint, then deletes the segments before {@code covered}. A failure fails the
+     * log as a failed write would.
+     */
+    private void compact(long covered) {
+        try {
+            checkpointStore.save(target.snapshot());
+            for (Path finished : segments()) {
+                if (indexOf(finished) < covered) {
+                    Files.delete(finished);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentSize = 0;
+    }
+
+    private void replay(Path file, boolean last) throws IOException {
+        long valid = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                while (records.hasRemaining()) {
+                    int start = records.position();
+                    byte operation = records.get();
+                    int key = records.getInt();
+                    int length = records.getInt();
+                    if (length > records.remaining()) {
+                        break;
+                    }
+                    byte[] bytes = length < 0 ? null : new byte[length];
+                    if (length > 0) {
+                        records.get(bytes);
+                    }
+                    ByteBuffer written = records.duplicate();
+                    written.position(start).limit(records.position());
+                    crc.reset();
+                    crc.update(written);
+                    if (records.getInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    apply(operation, key, bytes);
+                    valid = records.position();
+                }
+            } catch (BufferUnderflowException e) {
+                // torn record, handled below
+            }
+            if (valid < size) {
+                if (!last) {
+                    throw new IOException("Corrupt record at offset " + valid + " of " + file);
+                }
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    /**
+     * Puts are replayed as bytes, whether the value was logged as a String or as bytes.
+     */
+    private void apply(byte operation, int key, byte[] value) throws IOException {
+        switch (operation) {
+            case PUT:
+                if (value == null) {
+                    target.put(key, null);
+                } else {
+                    target.putBytes(key, value);
+                }
+                break;
+            case REMOVE:
+                target.removeValueFromCache(key);
+                break;
+            case CLEAR:
+                target.clearCache();
+                break;
+            default:
+                throw new IOException("Unknown operation " + operation + " in " + directory);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        segments.sort((left, right) -> Long.compare(indexOf(left), indexOf(right)));
+        return segments;
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void markDurable(long sequence) {
+        List<DurabilityWaiter> durable = new ArrayList<>();
+        synchronized (this) {
+            durableSequence = sequence;
+            notifyAll();
+            while (!waiters.isEmpty() && waiters.peek().sequence <= sequence) {
+                durable.add(waiters.poll());
+            }
+        }
+        for (DurabilityWaiter waiter : durable) {
+            waiter.future.complete(null);
+        }
+    }
+
+    private void fail(IOException e) {
+        List<DurabilityWaiter> failed;
+        synchronized (this) {
+            failure = e;
+            notifyAll();
+            failed = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (DurabilityWaiter waiter : failed) {
+            complete(waiter.future, waiter.sequence);
+        }
+    }
+
+    private void complete(CompletableFuture<Void> future, long sequence) {
+        IOException cause;
+        synchronized (this) {
+            if (durableSequence >= sequence) {
+                cause = null;
+            } else {
+                cause = failure;
+            }
+        }
+        if (cause == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(new UncheckedIOException("Write-ahead log in " + directory + " failed", cause));
+        }
+    }
+
+    private static final class DurabilityWaiter implements Comparable<DurabilityWaiter> {
+        private final long sequence;
+        private final CompletableFuture<Void> future;
+
+        private DurabilityWaiter(long sequence, CompletableFuture<Void> future) {
+            this.sequence = sequence;
+            this.future = future;
+        }
+
+        @Override
+        public int compareTo(DurabilityWaiter other) {
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Record {
+        private final byte operation;
+        private final int key;
+        private final String value;
+        private final byte[] bytes;
+        private long sequence;
+
+        private Record(byte operation, int key, String value, byte[] bytes) {
+            this.operation = operation;
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
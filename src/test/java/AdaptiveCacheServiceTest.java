@@ -0,0 +1,154 @@
+import epam.training.service.AdaptiveCacheService;
+import epam.training.service.CacheService;
+import epam.training.service.Expiry;
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import epam.training.service.PolicySimulator;
+import epam.training.service.TinyLFUCacheService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class AdaptiveCacheServiceTest {
+    AdaptiveCacheService adaptiveCacheService;
+
+    @BeforeAll
+    public void init() {
+        adaptiveCacheService = new AdaptiveCacheService(100, policies(), "lru", 1.0, 3_600_000, false);
+    }
+
+    @AfterEach
+    public void clearCache() {
+        adaptiveCacheService.clearCache();
+    }
+
+    @AfterAll
+    public void shutdown() {
+        adaptiveCacheService.shutdown();
+    }
+
+    @Test
+    public void simulatorPrefersLfuWhenScansFlushHotKeys() {
+        PolicySimulator simulator = new PolicySimulator(policies(), new int[]{100}, 1.0);
+        replayHotKeysWithScan(simulator::recordGet, 20_000);
+        simulator.rollWindow();
+        assertEquals("lfu", simulator.getBestPolicy(100));
+        assertTrue(simulator.getHitRate("lfu", 100) > simulator.getHitRate("lru", 100) + 0.1);
+        simulator.shutdown();
+    }
+
+    @Test
+    public void missRatioFallsWithCapacity() {
+        PolicySimulator simulator = new PolicySimulator(policies(), new int[]{10, 100, 1000}, 1.0);
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            simulator.recordGet((int) Math.abs(random.nextGaussian() * 300));
+        }
+        simulator.rollWindow();
+        double[] missRatios = simulator.getCurves().get("lru").getMissRatios();
+        assertTrue(missRatios[0] > missRatios[1] && missRatios[1] > missRatios[2]);
+        assertEquals(1, simulator.getCurves().get("lfu").getRecentHitRates().size());
+        simulator.shutdown();
+    }
+
+    @Test
+    public void sampledSimulationTracksTheFullOne() {
+        PolicySimulator full = new PolicySimulator(policies(), new int[]{1000}, 1.0);
+        PolicySimulator sampled = new PolicySimulator(policies(), new int[]{1000}, 0.1);
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            int key = (int) Math.abs(random.nextGaussian() * 2000);
+            full.recordGet(key);
+            sampled.recordGet(key);
+        }
+        full.rollWindow();
+        sampled.rollWindow();
+        assertEquals(full.getHitRate("lru", 1000), sampled.getHitRate("lru", 1000), 0.05);
+        full.shutdown();
+        sampled.shutdown();
+    }
+
+    @Test
+    public void switchingPolicyKeepsTheEntries() {
+        for (int i = 0; i < 50; i++) {
+            adaptiveCacheService.put(i, "item" + i);
+        }
+        adaptiveCacheService.switchPolicy("lfu");
+        assertEquals("lfu", adaptiveCacheService.getPolicy());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("item" + i, adaptiveCacheService.get(i));
+        }
+        adaptiveCacheService.switchPolicy("lru");
+        assertEquals("item7", adaptiveCacheService.get(7));
+        assertThrows(IllegalArgumentException.class, () -> adaptiveCacheService.switchPolicy("fifo"));
+    }
+
+    @Test
+    public void expiringPutsKeepWorkingAcrossSwitches() throws InterruptedException {
+        Map<String, IntFunction<CacheService>> policies = policies();
+        policies.put("tinylfu", capacity -> new TinyLFUCacheService(capacity, 60000));
+        AdaptiveCacheService cache = new AdaptiveCacheService(100, policies, "lru", 1.0, 3_600_000, false);
+        cache.put(1, "item1", Expiry.afterWrite(1000));
+        cache.put(2, "item2");
+        cache.switchPolicy("lfu");
+        cache.switchPolicy("tinylfu");
+        cache.put(3, "item3", Expiry.afterWrite(1000));
+        assertEquals("item1", cache.get(1));
+        assertEquals("item3", cache.get(3));
+        Thread.sleep(1200);
+        assertNull(cache.get(1));
+        assertNull(cache.get(3));
+        assertEquals("item2", cache.get(2));
+        cache.shutdown();
+    }
+
+    @Test
+    public void automaticSwitchFollowsTheSimulator() {
+        AdaptiveCacheService cache = new AdaptiveCacheService(100, policies(), "lru", 1.0, 3_600_000, true);
+        replayHotKeysWithScan(key -> {
+            if (cache.get(key) == null) {
+                cache.put(key, "item" + key);
+            }
+        }, 20_000);
+        cache.evaluate();
+        assertEquals("lfu", cache.getPolicy());
+        assertEquals(1, cache.getNumberOfSwitches());
+        cache.evaluate();
+        assertEquals(1, cache.getNumberOfSwitches());
+        cache.shutdown();
+    }
+
+    /**
+     * 50 hot keys are used a few times, then every fourth access goes to one of them and the rest
+     * scan keys that are never seen again.
+     */
+    private static void replayHotKeysWithScan(IntConsumer access, int count) {
+        for (int i = 0; i < 200; i++) {
+            access.accept(i % 50);
+        }
+        for (int i = 0; i < count; i++) {
+            access.accept(i % 4 == 0 ? (i / 4) % 50 : 1000 + i);
+        }
+    }
+
+    private static Map<String, IntFunction<CacheService>> policies() {
+        Map<String, IntFunction<CacheService>> policies = new LinkedHashMap<>();
+        policies.put("lru", capacity -> new LRUCacheService(capacity, 60000));
+        policies.put("lfu", capacity -> new LFUCacheService(capacity, 60000));
+        return policies;
+    }
+}
@@ -0,0 +1,224 @@
+import epam.training.server.BinaryCacheServer;
+import epam.training.server.BinaryProtocol;
+import epam.training.service.CacheService;
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class BinaryCacheServerTest {
+
+    LRUCacheService lruCacheService;
+    LFUCacheService lfuCacheService;
+    BinaryCacheServer server;
+
+    @BeforeAll
+    public void init() throws IOException {
+        lruCacheService = new LRUCacheService(1000, 5000);
+        lfuCacheService = new LFUCacheService(1000, 5000);
+        List<CacheService> caches = Arrays.asList(lruCacheService, lfuCacheService);
+        server = new BinaryCacheServer(new InetSocketAddress("127.0.0.1", 0), 2, caches);
+        server.start();
+    }
+
+    @AfterEach
+    public void clearCache() {
+        lruCacheService.clearCache();
+        lfuCacheService.clearCache();
+    }
+
+    @AfterAll
+    public void stopServer() throws IOException {
+        server.close();
+        lfuCacheService.shutdown();
+    }
+
+    @Test
+    public void pipelinedRequestsAnswerInOrder() throws IOException {
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(requests);
+            writeRequest(output, BinaryProtocol.SET, BinaryProtocol.CACHE_LFU, 1, 1, "item1");
+            writeRequest(output, BinaryProtocol.SET, BinaryProtocol.CACHE_LFU, 2, 2, "item2");
+            writeRequest(output, BinaryProtocol.GET, BinaryProtocol.CACHE_LFU, 3, 1, null);
+            writeRequest(output, BinaryProtocol.GET, BinaryProtocol.CACHE_LFU, 4, 3, null);
+            writeRequest(output, BinaryProtocol.DELETE, BinaryProtocol.CACHE_LFU, 5, 2, null);
+            writeRequest(output, BinaryProtocol.GET, BinaryProtocol.CACHE_LFU, 6, 2, null);
+            writeRequest(output, BinaryProtocol.NOOP, BinaryProtocol.CACHE_LFU, 7, 0, null);
+            socket.getOutputStream().write(requests.toByteArray());
+
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            byte[] expectedStatuses = {BinaryProtocol.STATUS_OK, BinaryProtocol.STATUS_OK, BinaryProtocol.STATUS_OK,
+                    BinaryProtocol.STATUS_NOT_FOUND, BinaryProtocol.STATUS_OK, BinaryProtocol.STATUS_NOT_FOUND,
+                    BinaryProtocol.STATUS_OK};
+            for (int i = 0; i < expectedStatuses.length; i++) {
+                Response response = readResponse(input);
+                assertEquals(i + 1, response.opaque);
+                assertEquals(expectedStatuses[i], response.status);
+                assertEquals(i == 2 ? "item1" : null, response.value);
+            }
+        }
+        assertEquals("item1", lfuCacheService.get(1));
+        assertNull(lfuCacheService.get(2));
+    }
+
+    @Test
+    public void largeValuesSurviveSplitWrites() throws IOException {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            large.append(i % 2 == 0 ? 'x' : '\u20ac');
+        }
+        try (Socket socket = connect()) {
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(requests);
+            writeRequest(output, BinaryProtocol.SET, BinaryProtocol.CACHE_LRU, 1, 7, large.toString());
+            writeRequest(output, BinaryProtocol.GET, BinaryProtocol.CACHE_LRU, 2, 7, null);
+            byte[] bytes = requests.toByteArray();
+            for (int offset = 0; offset < bytes.length; offset += 7919) {
+                socket.getOutputStream().write(bytes, offset, Math.min(7919, bytes.length - offset));
+                socket.getOutputStream().flush();
+            }
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            assertEquals(BinaryProtocol.STATUS_OK, readResponse(input).status);
+            Response response = readResponse(input);
+            assertEquals(2, response.opaque);
+            assertEquals(large.toString(), response.value);
+        }
+    }
+
+    @Test
+    public void pipelinedGetsOfLargeValuesResumeAfterBackpressure() throws IOException {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+        lruCacheService.put(7, large.toString());
+        try (Socket socket = connect()) {
+            // far more output than the server queues for a connection before it stops decoding
+            ByteArrayOutputStream requests = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(requests);
+            for (int i = 0; i < 200; i++) {
+                writeRequest(output, BinaryProtocol.GET, BinaryProtocol.CACHE_LRU, i, 7, null);
+            }
+            socket.getOutputStream().write(requests.toByteArray());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < 200; i++) {
+                Response response = readResponse(input);
+                assertEquals(i, response.opaque);
+                assertEquals(large.toString(), response.value);
+            }
+        }
+    }
+
+    @Test
+    public void unknownCacheAndCommandAreReported() throws IOException {
+        try (Socket socket = connect()) {
+            DataOutputStream output = output(socket);
+            writeRequest(output, BinaryProtocol.GET, (byte) 9, 1, 1, null);
+            writeRequest(output, (byte) 0x7f, BinaryProtocol.CACHE_LRU, 2, 1, null);
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            assertEquals(BinaryProtocol.STATUS_UNKNOWN_CACHE, readResponse(input).status);
+            assertEquals(BinaryProtocol.STATUS_UNKNOWN_COMMAND, readResponse(input).status);
+        }
+    }
+
+    @Test
+    public void invalidMagicClosesConnection() throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(new byte[BinaryProtocol.HEADER_BYTES]);
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void manyConnectionsAreServedConcurrently() throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 500; i++) {
+                Socket socket = connect();
+                sockets.add(socket);
+                writeRequest(output(socket), BinaryProtocol.SET,
+                        BinaryProtocol.CACHE_LFU, i, i, "item" + i);
+            }
+            for (int i = 0; i < sockets.size(); i++) {
+                Socket socket = sockets.get(i);
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                assertEquals(BinaryProtocol.STATUS_OK, readResponse(input).status);
+                writeRequest(output(socket), BinaryProtocol.GET,
+                        BinaryProtocol.CACHE_LFU, i, i, null);
+                assertEquals("item" + i, readResponse(input).value);
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(10000);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    private static DataOutputStream output(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    private static void writeRequest(DataOutputStream output, byte opcode, byte cacheId, int opaque, int key,
+                                     String value) throws IOException {
+        byte[] body = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        output.writeByte(BinaryProtocol.REQUEST_MAGIC);
+        output.writeByte(opcode);
+        output.writeByte(cacheId);
+        output.writeByte(0);
+        output.writeInt(opaque);
+        output.writeInt(key);
+        output.writeInt(body.length);
+        output.write(body);
+        output.flush();
+    }
+
+    private static Response readResponse(DataInputStream input) throws IOException {
+        assertEquals(BinaryProtocol.RESPONSE_MAGIC, input.readByte());
+        input.readByte();
+        Response response = new Response();
+        response.status = input.readByte();
+        input.readByte();
+        response.opaque = input.readInt();
+        input.readInt();
+        int length = input.readInt();
+        if (length > 0) {
+            byte[] body = new byte[length];
+            input.readFully(body);
+            response.value = new String(body, StandardCharsets.UTF_8);
+        }
+        return response;
+    }
+
+    private static final class Response {
+        byte status;
+        int opaque;
+        String value;
+    }
+}
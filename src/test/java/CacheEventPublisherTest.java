@@ -0,0 +1,123 @@
+import epam.training.service.CacheEventListener;
+import epam.training.service.CacheEventPublisher;
+import epam.training.service.CacheEventType;
+import epam.training.service.LoggingCacheEventListener;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CacheEventPublisherTest {
+
+    @Test
+    public void eventsAreDeliveredInPublishOrder() {
+        CacheEventPublisher publisher = new CacheEventPublisher(8);
+        List<String> events = new ArrayList<>();
+        publisher.addListener((type, key, value) -> events.add(type + " " + key + " " + value));
+        publisher.publish(CacheEventType.MISS, 1, null);
+        publisher.publish(CacheEventType.EVICTION, 2, "item2");
+        publisher.publish(CacheEventType.REMOVAL, 3, "item3");
+        publisher.shutdown();
+        assertEquals(Arrays.asList("MISS 1 null", "EVICTION 2 item2", "REMOVAL 3 item3"), events);
+    }
+
+    @Test
+    public void fullRingDropsAndReportsEvents() {
+        CacheEventPublisher publisher = new CacheEventPublisher(4);
+        List<Integer> keys = new ArrayList<>();
+        AtomicLong dropped = new AtomicLong();
+        publisher.addListener(new CacheEventListener() {
+            @Override
+            public void onEvent(CacheEventType type, int key, String value) {
+                keys.add(key);
+            }
+
+            @Override
+            public void onDropped(long count) {
+                dropped.addAndGet(count);
+            }
+        });
+        publisher.shutdown();
+        for (int key = 0; key < 10; key++) {
+            publisher.publish(CacheEventType.MISS, key, null);
+        }
+        assertEquals(4, publisher.drain());
+        assertEquals(Arrays.asList(0, 1, 2, 3), keys);
+        assertEquals(6, dropped.get());
+        assertEquals(6, publisher.getDroppedEvents());
+        publisher.publish(CacheEventType.MISS, 10, null);
+        assertEquals(1, publisher.drain());
+        assertEquals(6, dropped.get());
+    }
+
+    @Test
+    public void nothingIsRecordedWithoutListeners() {
+        CacheEventPublisher publisher = new CacheEventPublisher(4);
+        for (int key = 0; key < 10; key++) {
+            publisher.publish(CacheEventType.MISS, key, null);
+        }
+        assertEquals(0, publisher.drain());
+        assertEquals(0, publisher.getDroppedEvents());
+    }
+
+    @Test
+    public void concurrentProducersLoseNoEventsWhileRingHasRoom() throws Exception {
+        int threads = 8;
+        int eventsPerThread = 1000;
+        CacheEventPublisher publisher = new CacheEventPublisher(1 << 14);
+        AtomicLong keySum = new AtomicLong();
+        publisher.addListener((type, key, value) -> keySum.addAndGet(key));
+        CyclicBarrier gate = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    gate.await();
+                    for (int key = 1; key <= eventsPerThread; key++) {
+                        publisher.publish(CacheEventType.MISS, key, null);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        publisher.shutdown();
+        assertEquals(0, publisher.getDroppedEvents());
+        assertEquals((long) threads * eventsPerThread * (eventsPerThread + 1) / 2, keySum.get());
+    }
+
+    @Test
+    public void loggingListenerSamplesAndSummarizes() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LoggingCacheEventListener listener = new LoggingCacheEventListener("lfu", 2, 0, new PrintStream(output));
+        listener.onEvent(CacheEventType.EVICTION, 1, "item1");
+        listener.onEvent(CacheEventType.EVICTION, 2, "item2");
+        listener.onEvent(CacheEventType.MISS, 3, null);
+        listener.onDropped(5);
+        listener.flush();
+        String[] lines = output.toString().trim().split("\\R");
+        assertEquals(2, lines.length);
+        assertEquals("cache=lfu event=EVICTION key=2 value=item2", lines[0]);
+        assertTrue(lines[1].startsWith("cache=lfu period_ms="));
+        assertTrue(lines[1].endsWith("miss=1 eviction=2 expiration=0 removal=0 write=0 dropped=5"));
+    }
+
+    @Test
+    public void capacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new CacheEventPublisher(6));
+    }
+}
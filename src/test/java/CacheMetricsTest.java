@@ -0,0 +1,64 @@
+import epam.training.service.CacheMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CacheMetricsTest {
+    CacheMetrics metrics;
+
+    @BeforeAll
+    public void init() {
+        metrics = new CacheMetrics();
+    }
+
+    @AfterEach
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    @Test
+    public void percentilesFollowRecordedLatencies() {
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordPut(i * 1_000L);
+        }
+        CacheMetrics.LatencySnapshot snapshot = metrics.snapshot(CacheMetrics.Operation.PUT);
+        assertEquals(100, snapshot.getCount());
+        assertWithinOnePercent(50_000L, snapshot.getP50());
+        assertWithinOnePercent(99_000L, snapshot.getP99());
+        assertWithinOnePercent(100_000L, snapshot.getMax());
+        assertWithinOnePercent(0.0505, metrics.getAveragePutTimeMillis());
+    }
+
+    @Test
+    public void snapshotsAccumulateUntilReset() {
+        metrics.recordEviction(10_000L);
+        assertEquals(1, metrics.snapshot(CacheMetrics.Operation.EVICTION).getCount());
+        metrics.recordEviction(20_000L);
+        assertEquals(2, metrics.snapshot(CacheMetrics.Operation.EVICTION).getCount());
+        metrics.reset();
+        assertEquals(0, metrics.snapshot(CacheMetrics.Operation.EVICTION).getCount());
+        assertEquals(0.0, metrics.getAveragePutTimeMillis());
+    }
+
+    @Test
+    public void batchesCountEveryKey() {
+        metrics.recordGets(10, 4, 100_000L);
+        metrics.recordPuts(5, 50_000L);
+        assertEquals(4, metrics.getHitCount());
+        assertEquals(6, metrics.getMissCount());
+        assertEquals(0.4, metrics.getHitRate());
+        assertEquals(10, metrics.snapshot(CacheMetrics.Operation.GET).getCount());
+        assertWithinOnePercent(10_000L, metrics.snapshot(CacheMetrics.Operation.GET).getP50());
+        assertEquals(5, metrics.snapshot(CacheMetrics.Operation.PUT).getCount());
+    }
+
+    private static void assertWithinOnePercent(double expected, double actual) {
+        assertTrue(Math.abs(expected - actual) <= expected * 0.01,
+                "expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,128 @@
+import epam.training.service.CacheSnapshot;
+import epam.training.service.CacheSnapshotStore;
+import epam.training.service.LFUCacheService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CacheSnapshotStoreTest {
+    Path directory;
+
+    @BeforeAll
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("cache-snapshots");
+    }
+
+    @Test
+    public void saveAndLoadSnapshot() throws IOException {
+        CacheSnapshot snapshot = new CacheSnapshot(1234L, 1);
+        snapshot.add(1, "item1", 3, 5000L);
+        snapshot.add(2, "\u00e9t\u00e9-\u20ac2", 1, 0L);
+        snapshot.add(3, null, 7, 6000L);
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            large.append('x');
+        }
+        snapshot.add(4, large.toString(), 2, 7000L);
+        CacheSnapshotStore store = new CacheSnapshotStore(directory.resolve("round-trip.snapshot"));
+        store.save(snapshot);
+
+        CacheSnapshot loaded = store.load().get();
+        assertEquals(1234L, loaded.getCreatedAt());
+        assertEquals(4, loaded.size());
+        assertEquals(1, loaded.getKey(0));
+        assertEquals("item1", loaded.getValue(0));
+        assertEquals(3, loaded.getFrequency(0));
+        assertEquals(5000L, loaded.getExpirationTime(0));
+        assertEquals("\u00e9t\u00e9-\u20ac2", loaded.getValue(1));
+        assertEquals(0L, loaded.getExpirationTime(1));
+        assertNull(loaded.getValue(2));
+        assertEquals(7, loaded.getFrequency(2));
+        assertEquals(large.toString(), loaded.getValue(3));
+        assertFalse(Files.exists(directory.resolve("round-trip.snapshot.tmp")));
+    }
+
+    @Test
+    public void missingSnapshotIsEmpty() throws IOException {
+        assertFalse(new CacheSnapshotStore(directory.resolve("missing.snapshot")).load().isPresent());
+    }
+
+    @Test
+    public void corruptSnapshotIsRejected() throws IOException {
+        Path file = directory.resolve("corrupt.snapshot");
+        CacheSnapshot snapshot = new CacheSnapshot(0L, 1);
+        snapshot.add(1, "item1", 1, 0L);
+        CacheSnapshotStore store = new CacheSnapshotStore(file);
+        store.save(snapshot);
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] truncated = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        Files.write(file, truncated);
+        assertThrows(IOException.class, store::load);
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+        assertThrows(IOException.class, store::load);
+    }
+
+    @Test
+    public void warmRestartRestoresSavedEntries() throws IOException {
+        Path file = directory.resolve("lfu.snapshot");
+        LFUCacheService cache = new LFUCacheService(4, 60000);
+        cache.enableSnapshots(new CacheSnapshotStore(file), 60000);
+        cache.put(1, "item1");
+        cache.put(2, "item2");
+        cache.shutdown();
+        assertTrue(Files.exists(file));
+
+        LFUCacheService restarted = new LFUCacheService(4, 60000);
+        assertEquals(2, restarted.enableSnapshots(new CacheSnapshotStore(file), 60000));
+        assertEquals("item1", restarted.get(1));
+        assertEquals("item2", restarted.get(2));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void snapshotsLargerThanABatchKeepTheEvictionOrder() {
+        LFUCacheService cache = new LFUCacheService(1000, 60000);
+        for (int key = 0; key < 600; key++) {
+            cache.put(key, "item" + key);
+        }
+        cache.get(0);
+        CacheSnapshot snapshot = cache.snapshot();
+        assertEquals(600, snapshot.size());
+        assertEquals(1, snapshot.getKey(0));
+        assertEquals(0, snapshot.getKey(599));
+        assertEquals("item0", snapshot.getValue(599));
+        cache.shutdown();
+    }
+
+    @Test
+    public void snapshotsAreSavedPeriodically() throws IOException, InterruptedException {
+        Path file = directory.resolve("periodic.snapshot");
+        LFUCacheService cache = new LFUCacheService(4, 60000);
+        cache.enableSnapshots(new CacheSnapshotStore(file), 50);
+        cache.put(1, "item1");
+        Thread.sleep(300);
+        assertEquals("item1", new CacheSnapshotStore(file).load().get().getValue(0));
+        cache.shutdown();
+    }
+
+    @Test
+    public void unreadableSnapshotStartsCold() throws IOException {
+        Path file = directory.resolve("garbage.snapshot");
+        Files.write(file, new byte[]{1, 2, 3});
+        LFUCacheService cache = new LFUCacheService(4, 60000);
+        assertEquals(0, cache.enableSnapshots(new CacheSnapshotStore(file), 60000));
+        cache.shutdown();
+    }
+}
@@ -0,0 +1,157 @@
+import epam.training.service.CacheTrace;
+import epam.training.service.CacheTraceRecorder;
+import epam.training.service.LFUCacheService;
+import epam.training.service.TracingCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class CacheTraceTest {
+    Path directory;
+    TracingCacheService tracingCacheService;
+
+    @BeforeAll
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("cache-trace");
+        tracingCacheService = new TracingCacheService(new LFUCacheService(4, 5000));
+    }
+
+    @AfterEach
+    public void clearCache() throws IOException {
+        tracingCacheService.stopRecording();
+        tracingCacheService.clearCache();
+    }
+
+    @Test
+    public void recordsOperationsInOrder() throws IOException {
+        Path file = directory.resolve("ops.trace");
+        tracingCacheService.put(1, "before");
+        tracingCacheService.startRecording(file, 100);
+        tracingCacheService.put(1, "item1");
+        tracingCacheService.get(1);
+        tracingCacheService.get(2);
+        tracingCacheService.removeValueFromCache(1);
+        Map<Integer, String> items = new LinkedHashMap<>();
+        items.put(3, "item3");
+        tracingCacheService.putAll(items);
+        tracingCacheService.clearCache();
+        assertEquals(6, tracingCacheService.stopRecording());
+        tracingCacheService.put(5, "after");
+
+        CacheTrace trace = CacheTrace.load(file);
+        assertEquals(6, trace.size());
+        byte[] operations = {CacheTrace.PUT, CacheTrace.GET_HIT, CacheTrace.GET_MISS, CacheTrace.REMOVE,
+                CacheTrace.PUT, CacheTrace.CLEAR};
+        int[] keys = {1, 1, 2, 1, 3, 0};
+        int[] lengths = {5, 5, -1, 5, 5, -1};
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(operations[i], trace.getOperation(i));
+            assertEquals(keys[i], trace.getKey(i));
+            assertEquals(lengths[i], trace.getValueLength(i));
+        }
+        assertTrue(trace.getNanoTime(5) >= trace.getNanoTime(0));
+    }
+
+    @Test
+    public void stringAndByteValuesRecordTheirUtf8Length() throws IOException {
+        Path file = directory.resolve("lengths.trace");
+        String value = "\u00e9t\u00e9-\u20ac-\ud83d\ude00";
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        tracingCacheService.startRecording(file, 10);
+        tracingCacheService.put(1, value);
+        tracingCacheService.putBytes(2, bytes);
+        tracingCacheService.stopRecording();
+        CacheTrace trace = CacheTrace.load(file);
+        assertEquals(bytes.length, trace.getValueLength(0));
+        assertEquals(bytes.length, trace.getValueLength(1));
+    }
+
+    @Test
+    public void operationsBeyondCapacityAreDropped() throws IOException {
+        Path file = directory.resolve("full.trace");
+        tracingCacheService.startRecording(file, 3);
+        for (int i = 0; i < 10; i++) {
+            tracingCacheService.get(i);
+        }
+        assertEquals(3, tracingCacheService.stopRecording());
+        assertEquals(3, CacheTrace.load(file).size());
+        assertFalse(tracingCacheService.isRecording());
+    }
+
+    @Test
+    public void concurrentRecordingKeepsEveryOperation() throws Exception {
+        Path file = directory.resolve("concurrent.trace");
+        tracingCacheService.startRecording(file, 100_000);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    tracingCacheService.get(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        tracingCacheService.stopRecording();
+        CacheTrace trace = CacheTrace.load(file);
+        assertEquals(8000, trace.size());
+        long keySum = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            keySum += trace.getKey(i);
+        }
+        assertEquals(8L * 999 * 1000 / 2, keySum);
+    }
+
+    @Test
+    public void recordingTwiceIsRejected() throws IOException {
+        tracingCacheService.startRecording(directory.resolve("twice.trace"), 10);
+        assertThrows(IllegalStateException.class,
+                () -> tracingCacheService.startRecording(directory.resolve("other.trace"), 10));
+    }
+
+    @Test
+    public void existingFilesAreNotOverwritten() throws IOException {
+        Path file = directory.resolve("existing.trace");
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(FileAlreadyExistsException.class, () -> tracingCacheService.startRecording(file, 10));
+        assertFalse(tracingCacheService.isRecording());
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void traceFileNamesStayInTheDirectory() {
+        assertEquals(directory.toAbsolutePath().normalize().resolve("ops.trace"),
+                CacheTraceRecorder.resolve(directory, "ops.trace"));
+        for (String name : new String[] {"", ".", "..", "../ops.trace", "sub/ops.trace", "sub/../ops.trace", "/etc/passwd"}) {
+            assertThrows(IllegalArgumentException.class, () -> CacheTraceRecorder.resolve(directory, name), name);
+        }
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        Path file = directory.resolve("not-a.trace");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> CacheTrace.load(file));
+    }
+}
@@ -0,0 +1,86 @@
+import epam.training.service.HotKey;
+import epam.training.service.HotKeyTracker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.Thread.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class HotKeyTrackerTest {
+    HotKeyTracker tracker;
+
+    @BeforeAll
+    public void init() {
+        tracker = new HotKeyTracker(3, 60000);
+    }
+
+    @AfterEach
+    public void shutdownTrackers() {
+        tracker.shutdown();
+        tracker = new HotKeyTracker(3, 60000);
+    }
+
+    @Test
+    public void heavyHittersAreReportedFirst() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            tracker.recordAccess(random.nextInt(5000) + 100);
+            if (i % 4 == 0) {
+                tracker.recordAccess(1);
+            }
+            if (i % 8 == 0) {
+                tracker.recordAccess(2);
+            }
+            if (i % 16 == 0) {
+                tracker.recordAccess(3);
+            }
+        }
+        List<HotKey> hotKeys = tracker.currentWindow().getHotKeys();
+        assertEquals(3, hotKeys.size());
+        assertEquals(1, hotKeys.get(0).getKey());
+        assertEquals(2, hotKeys.get(1).getKey());
+        assertEquals(3, hotKeys.get(2).getKey());
+        assertTrue(hotKeys.get(0).getCount() - hotKeys.get(0).getError() <= 2500);
+        assertTrue(hotKeys.get(0).getCount() >= 2500);
+        assertEquals(10000 + 2500 + 1250 + 625, tracker.currentWindow().getAccessCount());
+    }
+
+    @Test
+    public void missesAreReportedApart() {
+        tracker.recordAccess(1);
+        tracker.recordAccess(2);
+        tracker.recordMiss(2);
+        HotKeyTracker.Window window = tracker.currentWindow();
+        assertEquals(2, window.getAccessCount());
+        assertEquals(1, window.getMissCount());
+        assertEquals(2, window.getHotMisses().get(0).getKey());
+    }
+
+    @Test
+    public void completedWindowIsKeptAfterRotation() throws InterruptedException {
+        HotKeyTracker shortWindow = new HotKeyTracker(3, 100);
+        assertNull(shortWindow.lastWindow());
+        shortWindow.recordAccess(7);
+        sleep(150);
+        HotKeyTracker.Window last = shortWindow.lastWindow();
+        assertNotNull(last);
+        assertEquals(7, last.getHotKeys().get(0).getKey());
+        assertEquals(0, shortWindow.currentWindow().getAccessCount());
+        shortWindow.shutdown();
+    }
+
+    @Test
+    public void invalidSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new HotKeyTracker(0, 1000));
+    }
+}
@@ -1,17 +1,39 @@
+import epam.training.service.CacheEventListener;
+import epam.training.service.CacheEventType;
+import epam.training.service.CacheMetrics;
+import epam.training.service.CacheResize;
+import epam.training.service.CacheSnapshot;
+import epam.training.service.Expiry;
+import epam.training.service.HotKeyTracker;
 import epam.training.service.LFUCacheService;
+import epam.training.service.ValueCompressor;
+import epam.training.service.ValueLoader;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Thread.sleep;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class LFUCacheServiceTest {
@@ -35,6 +57,33 @@ public class LFUCacheServiceTest {
         assertEquals("item1",lfuCacheService.get(1));
     }
 
+    @Test
+    public void putAllAndGetAllItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        items.put(1, "item1");
+        items.put(2, "item2");
+        items.put(3, "item3");
+        lfuCacheService.putAll(items);
+        Map<Integer, String> found = lfuCacheService.getAll(new int[]{3, 7, 1});
+        assertEquals(2, found.size());
+        assertEquals("item3", found.get(3));
+        assertEquals("item1", found.get(1));
+        assertEquals(Arrays.asList(3, 1), new ArrayList<>(found.keySet()));
+    }
+
+    @Test
+    public void putAllEvictsItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        for (int i = 1; i <= 6; i++) {
+            items.put(i, "item" + i);
+        }
+        lfuCacheService.putAll(items);
+        Map<Integer, String> found = lfuCacheService.getAll(new int[]{1, 2, 3, 4, 5, 6});
+        assertEquals(4, found.size());
+        assertEquals("item6", found.get(6));
+        assertEquals(2, lfuCacheService.getNumberOfEvictions());
+    }
+
     @Test
     public void deleteItemEvictionPolicy()
     {
@@ -61,27 +110,119 @@ public class LFUCacheServiceTest {
         assertEquals("item5", lfuCacheService.get(5));
     }
 
+    @Test
+    public void deleteItemEvictionPolicyOldestAmongEqualFrequencies()
+    {
+        lfuCacheService.put(1,"item1");
+        lfuCacheService.put(2,"item2");
+        lfuCacheService.put(3,"item3");
+        lfuCacheService.put(4,"item4");
+        lfuCacheService.get(2);
+        lfuCacheService.get(1);
+        lfuCacheService.put(5,"item5");
+        lfuCacheService.put(6,"item6");
+        lfuCacheService.put(7,"item7");
+        assertNull(lfuCacheService.get(3));
+        assertNull(lfuCacheService.get(4));
+        assertNull(lfuCacheService.get(5));
+        assertEquals("item1", lfuCacheService.get(1));
+        assertEquals("item2", lfuCacheService.get(2));
+        assertEquals("item6", lfuCacheService.get(6));
+        assertEquals("item7", lfuCacheService.get(7));
+    }
+
+    @Test
+    public void deleteItemEvictionPolicyFollowsPromotionOrder()
+    {
+        lfuCacheService.put(1,"item1");
+        lfuCacheService.put(2,"item2");
+        lfuCacheService.put(3,"item3");
+        lfuCacheService.put(4,"item4");
+        lfuCacheService.get(2);
+        lfuCacheService.get(1);
+        lfuCacheService.get(3);
+        lfuCacheService.get(4);
+        lfuCacheService.put(5,"item5");
+        assertNull(lfuCacheService.get(2));
+        lfuCacheService.put(6,"item6");
+        assertNull(lfuCacheService.get(5));
+        lfuCacheService.get(6);
+        lfuCacheService.put(7,"item7");
+        assertNull(lfuCacheService.get(1));
+        assertEquals("item3", lfuCacheService.get(3));
+        assertEquals(3, lfuCacheService.getNumberOfEvictions());
+    }
+
+    @Test
+    public void updateExistingItemCountsAsUse()
+    {
+        lfuCacheService.put(1,"item1");
+        lfuCacheService.put(2,"item2");
+        lfuCacheService.put(3,"item3");
+        lfuCacheService.put(4,"item4");
+        lfuCacheService.put(1,"item1-updated");
+        lfuCacheService.put(5,"item5");
+        assertNull(lfuCacheService.get(2));
+        assertEquals("item1-updated", lfuCacheService.get(1));
+    }
+
+    @Test
+    public void removeItemFromCache()
+    {
+        lfuCacheService.put(1,"item1");
+        lfuCacheService.put(2,"item2");
+        lfuCacheService.get(1);
+        assertEquals("item1", lfuCacheService.removeValueFromCache(1));
+        assertNull(lfuCacheService.removeValueFromCache(1));
+        assertNull(lfuCacheService.get(1));
+        assertEquals("item2", lfuCacheService.get(2));
+    }
+
     @Test
     public void deleteItemCheckTimeEviction() throws InterruptedException {
-        ByteArrayOutputStream outputStreamCaptor = new ByteArrayOutputStream();
-        System.setOut(new PrintStream(outputStreamCaptor));
+        List<String> events = new CopyOnWriteArrayList<>();
+        CacheEventListener listener = (type, key, value) -> {
+            if (type != CacheEventType.WRITE) {
+                events.add(type + " " + key + " " + value);
+            }
+        };
+        lfuCacheService.addEventListener(listener);
         lfuCacheService.put(1,"item1");
         sleep(15000);
-        assertEquals("Removing entity: key = 1 value = item1",
-                outputStreamCaptor.toString()
-                        .trim());
+        lfuCacheService.removeEventListener(listener);
+        assertEquals(Collections.singletonList("EXPIRATION 1 item1"), events);
         assertNull(lfuCacheService.get(1));
     }
 
     @Test
-    public void deleteItemCheckLogOutput()
+    public void expiredItemsAreCountedSeparately() throws InterruptedException {
+        LFUCacheService shortLivedCache = new LFUCacheService(2, 200);
+        shortLivedCache.put(1,"item1");
+        shortLivedCache.put(2,"item2");
+        shortLivedCache.put(3,"item3");
+        sleep(600);
+        assertNull(shortLivedCache.get(3));
+        assertEquals(1, shortLivedCache.getNumberOfEvictions());
+        assertEquals(2, shortLivedCache.getNumberOfExpirations());
+        shortLivedCache.shutdown();
+    }
+
+    @Test
+    public void deleteItemPublishesEvictionEvent() throws InterruptedException
     {
-        ByteArrayOutputStream outputStreamCaptor = new ByteArrayOutputStream();
-        System.setOut(new PrintStream(outputStreamCaptor));
+        List<String> evictions = new CopyOnWriteArrayList<>();
+        CountDownLatch evicted = new CountDownLatch(1);
+        CacheEventListener listener = (type, key, value) -> {
+            if (type == CacheEventType.EVICTION) {
+                evictions.add(key + " " + value);
+                evicted.countDown();
+            }
+        };
+        lfuCacheService.addEventListener(listener);
         fillCache();
-        assertEquals("Removing entity: key = 1 value = item1",
-                outputStreamCaptor.toString()
-                        .trim());
+        assertTrue(evicted.await(1, TimeUnit.SECONDS));
+        lfuCacheService.removeEventListener(listener);
+        assertEquals(Collections.singletonList("1 item1"), evictions);
     }
 
     @Test
@@ -90,7 +231,8 @@ public class LFUCacheServiceTest {
         fillCache();
         Double averageTime = lfuCacheService.getAverageTimeSpentAddingNewValues();
         assertNotNull(averageTime);
-        assertEquals(0.0, averageTime);
+        assertTrue(averageTime > 0.0);
+        assertTrue(averageTime < 1000.0);
     }
 
     @Test
@@ -100,6 +242,21 @@ public class LFUCacheServiceTest {
         assertEquals(1,lfuCacheService.getNumberOfEvictions());
     }
 
+    @Test
+    public void checkStatisticHitRate() {
+        lfuCacheService.put(1, "item1");
+        lfuCacheService.get(1);
+        lfuCacheService.get(1);
+        lfuCacheService.get(1);
+        lfuCacheService.get(2);
+        CacheMetrics metrics = lfuCacheService.getMetrics();
+        assertEquals(3, metrics.getHitCount());
+        assertEquals(1, metrics.getMissCount());
+        assertEquals(0.75, metrics.getHitRate());
+        assertEquals(4, metrics.snapshot(CacheMetrics.Operation.GET).getCount());
+        assertEquals(1, metrics.snapshot(CacheMetrics.Operation.PUT).getCount());
+    }
+
     @Test
     public void checkConcurrency() throws Exception {
         CyclicBarrier gate = new CyclicBarrier(4);
@@ -152,5 +309,354 @@ public class LFUCacheServiceTest {
         lfuCacheService.put(4,"item4");
         lfuCacheService.put(5,"item5");
     }
-}
 
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    barrier.await();
+                    String value = lfuCacheService.get(1, key -> {
+                        loads.incrementAndGet();
+                        try {
+                            sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "item" + key;
+                    });
+                    synchronized (results) {
+                        results.add(value);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads, results.size());
+        assertTrue(results.stream().allMatch("item1"::equals));
+        assertEquals("item1", lfuCacheService.get(1));
+    }
+
+    @Test
+    public void getAsyncLoadsAndCachesItem() throws Exception {
+        assertEquals("item2", lfuCacheService.getAsync(2, key -> "item" + key).get());
+        assertEquals("item2", lfuCacheService.get(2));
+        assertEquals("item2", lfuCacheService.getAsync(2, key -> {
+            throw new IllegalStateException("cached value expected");
+        }).get());
+    }
+
+    @Test
+    public void getAsyncLoadsOnTheCacheExecutor() throws Exception {
+        assertTrue(lfuCacheService.getAsync(5, key -> Thread.currentThread().getName()).get()
+                .startsWith("cache-async-"));
+    }
+
+    @Test
+    public void nullLoadedValueIsNotCached() {
+        assertNull(lfuCacheService.get(3, key -> null));
+        assertNull(lfuCacheService.get(3));
+    }
+
+    @Test
+    public void loaderFailurePropagates() {
+        assertThrows(IllegalStateException.class, () -> lfuCacheService.get(4, key -> {
+            throw new IllegalStateException("backing store down");
+        }));
+        assertEquals("item4", lfuCacheService.get(4, key -> "item" + key));
+    }
+
+    @Test
+    public void expireAfterWriteIgnoresReads() throws InterruptedException {
+        lfuCacheService.put(1, "item1", Expiry.afterWrite(300));
+        lfuCacheService.put(2, "item2");
+        for (int i = 0; i < 6; i++) {
+            sleep(100);
+            lfuCacheService.get(1);
+        }
+        assertNull(lfuCacheService.get(1));
+        assertEquals("item2", lfuCacheService.get(2));
+        assertEquals(1, lfuCacheService.getNumberOfExpirations());
+    }
+
+    @Test
+    public void expireAfterAccessExtendsOnRead() throws InterruptedException {
+        lfuCacheService.put(1, "item1", Expiry.afterAccess(300));
+        lfuCacheService.put(2, "item2", Expiry.afterAccess(300));
+        for (int i = 0; i < 6; i++) {
+            sleep(100);
+            assertEquals("item1", lfuCacheService.get(1));
+        }
+        assertNull(lfuCacheService.get(2));
+    }
+
+    @Test
+    public void refreshAheadServesOldValueWhileReloading() throws Exception {
+        LFUCacheService refreshingCache = new LFUCacheService(4, 5000);
+        refreshingCache.setRefreshAheadRatio(0.5);
+        CountDownLatch reloading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ValueLoader loader = key -> {
+            loads.incrementAndGet();
+            reloading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "item" + key + "-reloaded";
+        };
+        refreshingCache.put(1, "item1", Expiry.afterWrite(400));
+        assertEquals("item1", refreshingCache.get(1, loader));
+        assertEquals(0, loads.get());
+        sleep(250);
+        assertEquals("item1", refreshingCache.get(1, loader));
+        assertTrue(reloading.await(5, TimeUnit.SECONDS));
+        assertEquals("item1", refreshingCache.get(1, loader));
+        release.countDown();
+        for (int i = 0; i < 50 && !"item1-reloaded".equals(refreshingCache.get(1)); i++) {
+            sleep(10);
+        }
+        sleep(250);
+        assertEquals("item1-reloaded", refreshingCache.get(1));
+        assertEquals(1, loads.get());
+        refreshingCache.shutdown();
+    }
+
+    @Test
+    public void snapshotRestoreKeepsUseCounts() {
+        fillCache();
+        lfuCacheService.get(2);
+        lfuCacheService.get(2);
+        lfuCacheService.get(3);
+        LFUCacheService restarted = new LFUCacheService(4, 5000);
+        assertEquals(4, restarted.restore(lfuCacheService.snapshot()));
+        restarted.put(6, "item6");
+        assertNull(restarted.get(4));
+        assertEquals("item5", restarted.get(5));
+        assertEquals("item2", restarted.get(2));
+        assertEquals("item3", restarted.get(3));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void bytesSurviveSnapshotRestore() {
+        byte[] payload = { (byte) 0xff, 0, (byte) 0xc3, 0x28 };
+        lfuCacheService.putBytes(1, payload);
+        lfuCacheService.put(2, "item2");
+        assertArrayEquals(payload, lfuCacheService.getBytes(1));
+        assertArrayEquals("item2".getBytes(StandardCharsets.UTF_8), lfuCacheService.getBytes(2));
+        LFUCacheService restarted = new LFUCacheService(4, 5000);
+        assertEquals(2, restarted.restore(lfuCacheService.snapshot()));
+        assertArrayEquals(payload, restarted.getBytes(1));
+        assertEquals("item2", restarted.get(2));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void snapshotRestoreSkipsExpiredItems() throws InterruptedException {
+        LFUCacheService shortLivedCache = new LFUCacheService(4, 100);
+        shortLivedCache.put(1, "item1");
+        CacheSnapshot snapshot = shortLivedCache.snapshot();
+        shortLivedCache.shutdown();
+        sleep(200);
+        LFUCacheService restarted = new LFUCacheService(4, 100);
+        assertEquals(0, restarted.restore(snapshot));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void largeValuesAreStoredCompressed() {
+        LFUCacheService compressingCache = new LFUCacheService(4, 5000);
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            json.append("{\"id\":").append(i).append(",\"status\":\"active\"},");
+        }
+        compressingCache.put(1, json.toString());
+        long rawWeight = compressingCache.getWeightedSize();
+        compressingCache.clearCache();
+        ValueCompressor compressor = new ValueCompressor(256);
+        compressingCache.enableCompression(compressor);
+        compressingCache.put(1, json.toString());
+        compressingCache.put(2, "item2");
+        assertTrue(compressingCache.getWeightedSize() < rawWeight);
+        assertEquals(json.toString(), compressingCache.get(1));
+        assertEquals("item2", compressingCache.get(2));
+        assertEquals(1, compressor.getCompressedHitCount());
+        assertEquals(1, compressor.getRawHitCount());
+        LFUCacheService restarted = new LFUCacheService(4, 5000);
+        assertEquals(2, restarted.restore(compressingCache.snapshot()));
+        assertEquals(json.toString(), restarted.get(1));
+        compressingCache.shutdown();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void hotKeysAndMissesAreTracked() {
+        LFUCacheService trackedCache = new LFUCacheService(4, 5000);
+        trackedCache.enableHotKeyTracking(new HotKeyTracker(2, 60000));
+        trackedCache.put(1, "item1");
+        for (int i = 0; i < 5; i++) {
+            trackedCache.get(1);
+            trackedCache.get(9);
+        }
+        trackedCache.get(2);
+        HotKeyTracker.Window window = trackedCache.getHotKeyTracker().currentWindow();
+        assertEquals(12, window.getAccessCount());
+        assertEquals(6, window.getMissCount());
+        assertEquals(1, window.getHotKeys().get(0).getKey());
+        assertEquals(9, window.getHotMisses().get(0).getKey());
+        trackedCache.shutdown();
+    }
+
+    @Test
+    public void resizeShrinksInBatchesAndKeepsFrequentEntries() throws InterruptedException {
+        LFUCacheService resizedCache = new LFUCacheService(1000, 5000);
+        for (int i = 0; i < 1000; i++) {
+            resizedCache.put(i, "item" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            resizedCache.get(i);
+        }
+        CacheResize resize = resizedCache.resize(100, 5000);
+        assertEquals(100, resizedCache.getCapacity());
+        assertEquals(1000, resize.getPreviousCapacity());
+        assertEquals(1.0, resize.getHitRateBefore());
+        for (int i = 0; i < 100 && !resize.isDone(); i++) {
+            sleep(50);
+        }
+        assertTrue(resize.isDone());
+        assertEquals(0, resize.getRemaining());
+        assertEquals(900, resizedCache.getNumberOfEvictions());
+        int[] keys = new int[1000];
+        Arrays.setAll(keys, i -> i);
+        assertEquals(100, resizedCache.getAll(keys).size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("item" + i, resizedCache.get(i));
+        }
+        resizedCache.get(999);
+        assertTrue(resize.getHitRateSince() < 1.0);
+        resizedCache.shutdown();
+    }
+
+    @Test
+    public void resizeAppliesTimeToLiveFromLastAccess() throws InterruptedException {
+        LFUCacheService resizedCache = new LFUCacheService(10, 60000);
+        resizedCache.put(1, "item1");
+        resizedCache.put(2, "item2", Expiry.afterAccess(60000));
+        sleep(200);
+        CacheResize resize = resizedCache.resize(10, 100);
+        for (int i = 0; i < 100 && !resize.isDone(); i++) {
+            sleep(50);
+        }
+        assertEquals(100, resizedCache.getTimeToLive());
+        assertNull(resizedCache.get(1));
+        assertEquals("item2", resizedCache.get(2));
+        resizedCache.put(3, "item3");
+        assertEquals("item3", resizedCache.get(3));
+        sleep(300);
+        assertNull(resizedCache.get(3));
+        resizedCache.shutdown();
+    }
+
+    @Test
+    public void resizeSpeedsUpTheCleanerForAShorterTimeToLive() throws InterruptedException {
+        LFUCacheService resizedCache = new LFUCacheService(10, 60000);
+        resizedCache.resize(10, 40);
+        resizedCache.put(1, "item1");
+        sleep(300);
+        // the cleaner expired the entry without a read
+        assertEquals(1, resizedCache.getNumberOfExpirations());
+        resizedCache.shutdown();
+    }
+
+    @Test
+    public void byteBudgetEvictsUntilWeightFits() {
+        LFUCacheService weightedCache = new LFUCacheService(100, 5000);
+        weightedCache.put(1, "item1");
+        long weight = weightedCache.getWeightedSize();
+        weightedCache.setMaxBytes(weight * 3);
+        weightedCache.put(2, "item2");
+        weightedCache.put(3, "item3");
+        weightedCache.get(1);
+        weightedCache.get(3);
+        weightedCache.put(4, "item4");
+        assertNull(weightedCache.get(2));
+        assertEquals(weight * 3, weightedCache.getWeightedSize());
+        weightedCache.put(5, "item5 with a value long enough to take the room of two others");
+        assertEquals(2, weightedCache.getAll(new int[]{1, 3, 4, 5}).size());
+        assertTrue(weightedCache.getWeightedSize() <= weight * 3);
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < weight * 3; i++) {
+            huge.append('x');
+        }
+        weightedCache.put(6, huge.toString());
+        assertNull(weightedCache.get(6));
+        assertNotNull(weightedCache.get(5));
+        weightedCache.shutdown();
+    }
+
+    @Test
+    public void asyncPutAndGetUnderContention() throws Exception {
+        List<CompletableFuture<String>> reads = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Void>> writes = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    writes.add(lfuCacheService.putAsync(i % 4, "item" + (i % 4)));
+                    reads.add(lfuCacheService.getAsync(i % 4));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<String> read : reads) {
+            String value = read.get(10, TimeUnit.SECONDS);
+            assertTrue(value == null || value.startsWith("item"));
+        }
+        for (int key = 0; key < 4; key++) {
+            assertEquals("item" + key, lfuCacheService.getAsync(key).get());
+        }
+    }
+
+    @Test
+    public void asyncLoadsUnderContention() throws Exception {
+        List<CompletableFuture<Boolean>> loads = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    int key = 200 + i % 8;
+                    lfuCacheService.putAsync(100 + i % 4, "item" + (100 + i % 4));
+                    loads.add(lfuCacheService.getAsync(key, k -> "item" + k).thenApply(("item" + key)::equals));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (CompletableFuture<Boolean> load : loads) {
+            assertTrue(load.get(10, TimeUnit.SECONDS));
+        }
+    }
+}
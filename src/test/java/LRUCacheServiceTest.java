@@ -1,18 +1,40 @@
+import epam.training.service.CacheEventListener;
+import epam.training.service.CacheEventType;
+import epam.training.service.CacheMetrics;
+import epam.training.service.CacheResize;
+import epam.training.service.Expiry;
+import epam.training.service.HotKeyTracker;
 import epam.training.service.LRUCacheService;
+import epam.training.service.OffHeapValueStore;
+import epam.training.service.ValueCompressor;
+import epam.training.service.ValueLoader;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static java.lang.Thread.sleep;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class LRUCacheServiceTest {
@@ -35,6 +57,33 @@ public class LRUCacheServiceTest {
         assertEquals("item1", lruCacheService.get(1));
     }
 
+    @Test
+    public void putAllAndGetAllItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        items.put(1, "item1");
+        items.put(2, "item2");
+        items.put(3, "item3");
+        lruCacheService.putAll(items);
+        Map<Integer, String> found = lruCacheService.getAll(new int[]{3, 7, 1});
+        assertEquals(2, found.size());
+        assertEquals("item3", found.get(3));
+        assertEquals("item1", found.get(1));
+        assertEquals(Arrays.asList(3, 1), new ArrayList<>(found.keySet()));
+    }
+
+    @Test
+    public void putAllEvictsItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        for (int i = 1; i <= 6; i++) {
+            items.put(i, "item" + i);
+        }
+        lruCacheService.putAll(items);
+        Map<Integer, String> found = lruCacheService.getAll(new int[]{1, 2, 3, 4, 5, 6});
+        assertEquals(4, found.size());
+        assertEquals("item6", found.get(6));
+        assertEquals(2, lruCacheService.getNumberOfEvictions());
+    }
+
     @Test
     public void deleteItemEvictionPolicy() {
         lruCacheService.put(1, "item1");
@@ -69,13 +118,20 @@ public class LRUCacheServiceTest {
     }
 
     @Test
-    public void deleteItemCheckLogOutput() {
-        ByteArrayOutputStream outputStreamCaptor = new ByteArrayOutputStream();
-        System.setOut(new PrintStream(outputStreamCaptor));
+    public void deleteItemPublishesEvictionEvent() throws InterruptedException {
+        List<String> evictions = new CopyOnWriteArrayList<>();
+        CountDownLatch evicted = new CountDownLatch(1);
+        CacheEventListener listener = (type, key, value) -> {
+            if (type == CacheEventType.EVICTION) {
+                evictions.add(key + " " + value);
+                evicted.countDown();
+            }
+        };
+        lruCacheService.addEventListener(listener);
         fillCache();
-        assertEquals("Key - 1 with value - item1 removed due to SIZE",
-                outputStreamCaptor.toString()
-                        .trim());
+        assertTrue(evicted.await(1, TimeUnit.SECONDS));
+        lruCacheService.removeEventListener(listener);
+        assertEquals(Collections.singletonList("1 item1"), evictions);
     }
 
     @Test
@@ -83,7 +139,8 @@ public class LRUCacheServiceTest {
         fillCache();
         Double averageTime = lruCacheService.getAverageTimeSpentAddingNewValues();
         assertNotNull(averageTime);
-        assertEquals(0.0, averageTime);
+        assertTrue(averageTime > 0.0);
+        assertTrue(averageTime < 1000.0);
     }
 
     @Test
@@ -98,6 +155,21 @@ public class LRUCacheServiceTest {
         assertEquals(1, lruCacheServiceForStats.getNumberOfEvictions());
     }
 
+    @Test
+    public void checkStatisticHitRate() {
+        lruCacheService.put(1, "item1");
+        lruCacheService.get(1);
+        lruCacheService.get(1);
+        lruCacheService.get(1);
+        lruCacheService.get(2);
+        CacheMetrics metrics = lruCacheService.getMetrics();
+        assertEquals(3, metrics.getHitCount());
+        assertEquals(1, metrics.getMissCount());
+        assertEquals(0.75, metrics.getHitRate());
+        assertEquals(4, metrics.snapshot(CacheMetrics.Operation.GET).getCount());
+        assertEquals(1, metrics.snapshot(CacheMetrics.Operation.PUT).getCount());
+    }
+
     @Test
     public void checkConcurrency() throws Exception {
         CyclicBarrier gate = new CyclicBarrier(4);
@@ -121,6 +193,33 @@ public class LRUCacheServiceTest {
         assertEquals("item3", lruCacheService.get(3));
     }
 
+    @Test
+    public void segmentedCacheStaysWithinCapacity() throws Exception {
+        LRUCacheService segmentedCache = new LRUCacheService(1000, 5000, 8);
+        assertEquals(8, segmentedCache.getConcurrencyLevel());
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t * 1000;
+            writers[t] = new Thread(() -> {
+                for (int key = offset; key < offset + 1000; key++) {
+                    segmentedCache.put(key, "item" + key);
+                    segmentedCache.get(key);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Map<Integer, String> entries = segmentedCache.getAll(IntStream.range(0, 4000).toArray());
+        int cached = entries.size();
+        assertTrue(cached <= 1000);
+        assertEquals(4000 - cached, segmentedCache.getNumberOfEvictions());
+        // which keys survive depends on how the writers interleave, not their values
+        entries.forEach((key, value) -> assertEquals("item" + key, value));
+        assertThrows(IllegalArgumentException.class, () -> new LRUCacheService(4, 5000, 0));
+    }
+
     class ConcurrentLRUTestThread extends Thread {
         private CyclicBarrier gate;
         private Integer key;
@@ -152,4 +251,339 @@ public class LRUCacheServiceTest {
         lruCacheService.put(4, "item4");
         lruCacheService.put(5, "item5");
     }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    barrier.await();
+                    String value = lruCacheService.get(1, key -> {
+                        loads.incrementAndGet();
+                        try {
+                            sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "item" + key;
+                    });
+                    synchronized (results) {
+                        results.add(value);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads, results.size());
+        assertTrue(results.stream().allMatch("item1"::equals));
+        assertEquals("item1", lruCacheService.get(1));
+    }
+
+    @Test
+    public void getAsyncLoadsAndCachesItem() throws Exception {
+        assertEquals("item2", lruCacheService.getAsync(2, key -> "item" + key).get());
+        assertEquals("item2", lruCacheService.get(2));
+        assertEquals("item2", lruCacheService.getAsync(2, key -> {
+            throw new IllegalStateException("cached value expected");
+        }).get());
+    }
+
+    @Test
+    public void nullLoadedValueIsNotCached() {
+        assertNull(lruCacheService.get(3, key -> null));
+        assertNull(lruCacheService.get(3));
+    }
+
+    @Test
+    public void loaderFailurePropagates() {
+        assertThrows(IllegalStateException.class, () -> lruCacheService.get(4, key -> {
+            throw new IllegalStateException("backing store down");
+        }));
+        assertEquals("item4", lruCacheService.get(4, key -> "item" + key));
+    }
+
+    @Test
+    public void expireAfterWriteIgnoresReads() throws InterruptedException {
+        lruCacheService.put(1, "item1", Expiry.afterWrite(300));
+        lruCacheService.put(2, "item2");
+        for (int i = 0; i < 6; i++) {
+            sleep(100);
+            lruCacheService.get(1);
+        }
+        assertNull(lruCacheService.get(1));
+        assertEquals("item2", lruCacheService.get(2));
+        assertEquals(1, lruCacheService.getNumberOfExpirations());
+    }
+
+    @Test
+    public void expireAfterAccessExtendsOnRead() throws InterruptedException {
+        lruCacheService.put(1, "item1", Expiry.afterAccess(300));
+        lruCacheService.put(2, "item2", Expiry.afterAccess(300));
+        for (int i = 0; i < 6; i++) {
+            sleep(100);
+            assertEquals("item1", lruCacheService.get(1));
+        }
+        assertNull(lruCacheService.get(2));
+    }
+
+    @Test
+    public void refreshAheadServesOldValueWhileReloading() throws Exception {
+        LRUCacheService refreshingCache = new LRUCacheService(4, 5000);
+        refreshingCache.setRefreshAheadRatio(0.5);
+        CountDownLatch reloading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ValueLoader loader = key -> {
+            loads.incrementAndGet();
+            reloading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "item" + key + "-reloaded";
+        };
+        refreshingCache.put(1, "item1", Expiry.afterWrite(400));
+        assertEquals("item1", refreshingCache.get(1, loader));
+        assertEquals(0, loads.get());
+        sleep(250);
+        assertEquals("item1", refreshingCache.get(1, loader));
+        assertTrue(reloading.await(5, TimeUnit.SECONDS));
+        assertEquals("item1", refreshingCache.get(1, loader));
+        release.countDown();
+        for (int i = 0; i < 50 && !"item1-reloaded".equals(refreshingCache.get(1)); i++) {
+            sleep(10);
+        }
+        sleep(250);
+        assertEquals("item1-reloaded", refreshingCache.get(1));
+        assertEquals(1, loads.get());
+        refreshingCache.shutdown();
+    }
+
+    @Test
+    public void bytesSurviveSnapshotRestore() {
+        byte[] payload = { (byte) 0xff, 0, (byte) 0xc3, 0x28 };
+        lruCacheService.putBytes(1, payload);
+        lruCacheService.put(2, "item2");
+        assertArrayEquals(payload, lruCacheService.getBytes(1));
+        assertArrayEquals("item2".getBytes(StandardCharsets.UTF_8), lruCacheService.getBytes(2));
+        LRUCacheService restarted = new LRUCacheService(4, 5000);
+        assertEquals(2, restarted.restore(lruCacheService.snapshot()));
+        assertArrayEquals(payload, restarted.getBytes(1));
+        assertEquals("item2", restarted.get(2));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void snapshotRestoreKeepsRecencyOrder() throws InterruptedException {
+        for (int i = 1; i <= 4; i++) {
+            lruCacheService.put(i, "item" + i);
+            sleep(5);
+        }
+        lruCacheService.get(1);
+        LRUCacheService restarted = new LRUCacheService(4, 5000);
+        assertEquals(4, restarted.restore(lruCacheService.snapshot()));
+        restarted.put(5, "item5");
+        assertNull(restarted.get(2));
+        assertEquals("item1", restarted.get(1));
+        assertEquals("item5", restarted.get(5));
+    }
+
+    @Test
+    public void largeValuesAreStoredCompressed() {
+        LRUCacheService compressingCache = new LRUCacheService(4, 5000);
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            json.append("{\"id\":").append(i).append(",\"status\":\"active\"},");
+        }
+        compressingCache.put(1, json.toString());
+        long rawWeight = compressingCache.getWeightedSize();
+        compressingCache.clearCache();
+        ValueCompressor compressor = new ValueCompressor(256);
+        compressingCache.enableCompression(compressor);
+        compressingCache.put(1, json.toString());
+        compressingCache.put(2, "item2");
+        assertTrue(compressingCache.getWeightedSize() < rawWeight);
+        assertEquals(json.toString(), compressingCache.get(1));
+        assertEquals("item2", compressingCache.get(2));
+        assertEquals(1, compressor.getCompressedHitCount());
+        assertEquals(1, compressor.getRawHitCount());
+        LRUCacheService restarted = new LRUCacheService(4, 5000);
+        assertEquals(2, restarted.restore(compressingCache.snapshot()));
+        assertEquals(json.toString(), restarted.get(1));
+        compressingCache.shutdown();
+        restarted.shutdown();
+    }
+
+    @Test
+    public void hotKeysAndMissesAreTracked() {
+        LRUCacheService trackedCache = new LRUCacheService(4, 5000);
+        trackedCache.enableHotKeyTracking(new HotKeyTracker(2, 60000));
+        trackedCache.put(1, "item1");
+        for (int i = 0; i < 5; i++) {
+            trackedCache.get(1);
+            trackedCache.get(9);
+        }
+        trackedCache.get(2);
+        HotKeyTracker.Window window = trackedCache.getHotKeyTracker().currentWindow();
+        assertEquals(12, window.getAccessCount());
+        assertEquals(6, window.getMissCount());
+        assertEquals(1, window.getHotKeys().get(0).getKey());
+        assertEquals(9, window.getHotMisses().get(0).getKey());
+        trackedCache.shutdown();
+    }
+
+    @Test
+    public void resizeMovesRecentEntriesAndEvictsTheRest() throws InterruptedException {
+        LRUCacheService resizedCache = new LRUCacheService(1000, 5000);
+        for (int i = 0; i < 1000; i++) {
+            resizedCache.put(i, String.format("item%04d", i));
+        }
+        long weight = resizedCache.getWeightedSize() / 1000;
+        for (int i = 0; i < 10; i++) {
+            sleep(1);
+            resizedCache.get(i);
+        }
+        CacheResize resize = resizedCache.resize(100, 5000);
+        assertEquals(100, resizedCache.getCapacity());
+        // served from the cache being drained, written to the new one
+        assertEquals("item0500", resizedCache.get(500));
+        resizedCache.put(5, "next0005");
+        for (int i = 0; i < 100 && !resize.isDone(); i++) {
+            sleep(50);
+        }
+        assertTrue(resize.isDone());
+        assertEquals(1.0, resize.getProgress());
+        assertEquals(900, resizedCache.getNumberOfEvictions());
+        assertEquals(100, resizedCache.getAll(IntStream.range(0, 1000).toArray()).size());
+        assertEquals(100 * weight, resizedCache.getWeightedSize());
+        assertEquals("next0005", resizedCache.get(5));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(resizedCache.get(i));
+        }
+        resizedCache.shutdown();
+    }
+
+    @Test
+    public void resizeAppliesTimeToLive() throws InterruptedException {
+        LRUCacheService resizedCache = new LRUCacheService(10, 60000);
+        resizedCache.put(1, "item1");
+        CacheResize resize = resizedCache.resize(10, 100);
+        for (int i = 0; i < 100 && !resize.isDone(); i++) {
+            sleep(50);
+        }
+        assertEquals(100, resizedCache.getTimeToLive());
+        assertEquals("item1", resizedCache.get(1));
+        resizedCache.put(2, "item2");
+        sleep(300);
+        assertNull(resizedCache.get(1));
+        assertNull(resizedCache.get(2));
+        resizedCache.shutdown();
+    }
+
+    @Test
+    public void writesAndRemovesSurviveConcurrentResizes() throws InterruptedException {
+        assertEquals(Collections.emptyList(), resizeWhileWriting(new LRUCacheService(1000, 60000)));
+        assertEquals(Collections.emptyList(),
+                resizeWhileWriting(new LRUCacheService(1000, 60000, new OffHeapValueStore())));
+        LRUCacheService compressingCache = new LRUCacheService(1000, 60000);
+        compressingCache.enableCompression(new ValueCompressor(64));
+        assertEquals(Collections.emptyList(), resizeWhileWriting(compressingCache));
+    }
+
+    /**
+     * Six writers put and remove keys of their own while the cache is resized every 3 ms, and
+     * returns what each writer found wrong reading its keys back.
+     */
+    private List<String> resizeWhileWriting(LRUCacheService resizedCache) throws InterruptedException {
+        List<String> errors = new CopyOnWriteArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+        char[] padding = new char[200];
+        Arrays.fill(padding, 'x');
+        for (int t = 0; t < 6; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    int key = thread + 6 * (i % 50);
+                    if (i % 7 == 0) {
+                        resizedCache.removeValueFromCache(key);
+                        if (resizedCache.get(key) != null) {
+                            errors.add("after remove key " + key + " still present");
+                        }
+                    } else {
+                        // compressible and raw values
+                        String value = key + "-" + i + (i % 2 == 0 ? new String(padding) : "");
+                        resizedCache.put(key, value);
+                        String read = resizedCache.get(key);
+                        if (!value.equals(read)) {
+                            errors.add("after put key " + key + " expected " + value + " got " + read);
+                        }
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        int capacity = 1000;
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            capacity = capacity == 1000 ? 2000 : 1000;
+            resizedCache.resize(capacity, 60000);
+            sleep(3);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        resizedCache.shutdown();
+        return errors;
+    }
+
+    @Test
+    public void byteBudgetEvictsUntilWeightFits() {
+        LRUCacheService weightedCache = new LRUCacheService(100, 5000);
+        weightedCache.put(1, "item1");
+        long weight = weightedCache.getWeightedSize();
+        weightedCache.setMaxBytes(weight * 3);
+        assertEquals("item1", weightedCache.get(1));
+        weightedCache.put(2, "item2");
+        weightedCache.put(3, "item3");
+        weightedCache.get(1);
+        weightedCache.put(4, "item4");
+        assertNull(weightedCache.get(2));
+        assertEquals(weight * 3, weightedCache.getWeightedSize());
+        weightedCache.put(1, "item1 with a value long enough to take the room of two others");
+        assertEquals(1, weightedCache.getAll(new int[]{3, 4}).size());
+        assertTrue(weightedCache.getWeightedSize() <= weight * 3);
+        weightedCache.shutdown();
+    }
+
+    @Test
+    public void byteBudgetChangeKeepsEntriesAndTheirExpiry() throws InterruptedException {
+        LRUCacheService weightedCache = new LRUCacheService(100, 5000);
+        List<CacheEventType> events = new CopyOnWriteArrayList<>();
+        weightedCache.addEventListener((type, key, value) -> events.add(type));
+        weightedCache.put(1, "item1", Expiry.afterWrite(300));
+        weightedCache.put(2, "item2");
+        events.clear();
+        weightedCache.setMaxBytes(1_000_000);
+        weightedCache.put(3, "item3");
+        assertEquals("item1", weightedCache.get(1));
+        assertEquals("item2", weightedCache.get(2));
+        assertEquals("item3", weightedCache.get(3));
+        assertTrue(events.stream().allMatch(type -> type == CacheEventType.WRITE));
+        sleep(400);
+        assertNull(weightedCache.get(1));
+        assertEquals("item2", weightedCache.get(2));
+        weightedCache.shutdown();
+    }
 }
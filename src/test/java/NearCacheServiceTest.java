@@ -0,0 +1,149 @@
+import epam.training.service.CacheEventListener;
+import epam.training.service.CacheEventType;
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import epam.training.service.NearCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.Thread.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class NearCacheServiceTest {
+    LFUCacheService lfuCacheService;
+    NearCacheService nearCacheService;
+
+    @BeforeAll
+    public void init() {
+        lfuCacheService = new LFUCacheService(4, 5000);
+        nearCacheService = new NearCacheService(lfuCacheService, 64);
+    }
+
+    @AfterEach
+    public void clearCache() {
+        nearCacheService.clearCache();
+    }
+
+    @Test
+    public void repeatedReadsAreServedByTheNearCache() {
+        nearCacheService.put(1, "item1");
+        assertEquals("item1", nearCacheService.get(1));
+        long sharedHits = lfuCacheService.getMetrics().getHitCount();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("item1", nearCacheService.get(1));
+        }
+        assertEquals(sharedHits, lfuCacheService.getMetrics().getHitCount());
+        assertEquals(10, nearCacheService.getNearHitCount());
+        assertEquals(11, nearCacheService.getMetrics().getHitCount());
+    }
+
+    @Test
+    public void loaderReadsCountHitsAndMisses() throws Exception {
+        long hits = nearCacheService.getMetrics().getHitCount();
+        long misses = nearCacheService.getMetrics().getMissCount();
+        assertNull(nearCacheService.get(7, key -> null));
+        assertNull(nearCacheService.getAsync(7, key -> null).get());
+        assertEquals("item7", nearCacheService.getAsync(7, key -> "item" + key).get());
+        assertEquals("item7", nearCacheService.getAsync(7, key -> "item" + key).get());
+        assertEquals(hits + 2, nearCacheService.getMetrics().getHitCount());
+        assertEquals(misses + 2, nearCacheService.getMetrics().getMissCount());
+    }
+
+    @Test
+    public void writesAndRemovalsInvalidateTheNearCopy() {
+        nearCacheService.put(1, "item1");
+        assertEquals("item1", nearCacheService.get(1));
+        nearCacheService.put(1, "item1b");
+        assertEquals("item1b", nearCacheService.get(1));
+        assertEquals("item1b", nearCacheService.removeValueFromCache(1));
+        assertNull(nearCacheService.get(1));
+    }
+
+    @Test
+    public void getAllCombinesNearAndSharedHits() throws InterruptedException {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        items.put(1, "item1");
+        items.put(2, "item2");
+        items.put(3, "item3");
+        CountDownLatch written = new CountDownLatch(items.size());
+        CacheEventListener listener = (type, key, value) -> {
+            if (type == CacheEventType.WRITE) {
+                written.countDown();
+            }
+        };
+        lfuCacheService.addEventListener(listener);
+        nearCacheService.putAll(items);
+        // the write events invalidate near copies, let them arrive before one is installed
+        assertTrue(written.await(1, TimeUnit.SECONDS));
+        lfuCacheService.removeEventListener(listener);
+        nearCacheService.get(2);
+        Map<Integer, String> found = nearCacheService.getAll(new int[]{3, 7, 2, 1});
+        assertEquals(Arrays.asList(3, 2, 1), new ArrayList<>(found.keySet()));
+        assertEquals("item2", found.get(2));
+        assertEquals(1, nearCacheService.getNearHitCount());
+    }
+
+    @Test
+    public void sharedCacheEventsInvalidateOtherNearCaches() throws InterruptedException {
+        LRUCacheService shared = new LRUCacheService(100, 60000);
+        NearCacheService first = new NearCacheService(shared, 64);
+        NearCacheService second = new NearCacheService(shared, 64);
+        first.put(1, "item1");
+        assertEquals("item1", second.get(1));
+        first.put(1, "item1b");
+        assertTrue(awaitValue(second, 1, "item1b"));
+        shared.removeValueFromCache(1);
+        assertTrue(awaitValue(second, 1, null));
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void concurrentWritesNeverLeaveStaleCopies() throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    nearCacheService.get(1);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+        for (int i = 0; i < 10_000; i++) {
+            nearCacheService.put(1, "item" + i);
+            assertEquals("item" + i, nearCacheService.get(1));
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals("item9999", nearCacheService.get(1));
+    }
+
+    private static boolean awaitValue(NearCacheService cache, int key, String expected) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            String value = cache.get(key);
+            if (expected == null ? value == null : expected.equals(value)) {
+                return true;
+            }
+            sleep(10);
+        }
+        return false;
+    }
+}
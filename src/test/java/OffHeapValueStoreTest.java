@@ -0,0 +1,237 @@
+import epam.training.service.CacheResize;
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import epam.training.service.OffHeapValueStore;
+import epam.training.service.ValueCompressor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OffHeapValueStoreTest {
+    OffHeapValueStore valueStore;
+
+    @BeforeAll
+    public void init() {
+        valueStore = new OffHeapValueStore(1024);
+    }
+
+    @AfterEach
+    public void clearStore() {
+        valueStore.clear();
+    }
+
+    @Test
+    public void addAndGetNewItemInStore() {
+        valueStore.put(1, "item1");
+        valueStore.put(2, "\u00e9t\u00e9-\u20ac2");
+        valueStore.put(3, "");
+        assertEquals("item1", valueStore.get(1));
+        assertEquals("\u00e9t\u00e9-\u20ac2", valueStore.get(2));
+        assertEquals("", valueStore.get(3));
+        assertNull(valueStore.get(4));
+        assertEquals(3, valueStore.size());
+    }
+
+    @Test
+    public void replaceItemWithDifferentSize() {
+        valueStore.put(1, "item1");
+        valueStore.put(1, repeat('a', 300));
+        assertEquals(repeat('a', 300), valueStore.get(1));
+        valueStore.put(1, repeat('b', 5000));
+        assertEquals(repeat('b', 5000), valueStore.get(1));
+        valueStore.put(1, repeat('c', 6000));
+        assertEquals(repeat('c', 6000), valueStore.get(1));
+        assertEquals(1, valueStore.size());
+        assertEquals(6000, valueStore.getOffHeapBytesUsed());
+    }
+
+    @Test
+    public void removeItemReleasesLargeBuffers() {
+        valueStore.put(1, "item1");
+        long smallValueFootprint = valueStore.getOffHeapBytesAllocated();
+        valueStore.put(2, repeat('x', 4096));
+        assertEquals(smallValueFootprint + 4096, valueStore.getOffHeapBytesAllocated());
+        assertEquals(repeat('x', 4096), valueStore.remove(2));
+        assertEquals(smallValueFootprint, valueStore.getOffHeapBytesAllocated());
+        assertEquals(5, valueStore.getOffHeapBytesUsed());
+        assertNull(valueStore.remove(2));
+    }
+
+    @Test
+    public void freedChunksAreReused() {
+        for (int i = 0; i < 64; i++) {
+            valueStore.put(i, "item" + i);
+        }
+        long allocated = valueStore.getOffHeapBytesAllocated();
+        for (int i = 0; i < 64; i++) {
+            valueStore.remove(i);
+        }
+        for (int i = 64; i < 128; i++) {
+            valueStore.put(i, "item" + i);
+        }
+        assertEquals(allocated, valueStore.getOffHeapBytesAllocated());
+    }
+
+    @Test
+    public void storeMatchesHashMapUnderChurn() {
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), valueStore.remove(key));
+            } else {
+                String value = repeat((char) ('a' + random.nextInt(26)), random.nextInt(100));
+                expected.put(key, value);
+                valueStore.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), valueStore.size());
+        for (int key = -1000; key < 1000; key++) {
+            assertEquals(expected.get(key), valueStore.get(key));
+        }
+    }
+
+    @Test
+    public void lfuCacheServiceKeepsValuesOffHeap() {
+        OffHeapValueStore lfuValueStore = new OffHeapValueStore();
+        LFUCacheService lfuCacheService = new LFUCacheService(2, 5000, lfuValueStore);
+        lfuCacheService.put(1, "item1");
+        lfuCacheService.put(2, "item2");
+        lfuCacheService.get(1);
+        lfuCacheService.put(3, "item3");
+        assertNull(lfuCacheService.get(2));
+        assertEquals("item1", lfuCacheService.get(1));
+        assertEquals("item3", lfuCacheService.get(3));
+        assertEquals(2, lfuValueStore.size());
+        assertTrue(lfuCacheService.getOffHeapBytesAllocated() > 0);
+        lfuCacheService.shutdown();
+    }
+
+    @Test
+    public void lruCacheServiceKeepsValuesOffHeap() {
+        OffHeapValueStore lruValueStore = new OffHeapValueStore();
+        LRUCacheService lruCacheService = new LRUCacheService(2, 5000, lruValueStore);
+        lruCacheService.put(1, "item1");
+        lruCacheService.put(2, "item2");
+        lruCacheService.get(1);
+        lruCacheService.put(3, "item3");
+        lruCacheService.put(3, "item3-updated");
+        assertNull(lruCacheService.get(2));
+        assertEquals("item1", lruCacheService.get(1));
+        assertEquals("item3-updated", lruCacheService.get(3));
+        assertEquals(2, lruValueStore.size());
+        assertTrue(lruCacheService.getOffHeapBytesAllocated() > 0);
+    }
+
+    @Test
+    public void staleStampsNeitherReadNorRemoveNewerValues() {
+        long first = valueStore.put(1, "item1");
+        long second = valueStore.put(1, "item1-updated");
+        assertTrue(second > first);
+        assertNull(valueStore.getBytes(1, first));
+        assertNull(valueStore.removeBytes(1, first));
+        assertEquals("item1-updated", new String(valueStore.getBytes(1, second), StandardCharsets.UTF_8));
+        assertEquals("item1-updated", new String(valueStore.removeBytes(1, second), StandardCharsets.UTF_8));
+        assertEquals(0, valueStore.size());
+    }
+
+    @Test
+    public void lruConcurrentWritesKeepOffHeapValuesInSync() throws InterruptedException {
+        OffHeapValueStore lruValueStore = new OffHeapValueStore();
+        LRUCacheService lruCacheService = new LRUCacheService(8, 5000, lruValueStore);
+        lruCacheService.enableCompression(new ValueCompressor(64));
+        AtomicInteger wrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(thread);
+                for (int i = 0; i < 20000; i++) {
+                    int key = random.nextInt(16);
+                    // compressible and raw values, so a mismatch would also mix up the compressor
+                    String value = random.nextBoolean() ? key + ":" + repeat('x', 200) : key + ":" + i;
+                    lruCacheService.put(key, value);
+                    String read = lruCacheService.get(random.nextInt(16));
+                    if (read != null && read.indexOf(':') < 0) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+        int cached = 0;
+        for (int key = 0; key < 16; key++) {
+            String value = lruCacheService.get(key);
+            if (value != null) {
+                assertTrue(value.startsWith(key + ":"));
+                cached++;
+            }
+        }
+        assertEquals(cached, lruValueStore.size());
+        lruCacheService.shutdown();
+    }
+
+    @Test
+    public void lruWritesDuringResizesAreKept() throws InterruptedException {
+        OffHeapValueStore lruValueStore = new OffHeapValueStore();
+        LRUCacheService lruCacheService = new LRUCacheService(1000, 60000, lruValueStore);
+        int[] last = new int[64];
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                // every writer owns its own keys, so the last value of each is known
+                for (int i = 0; i < 20000; i++) {
+                    int key = thread + 4 * (i % 16);
+                    lruCacheService.put(key, key + ":" + i);
+                    last[key] = i;
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        int capacity = 1000;
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            capacity = capacity == 1000 ? 2000 : 1000;
+            lruCacheService.resize(capacity, 60000);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        CacheResize resize = lruCacheService.resize(capacity, 60000);
+        for (int i = 0; i < 100 && !resize.isDone(); i++) {
+            Thread.sleep(50);
+        }
+        for (int key = 0; key < 64; key++) {
+            assertEquals(key + ":" + last[key], lruCacheService.get(key));
+        }
+        assertEquals(64, lruValueStore.size());
+        lruCacheService.shutdown();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,236 @@
+import epam.training.service.SegmentedLFUCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Thread.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class SegmentedLFUCacheServiceTest {
+    SegmentedLFUCacheService segmentedLfuCacheService;
+
+    @BeforeAll
+    public void init() {
+        segmentedLfuCacheService = new SegmentedLFUCacheService(4, 5000, 1);
+    }
+
+    @AfterEach
+    public void clearCache() {
+        segmentedLfuCacheService.clearCache();
+    }
+
+    @Test
+    public void addAndGetNewItemInCache() {
+        segmentedLfuCacheService.put(1, "item1");
+        assertEquals("item1", segmentedLfuCacheService.get(1));
+    }
+
+    @Test
+    public void putAllAndGetAllItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        items.put(1, "item1");
+        items.put(2, "item2");
+        items.put(3, "item3");
+        segmentedLfuCacheService.putAll(items);
+        Map<Integer, String> found = segmentedLfuCacheService.getAll(new int[]{3, 7, 1});
+        assertEquals(2, found.size());
+        assertEquals("item3", found.get(3));
+        assertEquals("item1", found.get(1));
+        assertEquals(Arrays.asList(3, 1), new ArrayList<>(found.keySet()));
+    }
+
+    @Test
+    public void putAllEvictsItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        for (int i = 1; i <= 6; i++) {
+            items.put(i, "item" + i);
+        }
+        segmentedLfuCacheService.putAll(items);
+        Map<Integer, String> found = segmentedLfuCacheService.getAll(new int[]{1, 2, 3, 4, 5, 6});
+        assertEquals(4, found.size());
+        assertEquals("item6", found.get(6));
+        assertEquals(2, segmentedLfuCacheService.getNumberOfEvictions());
+    }
+
+    @Test
+    public void deleteItemEvictionPolicyLFU() {
+        segmentedLfuCacheService.put(1, "item1");
+        segmentedLfuCacheService.put(2, "item2");
+        segmentedLfuCacheService.put(3, "item3");
+        segmentedLfuCacheService.put(4, "item4");
+        segmentedLfuCacheService.get(1);
+        segmentedLfuCacheService.put(5, "item5");
+        assertNull(segmentedLfuCacheService.get(2));
+        assertNotNull(segmentedLfuCacheService.get(1));
+        assertEquals("item5", segmentedLfuCacheService.get(5));
+        assertEquals(1, segmentedLfuCacheService.getNumberOfEvictions());
+    }
+
+    @Test
+    public void deleteItemCheckTimeEviction() throws InterruptedException {
+        SegmentedLFUCacheService shortLivedCache = new SegmentedLFUCacheService(4, 100, 1);
+        shortLivedCache.put(1, "item1");
+        sleep(300);
+        assertNull(shortLivedCache.get(1));
+    }
+
+    @Test
+    public void expiredItemsAreRemovedWithoutAccess() throws InterruptedException {
+        SegmentedLFUCacheService shortLivedCache = new SegmentedLFUCacheService(100, 200, 4);
+        for (int i = 0; i < 50; i++) {
+            shortLivedCache.put(i, "item" + i);
+        }
+        sleep(1000);
+        assertEquals(0, shortLivedCache.size());
+        assertEquals(50, shortLivedCache.getNumberOfExpirations());
+        assertEquals(0, shortLivedCache.getNumberOfEvictions());
+        shortLivedCache.shutdown();
+    }
+
+    @Test
+    public void segmentCountNeverExceedsCapacity() {
+        assertEquals(4, new SegmentedLFUCacheService(4, 5000, 16).getSegmentCount());
+        assertEquals(16, new SegmentedLFUCacheService(1000, 5000, 16).getSegmentCount());
+        assertEquals(1, new SegmentedLFUCacheService(0, 5000, 16).getSegmentCount());
+    }
+
+    @Test
+    public void checkCapacityUnderContention() throws Exception {
+        SegmentedLFUCacheService concurrentCache = new SegmentedLFUCacheService(1000, 60000, 16);
+        int threads = 8;
+        int keysPerThread = 5000;
+        CyclicBarrier gate = new CyclicBarrier(threads + 1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * keysPerThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    gate.await();
+                    for (int i = 0; i < keysPerThread; i++) {
+                        concurrentCache.put(offset + i, "item" + (offset + i));
+                        concurrentCache.get(offset + i / 2);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        gate.await();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertTrue(concurrentCache.size() <= 1000);
+        assertEquals(threads * keysPerThread,
+                concurrentCache.size() + concurrentCache.getNumberOfEvictions());
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    barrier.await();
+                    String value = segmentedLfuCacheService.get(1, key -> {
+                        loads.incrementAndGet();
+                        try {
+                            sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "item" + key;
+                    });
+                    synchronized (results) {
+                        results.add(value);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads, results.size());
+        assertTrue(results.stream().allMatch("item1"::equals));
+        assertEquals("item1", segmentedLfuCacheService.get(1));
+    }
+
+    @Test
+    public void getAsyncLoadsAndCachesItem() throws Exception {
+        assertEquals("item2", segmentedLfuCacheService.getAsync(2, key -> "item" + key).get());
+        assertEquals("item2", segmentedLfuCacheService.get(2));
+        assertEquals("item2", segmentedLfuCacheService.getAsync(2, key -> {
+            throw new IllegalStateException("cached value expected");
+        }).get());
+    }
+
+    @Test
+    public void nullLoadedValueIsNotCached() {
+        assertNull(segmentedLfuCacheService.get(3, key -> null));
+        assertNull(segmentedLfuCacheService.get(3));
+    }
+
+    @Test
+    public void loaderFailurePropagates() {
+        assertThrows(IllegalStateException.class, () -> segmentedLfuCacheService.get(4, key -> {
+            throw new IllegalStateException("backing store down");
+        }));
+        assertEquals("item4", segmentedLfuCacheService.get(4, key -> "item" + key));
+    }
+
+    @Test
+    public void asyncPutAndGetUnderContention() throws Exception {
+        List<CompletableFuture<String>> reads = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Void>> writes = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    writes.add(segmentedLfuCacheService.putAsync(i % 4, "item" + (i % 4)));
+                    reads.add(segmentedLfuCacheService.getAsync(i % 4));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<String> read : reads) {
+            String value = read.get(10, TimeUnit.SECONDS);
+            assertTrue(value == null || value.startsWith("item"));
+        }
+        for (int key = 0; key < 4; key++) {
+            assertEquals("item" + key, segmentedLfuCacheService.getAsync(key).get());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import epam.training.service.CacheService;
+import epam.training.service.LFUCacheService;
+import epam.training.service.SegmentedLFUCacheService;
+import epam.training.service.ShardedCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ShardedCacheServiceTest {
+    ShardedCacheService shardedCacheService;
+
+    @BeforeAll
+    public void init() {
+        shardedCacheService = new ShardedCacheService(nodes(4, 2000));
+    }
+
+    @AfterEach
+    public void clearCache() {
+        shardedCacheService.clearCache();
+    }
+
+    @Test
+    public void keysAreSpreadEvenlyOverNodes() {
+        for (int i = 0; i < 4000; i++) {
+            shardedCacheService.put(i, "item" + i);
+        }
+        for (int i = 0; i < 4000; i++) {
+            assertEquals("item" + i, shardedCacheService.get(i));
+        }
+        for (CacheService node : shardedCacheService.getNodes().values()) {
+            int size = ((LFUCacheService) node).snapshot().size();
+            assertTrue(size > 700 && size < 1300, "unbalanced node size " + size);
+        }
+    }
+
+    @Test
+    public void putAllAndGetAllKeepRequestOrderAcrossNodes() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            items.put(i, "item" + i);
+        }
+        shardedCacheService.putAll(items);
+        Map<Integer, String> found = shardedCacheService.getAll(new int[]{19, 42, 3, 11, 0});
+        assertEquals(Arrays.asList(19, 3, 11, 0), new ArrayList<>(found.keySet()));
+        assertEquals("item11", found.get(11));
+        assertEquals("item3", shardedCacheService.removeValueFromCache(3));
+        assertNull(shardedCacheService.get(3));
+    }
+
+    @Test
+    public void addingNodeMovesOnlyTheKeysItTakesOver() {
+        ShardedCacheService cache = new ShardedCacheService(nodes(4, 1000));
+        Map<Integer, String> owners = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            cache.put(i, "item" + i);
+            owners.put(i, cache.nodeFor(i));
+        }
+        LFUCacheService added = new LFUCacheService(1000, 60000);
+        cache.addNode("node-4", added);
+
+        int moved = 0;
+        for (int i = 0; i < 2000; i++) {
+            String owner = cache.nodeFor(i);
+            if (!owner.equals(owners.get(i))) {
+                assertEquals("node-4", owner);
+                moved++;
+            }
+            assertEquals("item" + i, cache.get(i));
+        }
+        assertEquals(moved, added.snapshot().size());
+        assertTrue(moved > 200 && moved < 600, "moved " + moved + " keys");
+        int stored = 0;
+        for (CacheService node : cache.getNodes().values()) {
+            stored += ((LFUCacheService) node).snapshot().size();
+        }
+        assertEquals(2000, stored);
+    }
+
+    @Test
+    public void removingNodeHandsItsKeysToTheOthers() {
+        ShardedCacheService cache = new ShardedCacheService(nodes(3, 1000));
+        for (int i = 0; i < 1500; i++) {
+            cache.put(i, "item" + i);
+        }
+        CacheService removed = cache.removeNode("node-1");
+        assertEquals(2, cache.getNodes().size());
+        for (int i = 0; i < 1500; i++) {
+            assertTrue(!cache.nodeFor(i).equals("node-1"));
+            assertEquals("item" + i, cache.get(i));
+        }
+        assertTrue(((LFUCacheService) removed).snapshot().size() > 0);
+        assertThrows(IllegalStateException.class, () -> {
+            cache.removeNode("node-0");
+            cache.removeNode("node-2");
+        });
+    }
+
+    @Test
+    public void evictionsRollUpFromNodes() {
+        ShardedCacheService cache = new ShardedCacheService(nodes(2, 10));
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "item" + i);
+        }
+        long evictions = 0;
+        for (CacheService node : cache.getNodes().values()) {
+            evictions += node.getNumberOfEvictions();
+        }
+        assertTrue(evictions >= 80);
+        assertEquals(evictions, cache.getNumberOfEvictions());
+        cache.get(99);
+        cache.get(-1);
+        assertEquals(2, cache.getMetrics().getHitCount() + cache.getMetrics().getMissCount());
+    }
+
+    @Test
+    public void nodesWithoutSnapshotsNeverServeStaleValues() {
+        Map<String, CacheService> nodes = new LinkedHashMap<>();
+        nodes.put("slfu-0", new SegmentedLFUCacheService(1000, 60000, 1));
+        nodes.put("slfu-1", new SegmentedLFUCacheService(1000, 60000, 1));
+        ShardedCacheService cache = new ShardedCacheService(nodes);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "old" + i);
+        }
+        cache.addNode("slfu-2", new SegmentedLFUCacheService(1000, 60000, 1));
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "new" + i);
+        }
+        cache.removeNode("slfu-2");
+        for (int i = 0; i < 100; i++) {
+            String value = cache.get(i);
+            assertTrue(value == null || value.equals("new" + i), "stale value " + value);
+        }
+    }
+
+    private static Map<String, CacheService> nodes(int count, int maxSize) {
+        Map<String, CacheService> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            nodes.put("node-" + i, new LFUCacheService(maxSize, 60000));
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,228 @@
+import epam.training.service.Expiry;
+import epam.training.service.TinyLFUCacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Thread.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TinyLFUCacheServiceTest {
+    TinyLFUCacheService tinyLfuCacheService;
+
+    @BeforeAll
+    public void init() {
+        tinyLfuCacheService = new TinyLFUCacheService(4, 5000);
+    }
+
+    @AfterEach
+    public void clearCache() {
+        tinyLfuCacheService.clearCache();
+    }
+
+    @Test
+    public void addAndGetNewItemInCache() {
+        tinyLfuCacheService.put(1, "item1");
+        assertEquals("item1", tinyLfuCacheService.get(1));
+    }
+
+    @Test
+    public void updateExistingItemInCache() {
+        tinyLfuCacheService.put(1, "item1");
+        tinyLfuCacheService.put(1, "item1-updated");
+        assertEquals("item1-updated", tinyLfuCacheService.get(1));
+        assertEquals(1, tinyLfuCacheService.size());
+    }
+
+    @Test
+    public void putAllAndGetAllItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        items.put(1, "item1");
+        items.put(2, "item2");
+        items.put(3, "item3");
+        tinyLfuCacheService.putAll(items);
+        Map<Integer, String> found = tinyLfuCacheService.getAll(new int[]{3, 7, 1});
+        assertEquals(2, found.size());
+        assertEquals("item3", found.get(3));
+        assertEquals("item1", found.get(1));
+        assertEquals(Arrays.asList(3, 1), new ArrayList<>(found.keySet()));
+    }
+
+    @Test
+    public void putAllEvictsItemsInCache() {
+        Map<Integer, String> items = new LinkedHashMap<>();
+        for (int i = 1; i <= 6; i++) {
+            items.put(i, "item" + i);
+        }
+        tinyLfuCacheService.putAll(items);
+        assertEquals(4, tinyLfuCacheService.getAll(new int[]{1, 2, 3, 4, 5, 6}).size());
+        assertEquals(2, tinyLfuCacheService.getNumberOfEvictions());
+    }
+
+    @Test
+    public void deleteItemEvictionPolicyKeepsFrequentItems() {
+        tinyLfuCacheService.put(1, "item1");
+        tinyLfuCacheService.put(2, "item2");
+        tinyLfuCacheService.put(3, "item3");
+        tinyLfuCacheService.put(4, "item4");
+        tinyLfuCacheService.get(1);
+        tinyLfuCacheService.get(1);
+        for (int key = 5; key <= 10; key++) {
+            tinyLfuCacheService.put(key, "item" + key);
+        }
+        assertEquals("item1", tinyLfuCacheService.get(1));
+        assertEquals(4, tinyLfuCacheService.size());
+    }
+
+    @Test
+    public void removeItemFromCache() {
+        tinyLfuCacheService.put(1, "item1");
+        assertEquals("item1", tinyLfuCacheService.removeValueFromCache(1));
+        assertNull(tinyLfuCacheService.get(1));
+        assertNull(tinyLfuCacheService.removeValueFromCache(1));
+        assertEquals(0, tinyLfuCacheService.size());
+    }
+
+    @Test
+    public void scanDoesNotFlushPopularItems() {
+        TinyLFUCacheService cache = new TinyLFUCacheService(100, 60000);
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 50; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, "item" + key);
+                }
+            }
+        }
+        for (int key = 1000; key < 1500; key++) {
+            if (cache.get(key) == null) {
+                cache.put(key, "item" + key);
+            }
+        }
+        for (int key = 0; key < 50; key++) {
+            assertNotNull(cache.get(key), "popular key " + key + " was evicted by the scan");
+        }
+        cache.shutdown();
+    }
+
+    @Test
+    public void agingLetsNewPopularItemsIn() {
+        TinyLFUCacheService cache = new TinyLFUCacheService(10, 60000);
+        for (int round = 0; round < 20; round++) {
+            for (int key = 0; key < 10; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, "item" + key);
+                }
+            }
+        }
+        for (int round = 0; round < 100; round++) {
+            for (int key = 100; key < 105; key++) {
+                if (cache.get(key) == null) {
+                    cache.put(key, "item" + key);
+                }
+            }
+        }
+        for (int key = 100; key < 105; key++) {
+            assertNotNull(cache.get(key), "new popular key " + key + " was never admitted");
+        }
+        cache.shutdown();
+    }
+
+    @Test
+    public void deleteItemCheckTimeEviction() throws InterruptedException {
+        TinyLFUCacheService shortLivedCache = new TinyLFUCacheService(4, 100);
+        shortLivedCache.put(1, "item1");
+        sleep(300);
+        assertNull(shortLivedCache.get(1));
+        shortLivedCache.shutdown();
+    }
+
+    @Test
+    public void expiredItemsAreRemovedWithoutAccess() throws InterruptedException {
+        TinyLFUCacheService shortLivedCache = new TinyLFUCacheService(100, 200);
+        for (int i = 0; i < 50; i++) {
+            shortLivedCache.put(i, "item" + i);
+        }
+        sleep(1000);
+        assertEquals(0, shortLivedCache.size());
+        assertEquals(50, shortLivedCache.getNumberOfExpirations());
+        assertEquals(0, shortLivedCache.getNumberOfEvictions());
+        shortLivedCache.shutdown();
+    }
+
+    @Test
+    public void entriesFollowTheirOwnExpiry() throws InterruptedException {
+        TinyLFUCacheService cache = new TinyLFUCacheService(100, 0);
+        cache.put(1, "item1", Expiry.afterWrite(200));
+        cache.put(2, "item2", Expiry.afterAccess(400));
+        cache.put(3, "item3", Expiry.afterWrite(200));
+        cache.put(3, "item3");
+        cache.put(4, "item4", Expiry.afterWrite(200));
+        sleep(250);
+        assertEquals("item2", cache.get(2));
+        sleep(250);
+        assertEquals("item2", cache.get(2));
+        assertNull(cache.get(1));
+        assertEquals("item3", cache.get(3));
+        // the sweep removed the one never read again
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getNumberOfExpirations());
+        cache.shutdown();
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        int threads = 8;
+        AtomicInteger loads = new AtomicInteger();
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        List<Thread> workers = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    barrier.await();
+                    String value = tinyLfuCacheService.get(1, key -> {
+                        loads.incrementAndGet();
+                        try {
+                            sleep(100);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "item" + key;
+                    });
+                    synchronized (results) {
+                        results.add(value);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads, results.size());
+        assertTrue(results.stream().allMatch("item1"::equals));
+    }
+
+    @Test
+    public void invalidWindowIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TinyLFUCacheService(4, 0, 101));
+    }
+}
@@ -0,0 +1,76 @@
+import epam.training.service.ValueCompressor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ValueCompressorTest {
+    List<byte[]> documents;
+
+    @BeforeAll
+    public void init() {
+        documents = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            documents.add(document(i));
+        }
+    }
+
+    @Test
+    public void compressedValueDecompressesToTheOriginal() {
+        ValueCompressor compressor = new ValueCompressor(64);
+        byte[] value = document(7);
+        byte[] packed = compressor.compress(value);
+        assertNotNull(packed);
+        assertTrue(packed.length < value.length);
+        assertArrayEquals(value, compressor.decompress(packed));
+        assertEquals(1, compressor.getCompressedValueCount());
+        assertTrue(compressor.getCompressionRatio() < 1.0);
+        assertEquals(1, compressor.decompressionLatency().getCount());
+    }
+
+    @Test
+    public void smallAndIncompressibleValuesStayRaw() {
+        ValueCompressor compressor = new ValueCompressor(64);
+        assertNull(compressor.compress(new byte[63]));
+        byte[] random = new byte[1024];
+        new Random(42).nextBytes(random);
+        assertNull(compressor.compress(random));
+        assertEquals(0, compressor.getCompressedValueCount());
+        assertEquals(1, compressor.getIncompressibleValueCount());
+    }
+
+    @Test
+    public void trainedDictionaryCompressesBetter() {
+        byte[] dictionary = ValueCompressor.trainDictionary(documents, ValueCompressor.MAX_DICTIONARY_BYTES);
+        assertTrue(dictionary.length > 0);
+        ValueCompressor plain = new ValueCompressor(64);
+        ValueCompressor primed = new ValueCompressor(64, dictionary);
+        byte[] value = document(1000);
+        byte[] packed = primed.compress(value);
+        assertTrue(packed.length < plain.compress(value).length);
+        assertArrayEquals(value, primed.decompress(packed));
+    }
+
+    @Test
+    public void invalidThresholdIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ValueCompressor(0));
+    }
+
+    private static byte[] document(int id) {
+        return ("{\"id\":" + id + ",\"type\":\"customer\",\"status\":\"active\",\"address\":{\"street\":\"Main street "
+                + id % 17 + "\",\"city\":\"Springfield\",\"country\":\"US\"},\"tags\":[\"priority\",\"newsletter\"],"
+                + "\"createdAt\":\"2021-0" + (id % 9 + 1) + "-01T00:00:00Z\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
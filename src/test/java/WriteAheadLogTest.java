@@ -0,0 +1,217 @@
+import epam.training.service.LFUCacheService;
+import epam.training.service.LRUCacheService;
+import epam.training.service.WriteAheadLog;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class WriteAheadLogTest {
+    Path directory;
+
+    @BeforeAll
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("cache-wal");
+    }
+
+    @Test
+    public void replayRestoresPutsRemovalsAndClears() throws IOException {
+        Path logDirectory = directory.resolve("lfu");
+        LFUCacheService cache = new LFUCacheService(4, 60000);
+        assertEquals(0, cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), true));
+        cache.put(1, "item1");
+        cache.put(2, "item2");
+        cache.put(3, "item3");
+        cache.put(1, "item1b");
+        cache.removeValueFromCache(2);
+        cache.shutdown();
+
+        LFUCacheService restarted = new LFUCacheService(4, 60000);
+        assertEquals(2, restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), true));
+        assertEquals("item1b", restarted.get(1));
+        assertNull(restarted.get(2));
+        assertEquals("item3", restarted.get(3));
+        restarted.clearCache();
+        restarted.put(4, "item4");
+        restarted.shutdown();
+
+        LFUCacheService cleared = new LFUCacheService(4, 60000);
+        assertEquals(1, cleared.enableWriteAheadLog(new WriteAheadLog(logDirectory), true));
+        assertEquals("item4", cleared.get(4));
+        cleared.shutdown();
+    }
+
+    @Test
+    public void replayRestoresLruCache() throws IOException {
+        Path logDirectory = directory.resolve("lru");
+        LRUCacheService cache = new LRUCacheService(4, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), false);
+        cache.put(1, "item1");
+        cache.put(2, "item2");
+        cache.removeValueFromCache(1);
+        cache.shutdown();
+
+        LRUCacheService restarted = new LRUCacheService(4, 60000);
+        assertEquals(1, restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), false));
+        assertNull(restarted.get(1));
+        assertEquals("item2", restarted.get(2));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void replayKeepsBytesUnchanged() throws IOException {
+        Path logDirectory = directory.resolve("bytes");
+        byte[] payload = { (byte) 0xff, 0, (byte) 0xc3, 0x28 };
+        LRUCacheService cache = new LRUCacheService(4, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), true);
+        cache.putBytes(1, payload);
+        cache.shutdown();
+
+        LRUCacheService restarted = new LRUCacheService(4, 60000);
+        assertEquals(1, restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), true));
+        assertArrayEquals(payload, restarted.getBytes(1));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void compactionReplacesSegmentsWithCheckpoint() throws IOException {
+        Path logDirectory = directory.resolve("compacted");
+        LFUCacheService cache = new LFUCacheService(8, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory, 64, 2), true);
+        for (int i = 0; i < 200; i++) {
+            cache.put(i % 8, "item" + i);
+        }
+        cache.shutdown();
+        assertTrue(Files.exists(logDirectory.resolve("checkpoint.snapshot")));
+        assertTrue(segments(logDirectory).size() <= 3);
+
+        LFUCacheService restarted = new LFUCacheService(8, 60000);
+        assertEquals(8, restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory, 64, 2), true));
+        for (int i = 192; i < 200; i++) {
+            assertEquals("item" + i, restarted.get(i % 8));
+        }
+        restarted.shutdown();
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsDropped() throws IOException {
+        Path logDirectory = directory.resolve("torn");
+        LFUCacheService cache = new LFUCacheService(4, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), true);
+        cache.put(1, "item1");
+        cache.shutdown();
+        List<Path> segments = segments(logDirectory);
+        Path last = segments.get(segments.size() - 1);
+        long validSize = Files.size(last);
+        Files.write(last, new byte[]{1, 0, 0, 0, 2, 0, 0}, StandardOpenOption.APPEND);
+
+        LFUCacheService restarted = new LFUCacheService(4, 60000);
+        assertEquals(1, restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), true));
+        assertEquals("item1", restarted.get(1));
+        assertEquals(validSize, Files.size(last));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void concurrentDurablePutsAreAllReplayed() throws Exception {
+        Path logDirectory = directory.resolve("concurrent");
+        LFUCacheService cache = new LFUCacheService(1000, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t * 100;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    cache.put(offset + i, "item" + (offset + i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        cache.shutdown();
+
+        LFUCacheService restarted = new LFUCacheService(1000, 60000);
+        assertEquals(800, restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), true));
+        assertEquals("item799", restarted.get(799));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void concurrentLruWritesOfOneKeyReplayToTheCachedValue() throws Exception {
+        Path logDirectory = directory.resolve("concurrentLru");
+        LRUCacheService cache = new LRUCacheService(100, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), false);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int writer = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    if (i % 5 == 0) {
+                        cache.removeValueFromCache(i % 10);
+                    } else {
+                        cache.put(i % 10, "item" + writer + "-" + i);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        List<String> cached = new ArrayList<>();
+        for (int key = 0; key < 10; key++) {
+            cached.add(cache.get(key));
+        }
+        cache.shutdown();
+
+        LRUCacheService restarted = new LRUCacheService(100, 60000);
+        restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), false);
+        for (int key = 0; key < 10; key++) {
+            assertEquals(cached.get(key), restarted.get(key));
+        }
+        restarted.shutdown();
+    }
+
+    @Test
+    public void asyncPutCompletesOnceDurable() throws Exception {
+        Path logDirectory = directory.resolve("async");
+        LFUCacheService cache = new LFUCacheService(4, 60000);
+        cache.enableWriteAheadLog(new WriteAheadLog(logDirectory), true);
+        cache.putAsync(1, "item1").get(10, TimeUnit.SECONDS);
+        List<Path> segments = segments(logDirectory);
+        assertTrue(Files.size(segments.get(segments.size() - 1)) > 0);
+        cache.shutdown();
+
+        LFUCacheService restarted = new LFUCacheService(4, 60000);
+        restarted.enableWriteAheadLog(new WriteAheadLog(logDirectory), true);
+        assertEquals("item1", restarted.get(1));
+        restarted.shutdown();
+    }
+
+    private static List<Path> segments(Path logDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(logDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
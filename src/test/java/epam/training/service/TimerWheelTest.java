@@ -0,0 +1,147 @@
+package epam.training.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TimerWheelTest {
+    private static final long START = 1_700_000_000_000L;
+
+    TimerWheel<Timer> timerWheel;
+    List<Timer> expired;
+
+    @BeforeEach
+    public void init() {
+        timerWheel = new TimerWheel<>(START);
+        expired = new ArrayList<>();
+    }
+
+    @Test
+    public void onlyDueEntriesExpire() {
+        Timer soon = schedule("soon", START + 100);
+        Timer later = schedule("later", START + 1000);
+        timerWheel.advance(START + 50, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+        timerWheel.advance(START + 200, expired::add);
+        assertEquals(Collections.singletonList(soon), expired);
+        timerWheel.advance(START + 2000, expired::add);
+        assertEquals(Arrays.asList(soon, later), expired);
+    }
+
+    @Test
+    public void entriesCascadeDownTheLevels() {
+        // seconds, minutes and hours away, each starts on a coarser level than the one before
+        long[] delays = {10_000, 20 * 60_000, 3 * 3_600_000};
+        for (long delay : delays) {
+            init();
+            long deadline = START + delay;
+            Timer timer = schedule("timer", deadline);
+            long expiredAt = advanceUntilExpired(deadline + 60_000, 1000);
+            assertEquals(Collections.singletonList(timer), expired);
+            assertTrue(expiredAt > deadline && expiredAt <= deadline + 1000, "expired at " + (expiredAt - deadline));
+        }
+    }
+
+    @Test
+    public void entriesBeyondTheLastLevelWaitInTheOverflowBucket() {
+        long deadline = START + 25L * 24 * 3_600_000;
+        Timer timer = schedule("timer", deadline);
+        long expiredAt = advanceUntilExpired(deadline + 7_200_000, 3_600_000);
+        assertEquals(Collections.singletonList(timer), expired);
+        assertTrue(expiredAt > deadline && expiredAt <= deadline + 3_600_000, "expired at " + (expiredAt - deadline));
+
+        init();
+        Timer jumped = schedule("jumped", deadline);
+        timerWheel.advance(deadline - 1, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+        timerWheel.advance(deadline + 1, expired::add);
+        assertEquals(Collections.singletonList(jumped), expired);
+    }
+
+    @Test
+    public void rescheduleMovesTheEntry() {
+        Timer timer = schedule("timer", START + 100);
+        timer.expirationTime = START + 10_000;
+        timerWheel.schedule(timer);
+        timerWheel.advance(START + 200, expired::add);
+        assertEquals(Collections.emptyList(), expired);
+        timerWheel.advance(START + 20_000, expired::add);
+        assertEquals(Collections.singletonList(timer), expired);
+
+        timer.expirationTime = START + 30_000;
+        timerWheel.schedule(timer);
+        timerWheel.advance(START + 40_000, expired::add);
+        assertEquals(Arrays.asList(timer, timer), expired);
+    }
+
+    @Test
+    public void descheduledEntriesNeverExpire() {
+        Timer kept = schedule("kept", START + 100);
+        Timer dropped = schedule("dropped", START + 100);
+        Timer far = schedule("far", START + 3_600_000);
+        timerWheel.deschedule(dropped);
+        timerWheel.deschedule(dropped);
+        timerWheel.deschedule(far);
+        timerWheel.advance(START + 7_200_000, expired::add);
+        assertEquals(Collections.singletonList(kept), expired);
+    }
+
+    @Test
+    public void clearedEntriesCannotComeBack() {
+        Timer first = schedule("first", START + 100);
+        Timer second = schedule("second", START + 100);
+        Timer third = schedule("third", START + 100);
+        timerWheel.clear();
+
+        // the caches drop their own references on clear, but a stale one must stay harmless
+        timerWheel.deschedule(first);
+        Timer fresh = schedule("fresh", START + 100);
+        timerWheel.deschedule(second);
+        timerWheel.advance(START + 200, expired::add);
+        assertEquals(Collections.singletonList(fresh), expired);
+
+        third.expirationTime = START + 300;
+        timerWheel.schedule(third);
+        timerWheel.advance(START + 400, expired::add);
+        assertEquals(Arrays.asList(fresh, third), expired);
+    }
+
+    private Timer schedule(String name, long expirationTime) {
+        Timer timer = new Timer(name);
+        timer.expirationTime = expirationTime;
+        timerWheel.schedule(timer);
+        return timer;
+    }
+
+    private long advanceUntilExpired(long until, long step) {
+        for (long now = START + step; now <= until; now += step) {
+            timerWheel.advance(now, expired::add);
+            if (!expired.isEmpty()) {
+                return now;
+            }
+        }
+        return -1;
+    }
+
+    static class Timer extends TimerWheel.Node {
+        final String name;
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}